@@ -0,0 +1,137 @@
+package co.yangdong.cos;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * 在内存中实现基准测试用到的几个 COS 接口：分块上传、HEAD、按范围 GET 和批量删除
+ * 不校验签名，只用来测量客户端自身的开销
+ */
+public class FakeCosServer extends Dispatcher {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        int query = path.indexOf('?');
+        String key = decode(query >= 0 ? path.substring(1, query) : path.substring(1));
+        Map<String, String> params = params(query >= 0 ? path.substring(query + 1) : "");
+        String method = request.getMethod();
+
+        if ("POST".equals(method) && params.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new ConcurrentHashMap<>());
+            return xml("<InitiateMultipartUploadResult><Bucket>benchmark</Bucket><Key>" + key
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+        }
+        if ("PUT".equals(method) && params.containsKey("partNumber")) {
+            Map<Integer, byte[]> parts = uploads.get(params.get("uploadId"));
+            if (parts == null) {
+                return error(404, "NoSuchUpload");
+            }
+            byte[] body = request.getBody().readByteArray();
+            parts.put(Integer.parseInt(params.get("partNumber")), body);
+            return new MockResponse().setHeader("ETag", "\"" + md5(body) + "\"");
+        }
+        if ("POST".equals(method) && params.containsKey("uploadId")) {
+            Map<Integer, byte[]> parts = uploads.remove(params.get("uploadId"));
+            if (parts == null) {
+                return error(404, "NoSuchUpload");
+            }
+            Buffer object = new Buffer();
+            for (byte[] part : new TreeMap<>(parts).values()) {
+                object.write(part);
+            }
+            byte[] bytes = object.readByteArray();
+            objects.put(key, bytes);
+            return xml("<CompleteMultipartUploadResult><Location>" + key + "</Location><Bucket>benchmark</Bucket><Key>"
+                    + key + "</Key><ETag>\"" + md5(bytes) + "\"</ETag></CompleteMultipartUploadResult>");
+        }
+        if ("POST".equals(method) && params.containsKey("delete")) {
+            // 请求体里的对象列表不解析，测试结束时清空
+            objects.clear();
+            return xml("<DeleteResult></DeleteResult>");
+        }
+        byte[] object = objects.get(key);
+        if (object == null) {
+            return error(404, "NoSuchKey");
+        }
+        if ("HEAD".equals(method)) {
+            return new MockResponse()
+                    .setHeader("Content-Length", object.length)
+                    .setHeader("ETag", "\"" + md5(object) + "\"");
+        }
+        if ("GET".equals(method)) {
+            return get(object, request.getHeader("Range"));
+        }
+        return error(405, "MethodNotAllowed");
+    }
+
+    private static MockResponse get(byte[] object, String range) {
+        MockResponse response = new MockResponse().setHeader("ETag", "\"" + md5(object) + "\"");
+        if (range == null || !range.startsWith("bytes=")) {
+            return response.setBody(new Buffer().write(object));
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-", -1);
+        int from = Integer.parseInt(bounds[0]);
+        int to = bounds[1].isEmpty() ? object.length - 1 : Math.min(Integer.parseInt(bounds[1]), object.length - 1);
+        return response.setResponseCode(206)
+                .setHeader("Content-Range", "bytes " + from + "-" + to + "/" + object.length)
+                .setBody(new Buffer().write(object, from, to - from + 1));
+    }
+
+    private static MockResponse xml(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/xml").setBody(body);
+    }
+
+    private static MockResponse error(int code, String error) {
+        return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/xml")
+                .setBody("<Error><Code>" + error + "</Code><Message>" + error + "</Message></Error>");
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new TreeMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            params.put(equals >= 0 ? pair.substring(0, equals) : pair,
+                    equals >= 0 ? decode(pair.substring(equals + 1)) : "");
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return value;
+        }
+    }
+
+    private static String md5(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
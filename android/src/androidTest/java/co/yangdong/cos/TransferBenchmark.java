@@ -0,0 +1,276 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 传输基准测试，只在 instrumentation 测试中运行，不随库发布
+ * 用合成文件按 分片大小 x 并发数 测分片上传的吞吐量，按连接数测下载的吞吐量，同时记录每次传输的堆内存峰值
+ * 结果为 JSON，可以写到文件中由 CI 与基线比较
+ */
+public class TransferBenchmark {
+
+    public static final long DEFAULT_FILE_SIZE = 32 * 1024 * 1024;
+    private static final long MEMORY_SAMPLE_MILLIS = 20;
+
+    public static class Options {
+        public String bucket = "benchmark-1250000000";
+        public String prefix = "benchmark/";
+        public long fileSize = DEFAULT_FILE_SIZE;
+        public long[] partSizes = {1024 * 1024, 4 * 1024 * 1024, 8 * 1024 * 1024};
+        public int[] concurrencies = {1, 4, 8};
+        public int[] connections = {1, 4};
+        public int iterations = 1;
+        // 结果同时写入的文件，CI 可以通过 adb 取回
+        @Nullable
+        public File output;
+    }
+
+    private interface Transfer {
+        /**
+         * @return 写入结果的额外字段
+         */
+        JSONObject run(AtomicInteger progressEvents) throws Exception;
+    }
+
+    private final Context context;
+    private final CosXmlSimpleService cosXmlService;
+    private final UploadJournal.Store journalStore;
+
+    public TransferBenchmark(Context context, CosXmlSimpleService cosXmlService) {
+        this.context = context;
+        this.cosXmlService = cosXmlService;
+        this.journalStore = new UploadJournal.Store(new File(context.getCacheDir(), "cos-benchmark-journals"));
+    }
+
+    /**
+     * 在当前线程依次执行所有用例，测试对象在结束时删除
+     * 内存采样和分段下载使用各自的线程，不和被测的传输抢线程
+     */
+    public JSONObject run(Options options) throws Exception {
+        File directory = new File(context.getCacheDir(), "cos-benchmark");
+        directory.mkdirs();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        File source = new File(directory, "source");
+        File target = new File(directory, "target");
+        String cosPath = options.prefix + UUID.randomUUID();
+
+        JSONObject report = new JSONObject();
+        report.put("startedAt", System.currentTimeMillis());
+        report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        report.put("sdkInt", Build.VERSION.SDK_INT);
+        report.put("bucket", options.bucket);
+        report.put("fileSize", options.fileSize);
+        try {
+            writeRandomFile(source, options.fileSize);
+
+            JSONArray uploads = new JSONArray();
+            for (long partSize : options.partSizes) {
+                for (int concurrency : options.concurrencies) {
+                    for (int iteration = 0; iteration < options.iterations; iteration++) {
+                        JSONObject result = measure(sampler, options.fileSize, progressEvents ->
+                                upload(options.bucket, cosPath, source, partSize, concurrency, progressEvents));
+                        result.put("partSize", partSize);
+                        result.put("concurrency", concurrency);
+                        result.put("iteration", iteration);
+                        uploads.put(result);
+                    }
+                }
+            }
+            report.put("uploads", uploads);
+
+            JSONArray downloads = new JSONArray();
+            for (int connections : options.connections) {
+                for (int iteration = 0; iteration < options.iterations; iteration++) {
+                    JSONObject result = measure(sampler, options.fileSize, progressEvents ->
+                            download(options.bucket, cosPath, target, connections, progressEvents));
+                    result.put("connections", connections);
+                    result.put("iteration", iteration);
+                    downloads.put(result);
+                    target.delete();
+                }
+            }
+            report.put("downloads", downloads);
+        } finally {
+            sampler.shutdownNow();
+            source.delete();
+            target.delete();
+            deleteObject(options.bucket, cosPath);
+        }
+        report.put("finishedAt", System.currentTimeMillis());
+        if (options.output != null) {
+            try (OutputStream output = new FileOutputStream(options.output)) {
+                output.write(report.toString(2).getBytes("UTF-8"));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * 记录耗时、吞吐量、进度回调次数，以及传输期间相对开始时的堆内存峰值增量
+     */
+    private static JSONObject measure(ScheduledExecutorService sampler, long bytes, Transfer transfer)
+            throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong peak = new AtomicLong(baseline);
+        ScheduledFuture<?> sampling = sampler.scheduleAtFixedRate(() -> {
+            long used = runtime.totalMemory() - runtime.freeMemory();
+            peak.accumulateAndGet(used, Math::max);
+        }, 0, MEMORY_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        AtomicInteger progressEvents = new AtomicInteger();
+        long startTime = System.nanoTime();
+        JSONObject result;
+        try {
+            result = transfer.run(progressEvents);
+        } finally {
+            sampling.cancel(false);
+        }
+        long millis = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), 1);
+
+        result.put("millis", millis);
+        result.put("bytesPerSecond", bytes * 1000.0 / millis);
+        result.put("progressEvents", progressEvents.get());
+        result.put("peakHeapBytes", Math.max(peak.get() - baseline, 0));
+        return result;
+    }
+
+    private JSONObject upload(String bucket, String cosPath, File source, long partSize,
+                              int concurrency, AtomicInteger progressEvents) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Exception[] error = new Exception[1];
+        MultipartUploadTask task = new MultipartUploadTask(cosXmlService, bucket, cosPath, null,
+                PartSource.open(context, source.getPath(), null), journalStore, partSize, concurrency,
+                new MultipartUploadTask.Listener() {
+                    @Override
+                    public void onInit(MultipartUploadTask task) {
+                    }
+
+                    @Override
+                    public void onProgress(MultipartUploadTask task, long complete, long target) {
+                        progressEvents.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onSuccess(MultipartUploadTask task, CompleteMultipartUploadResult result) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onPaused(MultipartUploadTask task) {
+                        error[0] = new IllegalStateException("benchmark upload paused");
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFail(MultipartUploadTask task, Exception exception) {
+                        error[0] = exception;
+                        done.countDown();
+                    }
+                });
+        task.start();
+        done.await();
+        if (error[0] != null) {
+            throw error[0];
+        }
+        JSONObject result = new JSONObject();
+        // 分片大小会按吞吐量调整，同时记录最终采用的大小
+        result.put("finalPartSize", task.getPartSize());
+        return result;
+    }
+
+    /**
+     * 单连接使用 SDK 直接下载，多连接使用分段下载，与 download 的路径一致
+     */
+    private JSONObject download(String bucket, String cosPath, File target,
+                                int connections, AtomicInteger progressEvents) throws Exception {
+        if (connections <= 1) {
+            GetObjectRequest request = new GetObjectRequest(bucket, cosPath, target.getParent(), target.getName());
+            request.setProgressListener((complete, total) -> progressEvents.incrementAndGet());
+            cosXmlService.getObject(request);
+            return new JSONObject();
+        }
+
+        CountDownLatch done = new CountDownLatch(1);
+        Exception[] error = new Exception[1];
+        RangedDownloadTask task = new RangedDownloadTask(cosXmlService, bucket, cosPath,
+                target.getPath(), connections, new RangedDownloadTask.Listener() {
+                    @Override
+                    public void onProgress(RangedDownloadTask task, long complete, long total) {
+                        progressEvents.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onSuccess(RangedDownloadTask task) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onPaused(RangedDownloadTask task) {
+                        error[0] = new IllegalStateException("benchmark download paused");
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFail(RangedDownloadTask task, Exception exception) {
+                        error[0] = exception;
+                        done.countDown();
+                    }
+                });
+        task.start();
+        done.await();
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return new JSONObject();
+    }
+
+    private void deleteObject(String bucket, String cosPath) {
+        try {
+            DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(bucket);
+            request.setObjectList(Collections.singletonList(cosPath));
+            request.setQuiet(true);
+            cosXmlService.deleteMultiObject(request);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeRandomFile(File file, long size) throws IOException {
+        Random random = new Random(size);
+        byte[] buffer = new byte[256 * 1024];
+        try (OutputStream output = new FileOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                output.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+    }
+}
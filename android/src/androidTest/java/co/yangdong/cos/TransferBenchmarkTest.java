@@ -0,0 +1,69 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.CosXmlServiceConfig;
+import com.tencent.qcloud.core.auth.ShortTimeCredentialProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对本地的 MockWebServer 运行传输基准测试，结果写到应用的外部文件目录
+ * ./gradlew connectedAndroidTest 之后用 adb pull 取回 cos-benchmark.json
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransferBenchmarkTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new FakeCosServer());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void runBenchmark() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CosXmlServiceConfig config = new CosXmlServiceConfig.Builder()
+                .setRegion("ap-guangzhou")
+                .isHttps(false)
+                .setHostFormat(server.getHostName())
+                .setPort(server.getPort())
+                .dnsCache(false)
+                .builder();
+        CosXmlService service = new CosXmlService(context, config,
+                new ShortTimeCredentialProvider("secretId", "secretKey", 600));
+
+        TransferBenchmark.Options options = new TransferBenchmark.Options();
+        options.output = new File(context.getExternalFilesDir(null), "cos-benchmark.json");
+        JSONObject report = new TransferBenchmark(context, service).run(options);
+        Log.i("TransferBenchmark", report.toString(2));
+
+        assertEquals(options.partSizes.length * options.concurrencies.length * options.iterations,
+                report.getJSONArray("uploads").length());
+        assertEquals(options.connections.length * options.iterations,
+                report.getJSONArray("downloads").length());
+    }
+}
@@ -0,0 +1,295 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台传输
+ * 交给 WorkManager 执行，不依赖 JS 运行环境；结果先保存在本地再通过事件发给 JS，JS 确认收到后才删除
+ */
+public class BackgroundTransfers {
+
+    public static final String NETWORK_ANY = "any";
+    public static final String NETWORK_UNMETERED = "unmetered";
+    public static final String NETWORK_NOT_ROAMING = "notRoaming";
+
+    private static final String PREFERENCES = "cos-background-transfers";
+    private static final String KEY_CONFIGURATION = "configuration";
+    private static final String KEY_RESULTS = "results";
+    private static final String KEY_UPLOAD_ID = "uploadId:";
+    private static final String KEY_PROGRESS = "progress:";
+    private static final String KEY_STALLS = "stalls:";
+    private static final String TAG = "cos-transfer";
+    private static final long BACKOFF_SECONDS = 30;
+
+    public interface Listener {
+        void onProgress(String requestId, long complete, long target);
+
+        void onResult(Result result);
+    }
+
+    public static class Result {
+        public final String requestId;
+        public final String type;
+        public final boolean success;
+        @Nullable
+        public final String eTag;
+        @Nullable
+        public final String error;
+
+        public Result(String requestId, String type, boolean success,
+                      @Nullable String eTag, @Nullable String error) {
+            this.requestId = requestId;
+            this.type = type;
+            this.success = success;
+            this.eTag = eTag;
+            this.error = error;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("requestId", requestId);
+            json.put("type", type);
+            json.put("success", success);
+            json.put("eTag", eTag != null ? eTag : JSONObject.NULL);
+            json.put("error", error != null ? error : JSONObject.NULL);
+            return json;
+        }
+
+        static Result fromJson(JSONObject json) {
+            return new Result(json.optString("requestId"), json.optString("type"),
+                    json.optBoolean("success"),
+                    json.isNull("eTag") ? null : json.optString("eTag"),
+                    json.isNull("error") ? null : json.optString("error"));
+        }
+    }
+
+    // 应用在前台时由 TencentCosModule 注册，后台任务的进度和结果直接转发
+    private static volatile Listener listener;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+
+    public BackgroundTransfers(Context context) {
+        this.context = context.getApplicationContext();
+        this.preferences = this.context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public static void setListener(@Nullable Listener listener) {
+        BackgroundTransfers.listener = listener;
+    }
+
+    /**
+     * 模块销毁时调用，只移除自己注册的监听，重新加载后新模块注册的监听不受影响
+     */
+    public static synchronized void clearListener(Listener listener) {
+        if (BackgroundTransfers.listener == listener) {
+            BackgroundTransfers.listener = null;
+        }
+    }
+
+    static void notifyProgress(String requestId, long complete, long target) {
+        Listener current = listener;
+        if (current != null) {
+            current.onProgress(requestId, complete, target);
+        }
+    }
+
+    /**
+     * 保存初始化配置，后台任务用它创建服务；配置中只有临时密钥服务地址，没有密钥
+     */
+    public void saveConfiguration(ReadableMap configuration) {
+        preferences.edit()
+                .putString(KEY_CONFIGURATION, new JSONObject(configuration.toHashMap()).toString())
+                .apply();
+    }
+
+    @Nullable
+    public ReadableMap loadConfiguration() {
+        String value = preferences.getString(KEY_CONFIGURATION, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return toMap(new JSONObject(value));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static ReadableMap toMap(JSONObject json) throws JSONException {
+        Map<String, Object> map = new HashMap<>();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object item = json.get(key);
+            // 嵌套的配置项，例如 retry
+            map.put(key, item instanceof JSONObject ? toMap((JSONObject) item) : item);
+        }
+        return JavaOnlyMap.from(map);
+    }
+
+    public void enqueue(String requestId, Data input, @Nullable String network, boolean expedited) {
+        NetworkType networkType = NetworkType.CONNECTED;
+        if (NETWORK_UNMETERED.equals(network)) {
+            networkType = NetworkType.UNMETERED;
+        } else if (NETWORK_NOT_ROAMING.equals(network)) {
+            networkType = NetworkType.NOT_ROAMING;
+        }
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(TransferWorker.class)
+                .setConstraints(new Constraints.Builder().setRequiredNetworkType(networkType).build())
+                .setInputData(input)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .addTag(TAG);
+        if (expedited) {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(requestId, ExistingWorkPolicy.KEEP, builder.build());
+    }
+
+    public void cancel(String requestId) {
+        WorkManager.getInstance(context).cancelUniqueWork(requestId);
+        setUploadId(requestId, null);
+        clearStalls(requestId);
+        downloadJournal(requestId).delete();
+    }
+
+    /**
+     * 后台下载的日志，任务被系统中断后重新执行时跳过已完成的段
+     */
+    public DownloadJournal downloadJournal(String requestId) {
+        return DownloadJournal.open(new File(new File(context.getFilesDir(), DownloadJournal.DIRECTORY),
+                Digests.sha1Hex(requestId)));
+    }
+
+    /**
+     * 记录一次被系统中断的执行，和上次中断相比有进展时重新计数
+     * @param progress 本次执行结束时已完成的字节数
+     * @return 连续没有进展的中断次数
+     */
+    public int recordStop(String requestId, long progress) {
+        long previous = preferences.getLong(KEY_PROGRESS + requestId, -1);
+        int stalls = progress > previous ? 0 : preferences.getInt(KEY_STALLS + requestId, 0) + 1;
+        preferences.edit()
+                .putLong(KEY_PROGRESS + requestId, Math.max(progress, previous))
+                .putInt(KEY_STALLS + requestId, stalls)
+                .commit();
+        return stalls;
+    }
+
+    public int getStalls(String requestId) {
+        return preferences.getInt(KEY_STALLS + requestId, 0);
+    }
+
+    public void clearStalls(String requestId) {
+        preferences.edit().remove(KEY_PROGRESS + requestId).remove(KEY_STALLS + requestId).apply();
+    }
+
+    /**
+     * 先保存结果，应用在前台时再转发；JS 可能在转发前后被重新加载，结果要等 acknowledgeResult 后才删除
+     */
+    public void addResult(Result result) {
+        synchronized (BackgroundTransfers.class) {
+            try {
+                JSONArray saved = new JSONArray(preferences.getString(KEY_RESULTS, "[]"));
+                JSONArray results = new JSONArray();
+                // 同一个任务只保留最后一次的结果
+                for (int i = 0; i < saved.length(); i++) {
+                    JSONObject item = saved.getJSONObject(i);
+                    if (!result.requestId.equals(item.optString("requestId"))) {
+                        results.put(item);
+                    }
+                }
+                results.put(result.toJson());
+                preferences.edit().putString(KEY_RESULTS, results.toString()).commit();
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onResult(result);
+        }
+    }
+
+    /**
+     * 尚未被 JS 确认的结果
+     */
+    public List<Result> getResults() {
+        List<Result> results = new ArrayList<>();
+        synchronized (BackgroundTransfers.class) {
+            try {
+                JSONArray saved = new JSONArray(preferences.getString(KEY_RESULTS, "[]"));
+                for (int i = 0; i < saved.length(); i++) {
+                    results.add(Result.fromJson(saved.getJSONObject(i)));
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * JS 处理完结果后删除
+     */
+    public void acknowledgeResult(String requestId) {
+        synchronized (BackgroundTransfers.class) {
+            try {
+                JSONArray saved = new JSONArray(preferences.getString(KEY_RESULTS, "[]"));
+                JSONArray results = new JSONArray();
+                for (int i = 0; i < saved.length(); i++) {
+                    JSONObject item = saved.getJSONObject(i);
+                    if (!requestId.equals(item.optString("requestId"))) {
+                        results.put(item);
+                    }
+                }
+                preferences.edit().putString(KEY_RESULTS, results.toString()).commit();
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 后台上传的 uploadId，任务被系统中断后重新执行时用它续传
+     */
+    @Nullable
+    public String getUploadId(String requestId) {
+        return preferences.getString(KEY_UPLOAD_ID + requestId, null);
+    }
+
+    public void setUploadId(String requestId, @Nullable String uploadId) {
+        if (uploadId != null) {
+            preferences.edit().putString(KEY_UPLOAD_ID + requestId, uploadId).apply();
+        } else {
+            preferences.edit().remove(KEY_UPLOAD_ID + requestId).apply();
+        }
+    }
+}
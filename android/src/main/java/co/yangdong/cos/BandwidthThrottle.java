@@ -0,0 +1,112 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 令牌桶限速
+ * SDK 在传输线程上同步回调进度，按新增的字节数在回调里取令牌，令牌不足时阻塞传输线程，从而限制这个连接的读写速度
+ * 回调时数据已经写入 socket，所以短时间内仍可能超出限速，超出的量不超过 socket 缓冲区，长时间的平均速度受限
+ * 单个请求的限速可以挂在全局限速下面，取令牌时两级都要满足
+ */
+public class BandwidthThrottle {
+
+    // OkHttp 取消请求时不会中断传输线程，等待时分段睡眠，每段之后检查请求是否已暂停或取消
+    static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Nullable
+    private final BandwidthThrottle parent;
+    // 每秒字节数，不大于 0 表示不限速
+    private long rate;
+    // 可以为负数，表示已经预支、后来的请求需要排队等待的量
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public BandwidthThrottle(long bytesPerSecond, @Nullable BandwidthThrottle parent) {
+        this.parent = parent;
+        setRate(bytesPerSecond);
+    }
+
+    public synchronized void setRate(long bytesPerSecond) {
+        refill();
+        rate = Math.max(bytesPerSecond, 0);
+        // 桶容量为一秒的流量，空闲之后最多突发一秒
+        tokens = Math.min(tokens, rate);
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * 取出 bytes 个令牌，不够时阻塞到补足为止
+     * @param cancelled 返回 true 时不再等待
+     * @return 是否取到令牌，请求已取消或线程被中断时返回 false
+     */
+    public boolean acquire(long bytes, @Nullable BooleanSupplier cancelled) {
+        if (bytes <= 0) {
+            return true;
+        }
+        long waitNanos = 0;
+        synchronized (this) {
+            if (rate > 0) {
+                refill();
+                tokens -= bytes;
+                if (tokens < 0) {
+                    waitNanos = (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+                }
+            }
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, SLICE_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return parent == null || parent.acquire(bytes, cancelled);
+    }
+
+    public CosXmlProgressListener wrap(@Nullable CosXmlProgressListener listener) {
+        return wrap(listener, null);
+    }
+
+    /**
+     * 包装进度回调，进度回退时说明请求重新开始，从新的位置继续计数
+     * @param cancelled 请求暂停或取消后返回 true，正在等待的传输线程随即返回
+     */
+    public CosXmlProgressListener wrap(@Nullable CosXmlProgressListener listener,
+                                       @Nullable BooleanSupplier cancelled) {
+        return new CosXmlProgressListener() {
+            private long transferred = 0;
+
+            @Override
+            public void onProgress(long complete, long target) {
+                if (complete > transferred) {
+                    acquire(complete - transferred, cancelled);
+                }
+                transferred = complete;
+                if (listener != null) {
+                    listener.onProgress(complete, target);
+                }
+            }
+        };
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(rate, tokens + (double) (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        refilledAt = now;
+    }
+}
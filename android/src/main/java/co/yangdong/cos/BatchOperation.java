@@ -0,0 +1,232 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量操作
+ * 多个对象共用线程池，同时执行的数量不超过 concurrency，记录每一项和整体的进度与结果
+ */
+public class BatchOperation {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    public interface Progress {
+        void onProgress(long complete, long target);
+    }
+
+    /**
+     * 执行一项，阻塞直到完成
+     * @return 对象的 eTag，没有时返回 null
+     */
+    public interface Action {
+        @Nullable
+        String run(int index, Progress progress) throws Exception;
+    }
+
+    public interface Listener {
+        void onComplete(BatchOperation batch);
+    }
+
+    /**
+     * 这一项内部已经按重试策略重试过，批量操作不再整体重试
+     */
+    public static class RetriedException extends Exception {
+        public RetriedException(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public String toString() {
+            return getCause().toString();
+        }
+    }
+
+    public static class Item {
+        public final int index;
+        public long complete;
+        public long target;
+        public boolean done;
+        public boolean success;
+        @Nullable
+        public String eTag;
+        @Nullable
+        public String error;
+        boolean changed;
+
+        Item(int index) {
+            this.index = index;
+        }
+
+        Item copy() {
+            Item copy = new Item(index);
+            copy.complete = complete;
+            copy.target = target;
+            copy.done = done;
+            copy.success = success;
+            copy.eTag = eTag;
+            copy.error = error;
+            return copy;
+        }
+    }
+
+    private final String id;
+    private final Executor executor;
+    private final int concurrency;
+    private final Action action;
+    private final Listener listener;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private final List<Item> items = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private int running;
+    private int completed;
+    private int failed;
+
+    public BatchOperation(String id, int count, int concurrency, Executor executor,
+                          Action action, Listener listener) {
+        this.id = id;
+        this.executor = executor;
+        this.concurrency = Math.max(1, Math.min(concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY, count));
+        this.action = action;
+        this.listener = listener;
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(i));
+        }
+    }
+
+    /**
+     * 失败的项在当前执行者上等待后重试，不影响其他执行者
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * 启动 concurrency 个执行者，各自依次领取下一项，直到全部领完
+     */
+    public void start() {
+        if (items.isEmpty()) {
+            listener.onComplete(this);
+            return;
+        }
+        synchronized (this) {
+            running = concurrency;
+        }
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(this::drain);
+        }
+    }
+
+    public synchronized int getCompleted() {
+        return completed;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    public synchronized long getProcessedBytes() {
+        long bytes = 0;
+        for (Item item : items) {
+            bytes += item.complete;
+        }
+        return bytes;
+    }
+
+    public synchronized long getTargetBytes() {
+        long bytes = 0;
+        for (Item item : items) {
+            bytes += item.target;
+        }
+        return bytes;
+    }
+
+    /**
+     * 上次调用之后有变化的项
+     */
+    public synchronized List<Item> takeChanged() {
+        List<Item> changed = new ArrayList<>();
+        for (Item item : items) {
+            if (item.changed) {
+                item.changed = false;
+                changed.add(item.copy());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 按输入顺序返回所有项
+     */
+    public synchronized List<Item> getItems() {
+        List<Item> copies = new ArrayList<>();
+        for (Item item : items) {
+            copies.add(item.copy());
+        }
+        return copies;
+    }
+
+    @Nullable
+    private String run(Item item) throws Exception {
+        for (int retries = 0; ; retries++) {
+            try {
+                return action.run(item.index, (complete, target) -> {
+                    synchronized (this) {
+                        item.complete = complete;
+                        item.target = target;
+                        item.changed = true;
+                    }
+                });
+            } catch (Exception e) {
+                if (e instanceof RetriedException || !retryPolicy.shouldRetry(e, retries)) {
+                    throw e;
+                }
+                Thread.sleep(retryPolicy.delayMillis(retries));
+            }
+        }
+    }
+
+    private void drain() {
+        int index;
+        while ((index = next.getAndIncrement()) < items.size()) {
+            Item item = items.get(index);
+            try {
+                String eTag = run(item);
+                synchronized (this) {
+                    item.done = true;
+                    item.success = true;
+                    item.eTag = eTag;
+                    item.complete = item.target;
+                    item.changed = true;
+                    completed++;
+                }
+            } catch (Exception e) {
+                synchronized (this) {
+                    item.done = true;
+                    item.error = e.toString();
+                    item.changed = true;
+                    failed++;
+                }
+            }
+        }
+        boolean last;
+        synchronized (this) {
+            last = --running == 0;
+        }
+        if (last) {
+            listener.onComplete(this);
+        }
+    }
+}
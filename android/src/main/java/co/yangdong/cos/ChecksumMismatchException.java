@@ -0,0 +1,27 @@
+package co.yangdong.cos;
+
+import java.io.IOException;
+
+/**
+ * 本地计算的校验值与服务端返回的不一致，说明数据在传输中被损坏
+ */
+public class ChecksumMismatchException extends IOException {
+
+    public static final String CODE = "ChecksumMismatch";
+
+    public final ChecksumType type;
+    public final String expected;
+    public final String actual;
+
+    /**
+     * @param target 出错的分片或区间，用于错误信息
+     * @param expected 服务端返回的值
+     * @param actual 本地计算的值
+     */
+    public ChecksumMismatchException(ChecksumType type, String target, String expected, String actual) {
+        super(type + " mismatch for " + target + ": expected " + expected + " but got " + actual);
+        this.type = type;
+        this.expected = expected;
+        this.actual = actual;
+    }
+}
@@ -0,0 +1,27 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 传输时在本地计算的校验值类型
+ */
+public enum ChecksumType {
+    NONE,
+    // 与服务端返回的 x-cos-hash-crc64ecma 比较，分片上传和分段下载都可以按段合并
+    CRC64,
+    // 上传分片时带上 Content-MD5 由服务端校验，并与返回的 ETag 比较，只用于上传
+    MD5;
+
+    /**
+     * @param value "crc64"、"md5"，其他值或为空时不校验
+     */
+    public static ChecksumType from(@Nullable String value) {
+        if ("crc64".equalsIgnoreCase(value)) {
+            return CRC64;
+        }
+        if ("md5".equalsIgnoreCase(value)) {
+            return MD5;
+        }
+        return NONE;
+    }
+}
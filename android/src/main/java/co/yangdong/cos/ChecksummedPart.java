@@ -0,0 +1,79 @@
+package co.yangdong.cos;
+
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 读到内存中并计算了校验值的分片
+ * 数据只读取一次，计算校验值后直接作为请求体上传
+ */
+public class ChecksummedPart {
+
+    public final UploadPartRequest request;
+    public final int partNumber;
+    public final ChecksumType type;
+    public final long crc64;
+    @Nullable
+    public final String md5;
+
+    private ChecksummedPart(UploadPartRequest request, int partNumber, ChecksumType type,
+                            long crc64, @Nullable String md5) {
+        this.request = request;
+        this.partNumber = partNumber;
+        this.type = type;
+        this.crc64 = crc64;
+        this.md5 = md5;
+    }
+
+    /**
+     * MD5 模式同时设置 Content-MD5，数据在传输中损坏时服务端直接拒绝
+     */
+    public static ChecksummedPart read(PartSource source, ChecksumType type, String bucket,
+                                       String cosPath, int partNumber, long offset, long size,
+                                       String uploadId) throws IOException, CosXmlClientException {
+        byte[] data = source.read(offset, size);
+        UploadPartRequest request = new UploadPartRequest(bucket, cosPath, partNumber, data, uploadId);
+        long crc64 = Crc64.update(0, data, 0, data.length);
+        String md5 = null;
+        if (type == ChecksumType.MD5) {
+            byte[] digest;
+            try {
+                digest = MessageDigest.getInstance("MD5").digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            request.setRequestHeaders("Content-MD5", Base64.encodeToString(digest, Base64.NO_WRAP));
+            md5 = Digests.hex(digest);
+        }
+        return new ChecksummedPart(request, partNumber, type, crc64, md5);
+    }
+
+    /**
+     * 与服务端返回的 x-cos-hash-crc64ecma 或 ETag 比较，服务端没有返回时不校验
+     */
+    public void verify(UploadPartResult result) throws ChecksumMismatchException {
+        String target = "part " + partNumber;
+        if (type == ChecksumType.CRC64) {
+            Long expected = Crc64.parse(CosHeaders.get(result, CosHeaders.CRC64));
+            if (expected != null && expected != crc64) {
+                throw new ChecksumMismatchException(type, target,
+                        Crc64.toString(expected), Crc64.toString(crc64));
+            }
+        }
+        if (type == ChecksumType.MD5 && md5 != null && result.eTag != null) {
+            String eTag = result.eTag.replace("\"", "").toLowerCase();
+            if (!eTag.equals(md5)) {
+                throw new ChecksumMismatchException(type, target, eTag, md5);
+            }
+        }
+    }
+}
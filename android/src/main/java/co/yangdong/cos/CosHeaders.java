@@ -0,0 +1,42 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.model.CosXmlResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读取响应头，头名称不区分大小写
+ */
+public class CosHeaders {
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String CRC64 = "x-cos-hash-crc64ecma";
+
+    @Nullable
+    public static String get(CosXmlResult result, String name) {
+        Map<String, List<String>> headers = result != null ? result.headers : null;
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null
+                    && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    public static long getLong(CosXmlResult result, String name) {
+        String value = get(result, name);
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+/**
+ * CRC-64/ECMA-182，与 COS 响应头 x-cos-hash-crc64ecma 的算法一致
+ * 分段计算的结果可以用 combine 按顺序合并成整个对象的值，不需要重新读取数据
+ */
+public class Crc64 {
+
+    private static final long POLY = 0xC96C5795D7870F42L;
+    private static final long[] TABLE = new long[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            long crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    public static long update(long crc, byte[] bytes, int offset, int length) {
+        crc = ~crc;
+        for (int i = offset; i < offset + length; i++) {
+            crc = TABLE[(int) ((crc ^ bytes[i]) & 0xff)] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+
+    /**
+     * 合并相邻两段的 CRC
+     * @param crc1 前一段的 CRC
+     * @param crc2 后一段的 CRC
+     * @param length2 后一段的长度
+     */
+    public static long combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[64];
+        long[] odd = new long[64];
+
+        // odd 表示在 CRC 后追加一个 0 比特
+        odd[0] = POLY;
+        long row = 1;
+        for (int n = 1; n < 64; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);
+        square(odd, even);
+
+        // 每轮把矩阵平方一次，对应追加的 0 字节数翻倍，按 length2 的二进制位累乘
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    /**
+     * 响应头中是无符号十进制字符串
+     */
+    public static String toString(long crc) {
+        return Long.toUnsignedString(crc);
+    }
+
+    @Nullable
+    public static Long parse(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 64; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
+import com.tencent.qcloud.core.auth.QCloudCredentials;
+import com.tencent.qcloud.core.auth.SessionQCloudCredentials;
+import com.tencent.qcloud.core.common.QCloudClientException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 临时密钥管理
+ * 包装后台临时密钥服务的 provider：密钥过期前在后台提前刷新，并发请求共用同一次刷新，
+ * 刷新结果加密保存，进程重启后在有效期内直接使用
+ */
+public class CredentialManager implements QCloudCredentialProvider {
+
+    // 剩余有效期少于该值时不再使用，需要同步刷新
+    private static final long MIN_REMAINING_SECONDS = 60;
+    // 剩余有效期少于该值时在后台提前刷新
+    private static final long REFRESH_BEFORE_SECONDS = 300;
+
+    public interface Listener {
+        /**
+         * 每次刷新结束后回调
+         * @param latencyMillis 刷新耗时
+         * @param error 失败时的异常
+         */
+        void onRefresh(long latencyMillis, @Nullable Exception error);
+    }
+
+    private final QCloudCredentialProvider delegate;
+    private final CredentialStore store;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final Listener listener;
+
+    private SessionQCloudCredentials credentials;
+    private long expiredTime;
+    private CompletableFuture<SessionQCloudCredentials> refreshing;
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean closed = false;
+
+    public CredentialManager(QCloudCredentialProvider delegate, CredentialStore store,
+                             ScheduledExecutorService scheduler, Executor executor, Listener listener) {
+        this.delegate = delegate;
+        this.store = store;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * 读取保存的密钥，没有可用的密钥时立即在后台获取
+     */
+    public void start() {
+        SessionQCloudCredentials saved = store.load();
+        long[] keyTime = saved != null ? parseKeyTime(saved) : null;
+        synchronized (this) {
+            if (keyTime != null && remainingSeconds(keyTime[1]) > MIN_REMAINING_SECONDS) {
+                credentials = saved;
+                expiredTime = keyTime[1];
+            }
+        }
+        scheduleRefresh();
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public QCloudCredentials getCredentials() throws QCloudClientException {
+        synchronized (this) {
+            if (credentials != null && remainingSeconds(expiredTime) > MIN_REMAINING_SECONDS) {
+                return credentials;
+            }
+        }
+        return awaitRefresh();
+    }
+
+    @Override
+    public void refresh() throws QCloudClientException {
+        awaitRefresh();
+    }
+
+    private QCloudCredentials awaitRefresh() throws QCloudClientException {
+        try {
+            return refreshAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QCloudClientException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof QCloudClientException) {
+                throw (QCloudClientException) cause;
+            }
+            throw new QCloudClientException(cause);
+        }
+    }
+
+    /**
+     * 已有刷新在进行时复用同一次结果
+     */
+    private CompletableFuture<SessionQCloudCredentials> refreshAsync() {
+        CompletableFuture<SessionQCloudCredentials> future;
+        synchronized (this) {
+            if (refreshing != null) {
+                return refreshing;
+            }
+            future = new CompletableFuture<>();
+            refreshing = future;
+        }
+
+        long start = System.nanoTime();
+        Exception error = null;
+        try {
+            delegate.refresh();
+            QCloudCredentials fetched = delegate.getCredentials();
+            if (!(fetched instanceof SessionQCloudCredentials)) {
+                throw new QCloudClientException("unexpected credentials type " + fetched);
+            }
+            SessionQCloudCredentials session = (SessionQCloudCredentials) fetched;
+            long[] keyTime = parseKeyTime(session);
+            if (keyTime == null) {
+                throw new QCloudClientException("invalid key time " + session.getKeyTime());
+            }
+            synchronized (this) {
+                credentials = session;
+                expiredTime = keyTime[1];
+                refreshing = null;
+            }
+            store.save(session, keyTime[0], keyTime[1]);
+            future.complete(session);
+        } catch (Exception e) {
+            error = e;
+            synchronized (this) {
+                refreshing = null;
+            }
+            future.completeExceptionally(e);
+        }
+        listener.onRefresh(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error);
+        if (error == null) {
+            scheduleRefresh();
+        }
+        return future;
+    }
+
+    private void scheduleRefresh() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+            }
+            long delay = 0;
+            if (credentials != null) {
+                long lifetime = remainingSeconds(expiredTime);
+                // 有效期很短时在剩余一半时刷新
+                delay = Math.max(0, lifetime - Math.min(REFRESH_BEFORE_SECONDS, lifetime / 2));
+            }
+            // 刷新是阻塞的网络请求，不占用定时线程；失败时等到下次使用时同步刷新
+            scheduledRefresh = scheduler.schedule(() -> executor.execute(this::refreshAsync),
+                    delay, TimeUnit.SECONDS);
+        }
+    }
+
+    private static long remainingSeconds(long expiredTime) {
+        return expiredTime - System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * keyTime 的格式为 "开始时间;结束时间"，单位秒
+     */
+    @Nullable
+    private static long[] parseKeyTime(SessionQCloudCredentials credentials) {
+        String keyTime = credentials.getKeyTime();
+        String[] fields = keyTime != null ? keyTime.split(";") : new String[0];
+        if (fields.length != 2) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(fields[0].trim()), Long.parseLong(fields[1].trim())};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.qcloud.core.auth.SessionQCloudCredentials;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 临时密钥的加密存储
+ * 密钥用 Android Keystore 中的 AES-GCM 密钥加密后保存在 SharedPreferences，进程重启后在有效期内可以继续使用
+ */
+public class CredentialStore {
+
+    private static final String PREFERENCES = "cos-credentials";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "cos-credentials";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH = 128;
+
+    private final SharedPreferences preferences;
+    private final String name;
+
+    /**
+     * @param name 区分不同的密钥来源，例如临时密钥服务的地址
+     */
+    public CredentialStore(Context context, String name) {
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        this.name = Digests.sha1Hex(name);
+    }
+
+    @Nullable
+    public SessionQCloudCredentials load() {
+        String value = preferences.getString(name, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            String[] parts = value.split(":", 2);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, getKey(),
+                    new GCMParameterSpec(TAG_LENGTH, Base64.decode(parts[0], Base64.NO_WRAP)));
+            String plain = new String(cipher.doFinal(Base64.decode(parts[1], Base64.NO_WRAP)),
+                    StandardCharsets.UTF_8);
+            String[] fields = plain.split("\t", -1);
+            return new SessionQCloudCredentials(fields[0], fields[1], fields[2],
+                    Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+        } catch (Exception e) {
+            // 密钥被系统清除或数据损坏时丢弃，重新获取即可
+            clear();
+            return null;
+        }
+    }
+
+    public void save(SessionQCloudCredentials credentials, long beginTime, long expiredTime) {
+        String plain = credentials.getSecretId() + "\t" + credentials.getSecretKey() + "\t"
+                + credentials.getToken() + "\t" + beginTime + "\t" + expiredTime;
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, getKey());
+            String value = Base64.encodeToString(cipher.getIV(), Base64.NO_WRAP) + ":"
+                    + Base64.encodeToString(cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8)),
+                    Base64.NO_WRAP);
+            preferences.edit().putString(name, value).apply();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void clear() {
+        preferences.edit().remove(name).apply();
+    }
+
+    private static SecretKey getKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,226 @@
+package co.yangdong.cos;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地下载缓存
+ * 以 bucket、key 和 eTag 标识内容，超过容量上限时淘汰最久未使用的对象
+ * 缓存和目标文件之间总是复制，不共用 inode，目标文件之后被改写或续传追加时不会影响缓存内容
+ */
+public class DownloadCache {
+
+    public static final String DIRECTORY = "cos-download-cache";
+    public static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
+    private static final String INDEX = "index";
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long size;
+        public final long maxSize;
+        public final int count;
+
+        Stats(long hits, long misses, long evictions, long size, long maxSize, int count) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.maxSize = maxSize;
+            this.count = count;
+        }
+    }
+
+    private final File directory;
+    // 按访问顺序排列，最久未使用的在前
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public DownloadCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        load();
+    }
+
+    public static String key(String bucket, String cosPath, String eTag) {
+        return Digests.sha1Hex(bucket + "/" + cosPath + "/" + eTag);
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trim();
+        persist();
+    }
+
+    /**
+     * 命中时把缓存内容复制到 target
+     * 只在打开缓存文件时持有锁，复制期间其他缓存操作不受影响；已打开的文件随后被淘汰也能读完
+     * @return 是否命中
+     */
+    public boolean restore(String key, File target) {
+        FileInputStream input;
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                misses++;
+                return false;
+            }
+            try {
+                input = new FileInputStream(new File(directory, key));
+            } catch (FileNotFoundException e) {
+                misses++;
+                return false;
+            }
+            // 更新访问顺序
+            entries.get(key);
+        }
+        try {
+            copy(input, target);
+        } catch (IOException e) {
+            e.printStackTrace();
+            target.delete();
+            synchronized (this) {
+                misses++;
+            }
+            return false;
+        }
+        synchronized (this) {
+            hits++;
+            persist();
+        }
+        return true;
+    }
+
+    /**
+     * 下载完成后把文件放入缓存
+     */
+    public void store(String key, File source) {
+        synchronized (this) {
+            if (entries.containsKey(key) || maxSize <= 0 || source.length() > maxSize) {
+                return;
+            }
+        }
+        File cached = new File(directory, key);
+        try {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            File temp = new File(directory, key + ".tmp");
+            copy(new FileInputStream(source), temp);
+            if (!temp.renameTo(cached)) {
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (this) {
+            Long previous = entries.put(key, cached.length());
+            size += cached.length() - (previous != null ? previous : 0);
+            trim();
+            persist();
+        }
+    }
+
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            new File(directory, key).delete();
+        }
+        entries.clear();
+        size = 0;
+        persist();
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, size, maxSize, entries.size());
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void load() {
+        File index = new File(directory, INDEX);
+        if (!index.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(index), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 2) {
+                    continue;
+                }
+                File cached = new File(directory, fields[0]);
+                if (cached.exists()) {
+                    entries.put(fields[0], cached.length());
+                    size += cached.length();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        trim();
+    }
+
+    private void persist() {
+        List<Map.Entry<String, Long>> snapshot = new ArrayList<>(entries.entrySet());
+        File index = new File(directory, INDEX);
+        File temp = new File(directory, INDEX + ".tmp");
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : snapshot) {
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        temp.renameTo(index);
+    }
+
+    private static void copy(FileInputStream source, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        target.delete();
+        try (FileChannel input = source.getChannel();
+             FileChannel output = new FileOutputStream(target).getChannel()) {
+            long position = 0;
+            long length = input.size();
+            while (position < length) {
+                position += input.transferTo(position, length - position, output);
+            }
+        }
+    }
+}
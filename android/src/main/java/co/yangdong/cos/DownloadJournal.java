@@ -0,0 +1,147 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分段下载日志
+ * 第一行记录对象的 eTag、大小和分段大小，之后每段写入完成后追加一行，进程被杀后重新执行时跳过已完成的段
+ */
+public class DownloadJournal {
+
+    public static final String DIRECTORY = "cos-download-journal";
+
+    public static class Entry {
+        public final long start;
+        // 这一段的 CRC64，未开启校验时为 0
+        public final long crc64;
+
+        public Entry(long start, long crc64) {
+            this.start = start;
+            this.crc64 = crc64;
+        }
+    }
+
+    private final File file;
+    @Nullable
+    private String eTag;
+    private long objectSize = -1;
+    private long rangeSize = -1;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private DownloadJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 打开日志，文件不存在或内容不完整时返回空日志
+     */
+    public static DownloadJournal open(File file) {
+        DownloadJournal journal = new DownloadJournal(file);
+        journal.load();
+        return journal;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String[] header = split(reader.readLine(), 3);
+            if (header == null) {
+                return;
+            }
+            String line;
+            List<Entry> loaded = new ArrayList<>();
+            while ((line = reader.readLine()) != null) {
+                // 进程在写入途中被杀时最后一行可能不完整，直接丢弃
+                String[] fields = split(line, 2);
+                Long crc64 = fields != null ? Crc64.parse(fields[1]) : null;
+                if (crc64 != null) {
+                    loaded.add(new Entry(Long.parseLong(fields[0]), crc64));
+                }
+            }
+            eTag = header[0];
+            objectSize = Long.parseLong(header[1]);
+            rangeSize = Long.parseLong(header[2]);
+            entries.addAll(loaded);
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Nullable
+    private static String[] split(@Nullable String line, int count) {
+        if (line == null) {
+            return null;
+        }
+        String[] fields = line.split("\t");
+        return fields.length == count ? fields : null;
+    }
+
+    /**
+     * 日志是否对应同一个对象，对象被覆盖后不能续传
+     */
+    public synchronized boolean matches(@Nullable String eTag, long objectSize) {
+        return eTag != null && eTag.equals(this.eTag) && objectSize == this.objectSize && rangeSize > 0;
+    }
+
+    public synchronized long getRangeSize() {
+        return rangeSize;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * 重新开始下载时清空记录并写入新的对象信息
+     */
+    public synchronized void reset(String eTag, long objectSize, long rangeSize) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            writer.write(eTag + "\t" + objectSize + "\t" + rangeSize + "\n");
+            writer.flush();
+            output.getFD().sync();
+        }
+        this.eTag = eTag;
+        this.objectSize = objectSize;
+        this.rangeSize = rangeSize;
+        entries.clear();
+    }
+
+    /**
+     * 段的数据已经写入文件后调用
+     */
+    public synchronized void append(Entry entry) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            writer.write(entry.start + "\t" + Crc64.toString(entry.crc64) + "\n");
+            writer.flush();
+            output.getFD().sync();
+        }
+        entries.add(entry);
+    }
+
+    public synchronized void delete() {
+        entries.clear();
+        eTag = null;
+        file.delete();
+    }
+}
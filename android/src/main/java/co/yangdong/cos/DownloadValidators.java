@@ -0,0 +1,82 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * 记录本地文件对应对象的 eTag 和 Last-Modified
+ * 再次下载到同一路径时用于条件请求，对象未修改时不需要重新下载
+ */
+public class DownloadValidators {
+
+    private static final String PREFERENCES = "cos-download-validators";
+
+    public static class Entry {
+        @Nullable
+        public final String eTag;
+        @Nullable
+        public final String lastModified;
+        final long length;
+
+        Entry(@Nullable String eTag, @Nullable String lastModified, long length) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    private final SharedPreferences preferences;
+
+    public DownloadValidators(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 本地文件存在且大小没有变化时返回上次下载记录的校验值
+     */
+    @Nullable
+    public Entry get(String bucket, String cosPath, File file) {
+        String value = preferences.getString(key(bucket, cosPath, file), null);
+        if (value == null || !file.exists()) {
+            return null;
+        }
+        String[] fields = value.split("\t", -1);
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            Entry entry = new Entry(emptyToNull(fields[0]), emptyToNull(fields[1]), Long.parseLong(fields[2]));
+            return entry.length == file.length() ? entry : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void put(String bucket, String cosPath, File file,
+                    @Nullable String eTag, @Nullable String lastModified) {
+        if (eTag == null && lastModified == null) {
+            remove(bucket, cosPath, file);
+            return;
+        }
+        String value = (eTag != null ? eTag : "") + "\t"
+                + (lastModified != null ? lastModified : "") + "\t" + file.length();
+        preferences.edit().putString(key(bucket, cosPath, file), value).apply();
+    }
+
+    public void remove(String bucket, String cosPath, File file) {
+        preferences.edit().remove(key(bucket, cosPath, file)).apply();
+    }
+
+    private static String key(String bucket, String cosPath, File file) {
+        return Digests.sha1Hex(bucket + "/" + cosPath + "\n" + file.getAbsolutePath());
+    }
+
+    @Nullable
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,77 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 按 路径+大小+修改时间 缓存本地文件的 CRC64
+ * 同一个文件重复上传或分享到多个位置时只需要计算一次
+ */
+public class FileHashCache {
+
+    private static final String PREFERENCES = "cos-file-hash";
+
+    private final SharedPreferences preferences;
+
+    public FileHashCache(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 文件大小和修改时间都没有变化时返回缓存的 CRC64
+     */
+    @Nullable
+    public Long get(File file) {
+        String value = preferences.getString(key(file), null);
+        if (value == null || !file.isFile()) {
+            return null;
+        }
+        String[] fields = value.split("\t", -1);
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(fields[0]) != file.length() || Long.parseLong(fields[1]) != file.lastModified()) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return Crc64.parse(fields[2]);
+    }
+
+    public void put(File file, long crc64) {
+        String value = file.length() + "\t" + file.lastModified() + "\t" + Crc64.toString(crc64);
+        preferences.edit().putString(key(file), value).apply();
+    }
+
+    /**
+     * 计算来源的 CRC64，本地文件优先使用缓存；content:// 和 base64 没有稳定的修改时间，每次重新计算
+     */
+    public long crc64(PartSource source) throws IOException {
+        File file = source.getFile();
+        if (file == null) {
+            return source.crc64();
+        }
+        Long cached = get(file);
+        if (cached != null) {
+            return cached;
+        }
+        long modified = file.lastModified();
+        long crc64 = source.crc64();
+        // 计算期间文件被修改时不缓存
+        if (file.lastModified() == modified) {
+            put(file, crc64);
+        }
+        return crc64;
+    }
+
+    private static String key(File file) {
+        return Digests.sha1Hex(file.getAbsolutePath());
+    }
+}
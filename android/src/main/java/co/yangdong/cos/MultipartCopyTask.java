@@ -0,0 +1,562 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
+import com.tencent.cos.xml.model.object.CopyObjectResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.ListPartsRequest;
+import com.tencent.cos.xml.model.object.ListPartsResult;
+import com.tencent.cos.xml.model.object.UploadPartCopyRequest;
+import com.tencent.cos.xml.model.object.UploadPartCopyResult;
+import com.tencent.cos.xml.model.tag.ListParts;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端复制任务
+ * 源对象不大于分片大小时使用一次 PUT Object - Copy，否则按分片并发 Upload Part - Copy，数据不经过设备
+ * 分片复制和上传一样写入本地日志，暂停后可以用同一个 uploadId 续传
+ * 分片复制不会复制源对象的元数据
+ */
+public class MultipartCopyTask {
+
+    public static final long DEFAULT_PART_SIZE = 32 * 1024 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 8;
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    // 单个分片复制最大 5GB
+    private static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    public interface Listener {
+        void onInit(MultipartCopyTask task);
+
+        void onProgress(MultipartCopyTask task, long complete, long target);
+
+        void onSuccess(MultipartCopyTask task, String eTag);
+
+        void onPaused(MultipartCopyTask task);
+
+        void onFail(MultipartCopyTask task, Exception exception);
+    }
+
+    /**
+     * 复制源，bucket 的格式为 BucketName-APPID
+     */
+    public static class Source {
+        public final String bucket;
+        public final String region;
+        public final String cosPath;
+
+        public Source(String bucket, String region, String cosPath) {
+            this.bucket = bucket;
+            this.region = region;
+            this.cosPath = cosPath;
+        }
+
+        CopyObjectRequest.CopySourceStruct toStruct() {
+            int index = bucket.lastIndexOf('-');
+            String appid = index >= 0 ? bucket.substring(index + 1) : null;
+            return new CopyObjectRequest.CopySourceStruct(appid, bucket, region, cosPath);
+        }
+    }
+
+    private static class Part {
+        final int partNumber;
+        final long offset;
+        final long size;
+        final int retries;
+
+        Part(int partNumber, long offset, long size, int retries) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.size = size;
+            this.retries = retries;
+        }
+    }
+
+    private final CosXmlSimpleService cosXmlService;
+    // 每个分片复制都阻塞一个线程，用自己的线程池，不占用模块中其他传输共用的线程
+    private final ExecutorService executor;
+    private final Source source;
+    private final String bucket;
+    private final String cosPath;
+    private final UploadJournal.Store journalStore;
+    private final long partSize;
+    private final int concurrency;
+    private final Listener listener;
+    private TransferMetrics metrics = TransferMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    @Nullable
+    private ScheduledExecutorService retryScheduler;
+
+    private String uploadId;
+    private long objectSize = -1;
+    private long slice;
+    private UploadJournal journal;
+
+    private final Map<Integer, String> eTags = new HashMap<>();
+    private final List<UploadPartCopyRequest> runningRequests = new ArrayList<>();
+    private final Deque<Part> retryParts = new ArrayDeque<>();
+    private int nextPartNumber = 1;
+    private long nextOffset = 0;
+    private long copiedBytes = 0;
+    private int inFlight = 0;
+    private int pendingRetries = 0;
+    private boolean completing = false;
+    // HEAD、初始化或单次复制期间暂停时，等这一步结束再让出位置
+    private boolean preparing = false;
+    private boolean paused = false;
+    private boolean finished = false;
+
+    public MultipartCopyTask(CosXmlSimpleService cosXmlService, Source source,
+                             String bucket, String cosPath, @Nullable String uploadId,
+                             UploadJournal.Store journalStore, long partSize, int concurrency,
+                             Listener listener) {
+        this.cosXmlService = cosXmlService;
+        this.source = source;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.uploadId = uploadId;
+        this.journalStore = journalStore;
+        this.partSize = partSize > 0 ? partSize : DEFAULT_PART_SIZE;
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+        this.listener = listener;
+        // 线程在提交任务时才创建，排队中的任务不占用线程
+        this.executor = Executors.newFixedThreadPool(this.concurrency + 1);
+    }
+
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService retryScheduler) {
+        this.retryPolicy = retryPolicy;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 单次复制时为 null
+     */
+    @Nullable
+    public synchronized String getUploadId() {
+        return uploadId;
+    }
+
+    public synchronized long getObjectSize() {
+        return objectSize;
+    }
+
+    public void start() {
+        synchronized (this) {
+            preparing = true;
+        }
+        execute(this::prepare);
+    }
+
+    /**
+     * 暂停分片复制，已完成的分片保留在服务端
+     * 单次复制无法取消，暂停会等到复制结束，结果仍按成功或失败回调
+     */
+    public void pause() {
+        List<UploadPartCopyRequest> requests;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            paused = true;
+            requests = new ArrayList<>(runningRequests);
+        }
+        for (UploadPartCopyRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        settleIfIdle();
+    }
+
+    private void prepare() {
+        try {
+            HeadObjectResult head = call(TransferMetrics.OP_HEAD_OBJECT, () -> {
+                HeadObjectRequest request = new HeadObjectRequest(source.bucket, source.cosPath);
+                request.setRegion(source.region);
+                return cosXmlService.headObject(request);
+            });
+            long size = CosHeaders.getLong(head, CosHeaders.CONTENT_LENGTH);
+            if (size < 0) {
+                throw new CosXmlClientException(ClientErrorCode.INTERNAL_ERROR.getCode(),
+                        "missing Content-Length for " + source.cosPath);
+            }
+            synchronized (this) {
+                objectSize = size;
+                long minimum = (size + MAX_PARTS - 1) / MAX_PARTS;
+                slice = Math.min(Math.max(Math.max(partSize, minimum), MIN_PART_SIZE), MAX_PART_SIZE);
+            }
+            if (isPaused()) {
+                endPrepare();
+                return;
+            }
+
+            if (uploadId == null && size <= slice) {
+                copyObject();
+                return;
+            }
+            if (uploadId == null) {
+                InitMultipartUploadResult result = call(TransferMetrics.OP_INIT_UPLOAD,
+                        () -> cosXmlService.initMultipartUpload(new InitMultipartUploadRequest(bucket, cosPath)));
+                String created = result.initMultipartUpload.uploadId;
+                boolean abandoned;
+                synchronized (this) {
+                    abandoned = paused;
+                    if (!abandoned) {
+                        uploadId = created;
+                        journal = journalStore.open(bucket, cosPath, uploadId);
+                    }
+                }
+                if (abandoned) {
+                    // 还没有通知调用方，暂停后也不会续传，直接放弃这次初始化
+                    abort(created);
+                    endPrepare();
+                    return;
+                }
+                listener.onInit(this);
+            } else {
+                UploadJournal existing = journalStore.open(bucket, cosPath, uploadId);
+                synchronized (this) {
+                    journal = existing;
+                }
+                if (existing.isEmpty()) {
+                    ListPartsResult result = call(TransferMetrics.OP_LIST_PARTS,
+                            () -> cosXmlService.listParts(new ListPartsRequest(bucket, cosPath, uploadId)));
+                    restoreParts(result.listParts);
+                } else {
+                    restoreJournal(existing.getEntries());
+                }
+            }
+        } catch (Exception e) {
+            if (!endPrepare()) {
+                fail(e);
+            }
+            return;
+        }
+        if (endPrepare()) {
+            return;
+        }
+        listener.onProgress(this, getCopiedBytes(), getObjectSize());
+        schedule();
+    }
+
+    /**
+     * 准备阶段结束，期间已暂停时让出位置
+     * @return 是否已暂停
+     */
+    private synchronized boolean endPrepare() {
+        preparing = false;
+        if (paused) {
+            settleIfIdleLocked();
+            return true;
+        }
+        return false;
+    }
+
+    private void copyObject() throws CosXmlClientException, CosXmlServiceException {
+        CopyObjectResult result = call(TransferMetrics.OP_COPY_OBJECT,
+                () -> cosXmlService.copyObject(new CopyObjectRequest(bucket, cosPath, source.toStruct())));
+        synchronized (this) {
+            preparing = false;
+            if (finished) {
+                return;
+            }
+            finished = true;
+            copiedBytes = objectSize;
+        }
+        executor.shutdown();
+        listener.onProgress(this, objectSize, objectSize);
+        listener.onSuccess(this, result.copyObject != null ? result.copyObject.eTag : null);
+    }
+
+    private void abort(String uploadId) {
+        TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+        try {
+            cosXmlService.abortMultiUpload(new AbortMultiUploadRequest(bucket, cosPath, uploadId));
+            call.success(0);
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+        }
+    }
+
+    /**
+     * 只续用从 1 开始连续的分片
+     */
+    private synchronized void restoreParts(@Nullable ListParts listParts) throws IOException {
+        if (listParts == null || listParts.parts == null) {
+            return;
+        }
+        List<ListParts.Part> parts = new ArrayList<>(listParts.parts);
+        Collections.sort(parts, Comparator.comparingInt(part -> Integer.parseInt(part.partNumber)));
+        for (ListParts.Part part : parts) {
+            int partNumber = Integer.parseInt(part.partNumber);
+            if (partNumber != nextPartNumber) {
+                break;
+            }
+            long size = Long.parseLong(part.size);
+            journal.append(new UploadJournal.Entry(partNumber, nextOffset, size, part.eTag));
+            restore(partNumber, size, part.eTag);
+        }
+    }
+
+    private synchronized void restoreJournal(List<UploadJournal.Entry> entries) {
+        List<UploadJournal.Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, Comparator.comparingInt(entry -> entry.partNumber));
+        for (UploadJournal.Entry entry : sorted) {
+            if (entry.partNumber != nextPartNumber || entry.offset != nextOffset) {
+                break;
+            }
+            restore(entry.partNumber, entry.size, entry.eTag);
+        }
+    }
+
+    private void restore(int partNumber, long size, String eTag) {
+        eTags.put(partNumber, eTag);
+        nextOffset += size;
+        copiedBytes += size;
+        nextPartNumber++;
+    }
+
+    private void schedule() {
+        List<Part> parts = new ArrayList<>();
+        boolean complete;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            while (inFlight < concurrency && !retryParts.isEmpty()) {
+                parts.add(retryParts.poll());
+                inFlight++;
+            }
+            while (inFlight < concurrency && nextOffset < objectSize) {
+                long size = Math.min(slice, objectSize - nextOffset);
+                parts.add(new Part(nextPartNumber, nextOffset, size, 0));
+                nextPartNumber++;
+                nextOffset += size;
+                inFlight++;
+            }
+            complete = parts.isEmpty() && inFlight == 0 && !completing
+                    && retryParts.isEmpty() && pendingRetries == 0;
+            if (complete) {
+                completing = true;
+            }
+        }
+
+        for (Part part : parts) {
+            execute(() -> copyPart(part));
+        }
+        if (complete) {
+            execute(this::complete);
+        }
+    }
+
+    private void copyPart(Part part) {
+        UploadPartCopyRequest request = new UploadPartCopyRequest(bucket, cosPath, part.partNumber,
+                uploadId, source.toStruct(), part.offset, part.offset + part.size - 1);
+        synchronized (this) {
+            if (paused || finished) {
+                inFlight--;
+                settleIfIdleLocked();
+                return;
+            }
+            runningRequests.add(request);
+        }
+
+        TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_UPLOAD_PART_COPY);
+        try {
+            UploadPartCopyResult result = cosXmlService.copyObject(request);
+            String eTag = result.copyObject != null ? result.copyObject.eTag : null;
+            if (eTag == null) {
+                throw new CosXmlClientException(ClientErrorCode.INTERNAL_ERROR.getCode(),
+                        "missing ETag for part " + part.partNumber);
+            }
+            call.success(0);
+            try {
+                journal.append(new UploadJournal.Entry(part.partNumber, part.offset, part.size, eTag));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                runningRequests.remove(request);
+                inFlight--;
+                eTags.put(part.partNumber, eTag);
+                copiedBytes += part.size;
+            }
+            listener.onProgress(this, getCopiedBytes(), getObjectSize());
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            boolean retry;
+            synchronized (this) {
+                runningRequests.remove(request);
+                inFlight--;
+                if (paused) {
+                    call.cancel();
+                    settleIfIdleLocked();
+                    return;
+                }
+                retry = retryScheduler != null && retryPolicy.shouldRetry(e, part.retries);
+                if (retry) {
+                    pendingRetries++;
+                }
+            }
+            call.fail(e);
+            if (!retry) {
+                fail(e);
+                return;
+            }
+            metrics.recordRetry(bucket, TransferMetrics.OP_UPLOAD_PART_COPY);
+            Part next = new Part(part.partNumber, part.offset, part.size, part.retries + 1);
+            retryScheduler.schedule(() -> requeue(next), retryPolicy.delayMillis(part.retries),
+                    TimeUnit.MILLISECONDS);
+            schedule();
+            return;
+        }
+        schedule();
+        settleIfIdle();
+    }
+
+    private void requeue(Part part) {
+        synchronized (this) {
+            pendingRetries--;
+            if (finished || paused) {
+                return;
+            }
+            retryParts.addFirst(part);
+        }
+        schedule();
+    }
+
+    private synchronized long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    private void complete() {
+        Map<Integer, String> parts;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            parts = new HashMap<>(eTags);
+        }
+        try {
+            CompleteMultiUploadResult result = call(TransferMetrics.OP_COMPLETE_UPLOAD,
+                    () -> cosXmlService.completeMultiUpload(
+                            new CompleteMultiUploadRequest(bucket, cosPath, uploadId, parts)));
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+            }
+            journalStore.delete(bucket, cosPath, uploadId);
+            executor.shutdown();
+            listener.onSuccess(this, result.completeMultipartUpload != null
+                    ? result.completeMultipartUpload.eTag : null);
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            fail(e);
+        }
+    }
+
+    private interface Request<T> {
+        T execute() throws CosXmlClientException, CosXmlServiceException;
+    }
+
+    /**
+     * 执行一个请求并记录指标，失败时按重试策略在当前线程等待后重试
+     */
+    private <T> T call(String operation, Request<T> request)
+            throws CosXmlClientException, CosXmlServiceException {
+        for (int retries = 0; ; retries++) {
+            TransferMetrics.Call call = metrics.begin(bucket, operation);
+            try {
+                T result = request.execute();
+                call.success(0);
+                return result;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                if (!retryPolicy.shouldRetry(e, retries) || isPaused()) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                metrics.recordRetry(bucket, operation);
+            }
+        }
+    }
+
+    private synchronized boolean isPaused() {
+        return paused;
+    }
+
+    private void settleIfIdle() {
+        synchronized (this) {
+            settleIfIdleLocked();
+        }
+    }
+
+    private void settleIfIdleLocked() {
+        if (paused && !finished && inFlight == 0 && !preparing) {
+            finished = true;
+            execute(() -> {
+                executor.shutdown();
+                listener.onPaused(this);
+            });
+        }
+    }
+
+    /**
+     * 任务结束后线程池已关闭，之后提交的工作都可以丢弃
+     */
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void fail(Exception e) {
+        List<UploadPartCopyRequest> requests;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            requests = new ArrayList<>(runningRequests);
+        }
+        for (UploadPartCopyRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        executor.shutdown();
+        listener.onFail(this, e);
+    }
+}
@@ -0,0 +1,739 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.ListPartsRequest;
+import com.tencent.cos.xml.model.object.ListPartsResult;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+import com.tencent.cos.xml.model.tag.ListParts;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片并发上传任务
+ * 在原生层完成 初始化 -> 查询已上传分片 -> 上传分片 -> 完成上传 的整个流程，同时保持多个分片在传输中
+ * 每个任务使用自己的线程池，线程数按并发数分配，任务结束后关闭，不同任务之间不会互相占用线程
+ */
+public class MultipartUploadTask {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    public interface Listener {
+        void onInit(MultipartUploadTask task);
+
+        void onProgress(MultipartUploadTask task, long complete, long target);
+
+        void onSuccess(MultipartUploadTask task, CompleteMultipartUploadResult result);
+
+        void onPaused(MultipartUploadTask task);
+
+        void onFail(MultipartUploadTask task, Exception exception);
+    }
+
+    private static class Part {
+        final int partNumber;
+        final long offset;
+        final long size;
+        // 这个分片已经重试的次数
+        final int retries;
+
+        Part(int partNumber, long offset, long size) {
+            this(partNumber, offset, size, 0);
+        }
+
+        Part(int partNumber, long offset, long size, int retries) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.size = size;
+            this.retries = retries;
+        }
+    }
+
+    private final CosXmlSimpleService cosXmlService;
+    // 分片上传是阻塞调用，每个分片占一个线程，另外留一个给初始化、校对和完成上传
+    private final ExecutorService executor;
+    private final String bucket;
+    private final String cosPath;
+    private final PartSource source;
+    private final UploadJournal.Store journalStore;
+    private final long sliceSize;
+    private final int concurrency;
+    private final Listener listener;
+    private TransferMetrics metrics = TransferMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    @Nullable
+    private ScheduledExecutorService retryScheduler;
+    private ChecksumType checksum = ChecksumType.NONE;
+    @Nullable
+    private BandwidthThrottle throttle;
+
+    private String uploadId;
+    private long fileSize;
+    private PartSizePolicy partSizePolicy;
+    private UploadJournal journal;
+
+    private final Map<Integer, String> eTags = new HashMap<>();
+    private final Map<Integer, Long> partProgress = new HashMap<>();
+    private final List<UploadPartRequest> runningRequests = new ArrayList<>();
+    // 从本地日志恢复、尚未被调度循环确认的分片
+    private final Map<Integer, UploadJournal.Entry> restored = new HashMap<>();
+    private final List<UploadJournal.Entry> journalEntries = new ArrayList<>();
+    // 后台校对时发现服务端缺失、需要按原偏移重传的分片
+    private final Deque<Part> retryParts = new ArrayDeque<>();
+    private int nextPartNumber = 1;
+    private long nextOffset = 0;
+    private long uploadedBytes = 0;
+    private int inFlight = 0;
+    // 失败后等待重试的分片数，等待期间不占用并发名额
+    private int pendingRetries = 0;
+    private boolean scheduledAny = false;
+    private boolean completing = false;
+    private boolean reconciled = true;
+    // 初始化或查询分片列表期间暂停时，等这一步结束再让出位置
+    private boolean preparing = false;
+    private boolean paused = false;
+    private boolean finished = false;
+    // 开启了校验但没能完成校验，对象已经合并成功
+    private boolean unverified = false;
+
+    public MultipartUploadTask(CosXmlSimpleService cosXmlService, String bucket, String cosPath,
+                               @Nullable String uploadId, PartSource source, UploadJournal.Store journalStore, long sliceSize,
+                               int concurrency, Listener listener) {
+        this.cosXmlService = cosXmlService;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.uploadId = uploadId;
+        this.source = source;
+        this.journalStore = journalStore;
+        this.sliceSize = sliceSize;
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+        this.listener = listener;
+        // 线程在提交任务时才创建，排队中的任务不占用线程
+        this.executor = Executors.newFixedThreadPool(this.concurrency + 1);
+    }
+
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 失败的分片单独等待后重新排队，不影响其他分片继续上传
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService retryScheduler) {
+        this.retryPolicy = retryPolicy;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 开启后每个分片读到内存中，上传前计算校验值并与服务端返回的比较
+     * CRC64 模式在完成上传时把各分片的值按顺序合并，与整个对象的 CRC64 比较
+     */
+    public void setChecksum(ChecksumType checksum) {
+        this.checksum = checksum;
+    }
+
+    public void setThrottle(@Nullable BandwidthThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public synchronized String getUploadId() {
+        return uploadId;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getCosPath() {
+        return cosPath;
+    }
+
+    /**
+     * 开启校验时，续传的分片无法重新读取等原因导致没有校验整个对象
+     */
+    public synchronized boolean isUnverified() {
+        return unverified;
+    }
+
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 当前策略选择的分片大小，续传时沿用
+     */
+    public synchronized long getPartSize() {
+        return partSizePolicy != null ? partSizePolicy.getPartSize() : sliceSize;
+    }
+
+    public void start() {
+        synchronized (this) {
+            preparing = true;
+        }
+        execute(this::prepare);
+    }
+
+    /**
+     * 暂停上传，正在传输的分片会被取消，已完成的分片保留在服务端，可以用同一个 uploadId 续传
+     */
+    public void pause() {
+        List<UploadPartRequest> requests;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            paused = true;
+            requests = new ArrayList<>(runningRequests);
+        }
+        for (UploadPartRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        settleIfIdle();
+    }
+
+    private void prepare() {
+        try {
+            synchronized (this) {
+                fileSize = source.size();
+                long maxPartSize = checksum != ChecksumType.NONE
+                        ? Math.min(source.maxPartSize(), PartSource.MAX_BUFFERED_PART_SIZE)
+                        : source.maxPartSize();
+                partSizePolicy = new PartSizePolicy(fileSize, sliceSize, maxPartSize);
+            }
+            if (isPaused()) {
+                endPrepare();
+                return;
+            }
+
+            if (uploadId == null) {
+                InitMultipartUploadResult result = call(TransferMetrics.OP_INIT_UPLOAD,
+                        () -> cosXmlService.initMultipartUpload(new InitMultipartUploadRequest(bucket, cosPath)));
+                String created = result.initMultipartUpload.uploadId;
+                boolean abandoned;
+                synchronized (this) {
+                    abandoned = paused;
+                    if (!abandoned) {
+                        uploadId = created;
+                        journal = journalStore.open(bucket, cosPath, uploadId);
+                    }
+                }
+                if (abandoned) {
+                    // 还没有通知调用方，暂停后也不会续传，直接放弃这次初始化
+                    abort(created);
+                    endPrepare();
+                    return;
+                }
+                listener.onInit(this);
+            } else {
+                UploadJournal existing = journalStore.open(bucket, cosPath, uploadId);
+                synchronized (this) {
+                    journal = existing;
+                }
+                if (existing.isEmpty()) {
+                    ListPartsResult result = call(TransferMetrics.OP_LIST_PARTS,
+                            () -> cosXmlService.listParts(new ListPartsRequest(bucket, cosPath, uploadId)));
+                    restoreParts(result.listParts);
+                } else {
+                    // 本地日志可以直接续传，服务端分片列表在后台校对
+                    restoreJournal(existing.getEntries());
+                    execute(this::reconcile);
+                }
+            }
+        } catch (Exception e) {
+            if (!endPrepare()) {
+                fail(e);
+            }
+            return;
+        }
+        if (endPrepare()) {
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * 准备阶段结束，期间已暂停时让出位置
+     * @return 是否已暂停
+     */
+    private synchronized boolean endPrepare() {
+        preparing = false;
+        if (paused) {
+            settleIfIdleLocked();
+            return true;
+        }
+        return false;
+    }
+
+    private void abort(String uploadId) {
+        TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+        try {
+            cosXmlService.abortMultiUpload(new AbortMultiUploadRequest(bucket, cosPath, uploadId));
+            call.success(0);
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+        }
+    }
+
+    /**
+     * 只续用从 1 开始连续的分片，断点之后的分片会按新的偏移重新上传并覆盖
+     */
+    private synchronized void restoreParts(@Nullable ListParts listParts) throws IOException {
+        if (listParts == null || listParts.parts == null) {
+            return;
+        }
+        List<ListParts.Part> parts = new ArrayList<>(listParts.parts);
+        Collections.sort(parts, Comparator.comparingInt(part -> Integer.parseInt(part.partNumber)));
+        for (ListParts.Part part : parts) {
+            int partNumber = Integer.parseInt(part.partNumber);
+            if (partNumber != nextPartNumber) {
+                break;
+            }
+            long size = Long.parseLong(part.size);
+            journal.append(new UploadJournal.Entry(partNumber, nextOffset, size, part.eTag));
+            eTags.put(partNumber, part.eTag);
+            nextOffset += size;
+            uploadedBytes += size;
+            nextPartNumber++;
+            scheduledAny = true;
+        }
+    }
+
+    private synchronized void restoreJournal(List<UploadJournal.Entry> entries) {
+        reconciled = false;
+        journalEntries.addAll(entries);
+        for (UploadJournal.Entry entry : entries) {
+            restored.put(entry.partNumber, entry);
+            eTags.put(entry.partNumber, entry.eTag);
+            uploadedBytes += entry.size;
+        }
+    }
+
+    private void reconcile() {
+        try {
+            ListPartsResult result = call(TransferMetrics.OP_LIST_PARTS,
+                    () -> cosXmlService.listParts(new ListPartsRequest(bucket, cosPath, uploadId)));
+            Map<Integer, String> serverETags = new HashMap<>();
+            if (result.listParts != null && result.listParts.parts != null) {
+                for (ListParts.Part part : result.listParts.parts) {
+                    serverETags.put(Integer.parseInt(part.partNumber), part.eTag);
+                }
+            }
+
+            // 只校对从日志恢复的分片，查询期间新上传的分片不在服务端结果里
+            List<UploadJournal.Entry> dropped = journal.reconcile(serverETags, journalEntries);
+
+            synchronized (this) {
+                for (UploadJournal.Entry entry : dropped) {
+                    if (!entry.eTag.equals(eTags.get(entry.partNumber))) {
+                        continue;
+                    }
+                    eTags.remove(entry.partNumber);
+                    uploadedBytes -= entry.size;
+                    if (restored.remove(entry.partNumber) == null) {
+                        retryParts.add(new Part(entry.partNumber, entry.offset, entry.size));
+                    }
+                }
+            }
+        } catch (CosXmlClientException | CosXmlServiceException | IOException e) {
+            // 校对失败时继续使用本地记录，分片不一致会在完成上传时由服务端报错
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            reconciled = true;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        List<Part> parts = new ArrayList<>();
+        boolean complete;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            while (inFlight < concurrency && !retryParts.isEmpty()) {
+                parts.add(retryParts.poll());
+                inFlight++;
+            }
+            while (inFlight < concurrency && (nextOffset < fileSize || !scheduledAny)) {
+                UploadJournal.Entry done = restored.remove(nextPartNumber);
+                if (done != null) {
+                    if (done.offset == nextOffset) {
+                        nextOffset += done.size;
+                        nextPartNumber++;
+                        scheduledAny = true;
+                        continue;
+                    }
+                    eTags.remove(done.partNumber);
+                    uploadedBytes -= done.size;
+                }
+
+                long size = partSizePolicy.nextPartSize(fileSize - nextOffset, nextPartNumber);
+                // 补齐日志中的空洞时沿用原来的分片边界，后面已上传的分片才能继续使用
+                UploadJournal.Entry following = restored.get(nextPartNumber + 1);
+                if (following != null && following.offset > nextOffset) {
+                    size = following.offset - nextOffset;
+                }
+                parts.add(new Part(nextPartNumber, nextOffset, size));
+                nextPartNumber++;
+                nextOffset += size;
+                inFlight++;
+                scheduledAny = true;
+            }
+            complete = parts.isEmpty() && inFlight == 0 && !completing
+                    && reconciled && retryParts.isEmpty() && pendingRetries == 0;
+            if (complete) {
+                completing = true;
+            }
+        }
+
+        for (Part part : parts) {
+            execute(() -> uploadPart(part));
+        }
+        if (complete) {
+            execute(this::complete);
+        }
+    }
+
+    private void uploadPart(Part part) {
+        UploadPartRequest request = null;
+        TransferMetrics.Call call = null;
+        boolean uploaded = false;
+        Exception error = null;
+        try {
+            ChecksummedPart checksummed = null;
+            if (checksum == ChecksumType.NONE) {
+                request = source.createRequest(bucket, cosPath, part.partNumber,
+                        part.offset, part.size, uploadId);
+            } else {
+                checksummed = ChecksummedPart.read(source, checksum, bucket, cosPath,
+                        part.partNumber, part.offset, part.size, uploadId);
+                request = checksummed.request;
+            }
+            CosXmlProgressListener progressListener = (complete, target) -> onPartProgress(part, complete);
+            request.setProgressListener(throttle != null
+                    ? throttle.wrap(progressListener, this::isStopped) : progressListener);
+            synchronized (this) {
+                if (paused || finished) {
+                    request = null;
+                    return;
+                }
+                runningRequests.add(request);
+            }
+
+            call = metrics.begin(bucket, TransferMetrics.OP_UPLOAD_PART);
+            long startTime = System.nanoTime();
+            UploadPartResult result = cosXmlService.uploadPart(request);
+            if (checksummed != null) {
+                checksummed.verify(result);
+            }
+            call.success(part.size);
+            partSizePolicy.onPartCompleted(part.size,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            try {
+                journal.append(new UploadJournal.Entry(part.partNumber, part.offset,
+                        part.size, result.eTag, checksummed != null ? checksummed.crc64 : null));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                eTags.put(part.partNumber, result.eTag);
+                uploadedBytes += part.size;
+            }
+            uploaded = true;
+        } catch (Exception e) {
+            // SDK 或数据源抛出的运行时异常也在这里结束分片，否则名额不会释放，任务一直不返回
+            error = e;
+        } finally {
+            synchronized (this) {
+                if (request != null) {
+                    runningRequests.remove(request);
+                }
+                inFlight--;
+                partProgress.remove(part.partNumber);
+            }
+            if (error == null) {
+                settleIfIdle();
+            }
+        }
+        if (uploaded) {
+            listener.onProgress(this, currentBytes(), getFileSize());
+            schedule();
+            settleIfIdle();
+            return;
+        }
+        if (error != null) {
+            onPartFailed(part, call, error);
+        }
+    }
+
+    private void onPartFailed(Part part, @Nullable TransferMetrics.Call call, Exception e) {
+        boolean retry;
+        synchronized (this) {
+            if (paused) {
+                if (call != null) {
+                    call.cancel();
+                }
+                settleIfIdleLocked();
+                return;
+            }
+            // 请求还没有发出时的错误来自读取数据源，重试也不会成功
+            retry = call != null && retryScheduler != null && retryPolicy.shouldRetry(e, part.retries);
+            if (retry) {
+                pendingRetries++;
+            }
+        }
+        if (call != null) {
+            call.fail(e);
+        }
+        if (!retry) {
+            fail(e);
+            return;
+        }
+        metrics.recordRetry(bucket, TransferMetrics.OP_UPLOAD_PART);
+        Part next = new Part(part.partNumber, part.offset, part.size, part.retries + 1);
+        retryScheduler.schedule(() -> requeue(next), retryPolicy.delayMillis(part.retries),
+                TimeUnit.MILLISECONDS);
+        // 空出的名额先给后面的分片
+        schedule();
+    }
+
+    private void requeue(Part part) {
+        synchronized (this) {
+            pendingRetries--;
+            if (finished || paused) {
+                return;
+            }
+            retryParts.addFirst(part);
+        }
+        schedule();
+    }
+
+    private void onPartProgress(Part part, long complete) {
+        synchronized (this) {
+            partProgress.put(part.partNumber, Math.min(complete, part.size));
+        }
+        listener.onProgress(this, currentBytes(), getFileSize());
+    }
+
+    private synchronized long currentBytes() {
+        long bytes = uploadedBytes;
+        for (long progress : partProgress.values()) {
+            bytes += progress;
+        }
+        return bytes;
+    }
+
+    private void complete() {
+        Map<Integer, String> parts;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            parts = new HashMap<>(eTags);
+        }
+        try {
+            CompleteMultiUploadResult result = call(TransferMetrics.OP_COMPLETE_UPLOAD,
+                    () -> cosXmlService.completeMultiUpload(
+                            new CompleteMultiUploadRequest(bucket, cosPath, uploadId, parts)));
+            boolean verified = true;
+            if (checksum == ChecksumType.CRC64) {
+                try {
+                    verified = verifyObject(parts, result);
+                } catch (ChecksumMismatchException e) {
+                    // 对象已经合并，uploadId 失效，日志不再有用
+                    journalStore.delete(bucket, cosPath, uploadId);
+                    deleteObject();
+                    fail(e);
+                    return;
+                }
+            }
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                unverified = !verified;
+            }
+            journalStore.delete(bucket, cosPath, uploadId);
+            source.close();
+            executor.shutdown();
+            listener.onSuccess(this, result.completeMultipartUpload);
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 把各分片的 CRC64 按分片编号顺序合并，与整个对象的 CRC64 比较
+     * 本次上传的分片已经在日志中记录了 CRC64，只有续传时恢复的旧分片需要重新读取
+     * @return 是否完成了校验；读取本地文件失败时对象仍然有效，只是没有校验
+     */
+    private boolean verifyObject(Map<Integer, String> parts, CompleteMultiUploadResult result)
+            throws ChecksumMismatchException {
+        Long expected = Crc64.parse(CosHeaders.get(result, CosHeaders.CRC64));
+        if (expected == null) {
+            return false;
+        }
+        Map<Integer, UploadJournal.Entry> entries = new HashMap<>();
+        for (UploadJournal.Entry entry : journal.getEntries()) {
+            entries.put(entry.partNumber, entry);
+        }
+        long crc64 = 0;
+        for (Map.Entry<Integer, String> part : new TreeMap<>(parts).entrySet()) {
+            UploadJournal.Entry entry = entries.get(part.getKey());
+            if (entry == null || !entry.eTag.equals(part.getValue())) {
+                // 日志写入失败时不知道分片的偏移，无法校验
+                return false;
+            }
+            long partCrc64;
+            try {
+                partCrc64 = entry.crc64 != null ? entry.crc64 : crc64(entry.offset, entry.size);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+            crc64 = Crc64.combine(crc64, partCrc64, entry.size);
+        }
+        if (expected != crc64) {
+            throw new ChecksumMismatchException(checksum, cosPath,
+                    Crc64.toString(expected), Crc64.toString(crc64));
+        }
+        return true;
+    }
+
+    /**
+     * 校验失败的对象已经可以被读取，删除后再报错，避免留下损坏的数据；删除失败时只能由调用方处理
+     */
+    private void deleteObject() {
+        try {
+            call(TransferMetrics.OP_DELETE_OBJECTS, () -> {
+                DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(bucket);
+                request.setObjectList(Collections.singletonList(cosPath));
+                request.setQuiet(true);
+                return cosXmlService.deleteMultiObject(request);
+            });
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private long crc64(long offset, long size) throws IOException {
+        long crc64 = 0;
+        for (long position = 0; position < size; position += PartSource.MAX_BUFFERED_PART_SIZE) {
+            byte[] data = source.read(offset + position,
+                    Math.min(PartSource.MAX_BUFFERED_PART_SIZE, size - position));
+            crc64 = Crc64.update(crc64, data, 0, data.length);
+        }
+        return crc64;
+    }
+
+    private interface Request<T> {
+        T execute() throws CosXmlClientException, CosXmlServiceException;
+    }
+
+    /**
+     * 执行一个不传输数据的请求并记录指标，失败时按重试策略在当前线程等待后重试
+     */
+    private <T> T call(String operation, Request<T> request)
+            throws CosXmlClientException, CosXmlServiceException {
+        for (int retries = 0; ; retries++) {
+            TransferMetrics.Call call = metrics.begin(bucket, operation);
+            try {
+                T result = request.execute();
+                call.success(0);
+                return result;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                if (!retryPolicy.shouldRetry(e, retries) || isPaused()) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                metrics.recordRetry(bucket, operation);
+            }
+        }
+    }
+
+    private synchronized boolean isPaused() {
+        return paused;
+    }
+
+    private synchronized boolean isStopped() {
+        return paused || finished;
+    }
+
+    private void settleIfIdle() {
+        synchronized (this) {
+            settleIfIdleLocked();
+        }
+    }
+
+    private void settleIfIdleLocked() {
+        if (paused && !finished && inFlight == 0 && !preparing) {
+            finished = true;
+            execute(() -> {
+                source.close();
+                executor.shutdown();
+                listener.onPaused(this);
+            });
+        }
+    }
+
+    /**
+     * 任务结束后线程池已关闭，之后提交的工作都可以丢弃
+     */
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void fail(Exception e) {
+        List<UploadPartRequest> requests;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            requests = new ArrayList<>(runningRequests);
+        }
+        for (UploadPartRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        source.close();
+        executor.shutdown();
+        listener.onFail(this, e);
+    }
+}
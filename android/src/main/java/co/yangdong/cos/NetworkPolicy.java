@@ -0,0 +1,179 @@
+package co.yangdong.cos;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * 网络策略
+ * 监听默认网络，切换到按流量计费的网络或漫游时按配置暂停传输、减少同时传输的数量或限速
+ */
+public class NetworkPolicy {
+
+    public static final String NETWORK_NONE = "none";
+    public static final String NETWORK_UNMETERED = "unmetered";
+    // 按流量计费的网络，包括蜂窝网络和计费的 Wi-Fi 热点
+    public static final String NETWORK_CELLULAR = "cellular";
+    public static final String NETWORK_ROAMING = "roaming";
+
+    public static class Rule {
+        public static final Rule NONE = new Rule(false, 0, 0);
+
+        public final boolean pause;
+        // 不大于 0 表示沿用 setMaxConcurrentTransfers 的值
+        public final int maxConcurrent;
+        // 每秒字节数，不大于 0 表示不额外限速
+        public final long bandwidth;
+
+        public Rule(boolean pause, int maxConcurrent, long bandwidth) {
+            this.pause = pause;
+            this.maxConcurrent = maxConcurrent;
+            this.bandwidth = bandwidth;
+        }
+
+        /**
+         * 读取 { pause, maxConcurrent, bandwidth }，未配置时返回 null
+         */
+        @Nullable
+        static Rule from(@Nullable ReadableMap options) {
+            if (options == null) {
+                return null;
+            }
+            return new Rule(SafeReadableMap.safeGetBoolean(options, "pause", false),
+                    SafeReadableMap.safeGetInt(options, "maxConcurrent"),
+                    (long) SafeReadableMap.safeGetDouble(options, "bandwidth", 0));
+        }
+    }
+
+    public interface Listener {
+        void onChange(String network, Rule rule);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    @Nullable
+    private Rule cellular;
+    @Nullable
+    private Rule roaming;
+    private String network = NETWORK_UNMETERED;
+    @Nullable
+    private ConnectivityManager.NetworkCallback callback;
+
+    public NetworkPolicy(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * 读取 { cellular, roaming }，漫游没有单独配置时使用 cellular 的规则，都没有配置时停止监听
+     */
+    public void configure(@Nullable ReadableMap options) {
+        boolean configured;
+        synchronized (this) {
+            cellular = options != null ? Rule.from(SafeReadableMap.safeGetMap(options, "cellular")) : null;
+            roaming = options != null ? Rule.from(SafeReadableMap.safeGetMap(options, "roaming")) : null;
+            configured = cellular != null || roaming != null;
+        }
+        if (!configured) {
+            stop();
+        } else {
+            start();
+        }
+    }
+
+    public synchronized String getNetwork() {
+        return network;
+    }
+
+    /**
+     * 当前网络对应的规则
+     */
+    public synchronized Rule getRule() {
+        Rule rule = null;
+        if (NETWORK_ROAMING.equals(network)) {
+            rule = roaming != null ? roaming : cellular;
+        } else if (NETWORK_CELLULAR.equals(network)) {
+            rule = cellular;
+        }
+        return rule != null ? rule : Rule.NONE;
+    }
+
+    private void start() {
+        ConnectivityManager connectivityManager = connectivityManager();
+        if (connectivityManager == null) {
+            return;
+        }
+        synchronized (this) {
+            if (callback != null) {
+                return;
+            }
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    update(classify(connectivityManager, network, capabilities));
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    update(NETWORK_NONE);
+                }
+            };
+        }
+        connectivityManager.registerDefaultNetworkCallback(callback);
+    }
+
+    public void stop() {
+        ConnectivityManager.NetworkCallback registered;
+        synchronized (this) {
+            registered = callback;
+            callback = null;
+            network = NETWORK_UNMETERED;
+        }
+        ConnectivityManager connectivityManager = connectivityManager();
+        if (registered != null && connectivityManager != null) {
+            connectivityManager.unregisterNetworkCallback(registered);
+        }
+    }
+
+    private void update(String next) {
+        synchronized (this) {
+            if (callback == null || next.equals(network)) {
+                return;
+            }
+            network = next;
+        }
+        listener.onChange(next, getRule());
+    }
+
+    @Nullable
+    private ConnectivityManager connectivityManager() {
+        return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private static String classify(ConnectivityManager connectivityManager, Network network,
+                                   @Nullable NetworkCapabilities capabilities) {
+        if (capabilities == null
+                || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return NETWORK_NONE;
+        }
+        boolean roaming;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            roaming = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+        } else {
+            NetworkInfo info = connectivityManager.getNetworkInfo(network);
+            roaming = info != null && info.isRoaming();
+        }
+        if (roaming) {
+            return NETWORK_ROAMING;
+        }
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)
+                ? NETWORK_UNMETERED : NETWORK_CELLULAR;
+    }
+}
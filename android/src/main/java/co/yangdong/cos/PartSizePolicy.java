@@ -0,0 +1,115 @@
+package co.yangdong.cos;
+
+/**
+ * 分片大小策略
+ * 根据文件大小和分片数上限确定初始分片大小，再根据已完成分片的实测吞吐量放大或缩小分片
+ */
+public class PartSizePolicy {
+
+    public static final int MAX_PART_COUNT = 10000;
+    public static final long MIN_PART_SIZE = 1024 * 1024;
+    public static final long MAX_PART_SIZE = 64 * 1024 * 1024;
+
+    // 初始分片数目标，远低于上限，给后续按吞吐量缩小分片留出余量
+    private static final int TARGET_PART_COUNT = 1000;
+
+    // 单个分片期望的传输耗时，耗时过短说明请求开销占比过高，过长则失败重传代价大
+    private static final long TARGET_PART_MILLIS = 4000;
+    private static final double THROUGHPUT_WEIGHT = 0.3;
+
+    private final long fileSize;
+    private final long maxPartSize;
+    private long partSize;
+    private double bytesPerMilli = -1;
+    private long lastUsedAt = System.currentTimeMillis();
+
+    public PartSizePolicy(long fileSize, long preferredPartSize) {
+        this(fileSize, preferredPartSize, MAX_PART_SIZE);
+    }
+
+    /**
+     * @param maxPartSize 分片大小上限，需要读到内存中上传的来源用更小的上限
+     */
+    public PartSizePolicy(long fileSize, long preferredPartSize, long maxPartSize) {
+        this.fileSize = fileSize;
+        this.maxPartSize = Math.min(Math.max(maxPartSize, MIN_PART_SIZE), MAX_PART_SIZE);
+        this.partSize = initialPartSize(fileSize, preferredPartSize, this.maxPartSize);
+    }
+
+    /**
+     * 初始分片大小，大文件按目标分片数放大，并保证能在分片数上限内传完
+     */
+    public static long initialPartSize(long fileSize, long preferredPartSize) {
+        return initialPartSize(fileSize, preferredPartSize, MAX_PART_SIZE);
+    }
+
+    private static long initialPartSize(long fileSize, long preferredPartSize, long maxPartSize) {
+        long size = Math.max(preferredPartSize, minPartSizeFor(fileSize, TARGET_PART_COUNT));
+        return bound(roundToMegabyte(size), fileSize, maxPartSize);
+    }
+
+    public synchronized long getPartSize() {
+        return partSize;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 下一个分片的大小
+     * @param remainingBytes 尚未分配的字节数
+     * @param partNumber 下一个分片的编号
+     */
+    public synchronized long nextPartSize(long remainingBytes, int partNumber) {
+        lastUsedAt = System.currentTimeMillis();
+        int remainingParts = Math.max(MAX_PART_COUNT - partNumber + 1, 1);
+        long size = Math.max(partSize, minPartSizeFor(remainingBytes, remainingParts));
+        return Math.min(size, remainingBytes);
+    }
+
+    /**
+     * 记录一个分片的传输结果，按吞吐量调整后续分片大小，每次最多放大或缩小一倍
+     */
+    public synchronized void onPartCompleted(long bytes, long millis) {
+        lastUsedAt = System.currentTimeMillis();
+        if (bytes < MIN_PART_SIZE || millis <= 0) {
+            return;
+        }
+        double sample = (double) bytes / millis;
+        bytesPerMilli = bytesPerMilli < 0 ? sample
+                : bytesPerMilli * (1 - THROUGHPUT_WEIGHT) + sample * THROUGHPUT_WEIGHT;
+
+        long desired = (long) (bytesPerMilli * TARGET_PART_MILLIS);
+        long next = partSize;
+        if (desired > partSize * 2) {
+            next = partSize * 2;
+        } else if (desired < partSize / 2) {
+            next = partSize / 2;
+        }
+        partSize = bound(next, fileSize, maxPartSize);
+    }
+
+    /**
+     * 距离上次分配或完成分片的时间，用于清理被放弃的上传
+     */
+    public synchronized long getIdleMillis() {
+        return System.currentTimeMillis() - lastUsedAt;
+    }
+
+    private static long minPartSizeFor(long bytes, int parts) {
+        return roundToMegabyte((bytes + parts - 1) / parts);
+    }
+
+    private static long roundToMegabyte(long size) {
+        return (size + MIN_PART_SIZE - 1) / MIN_PART_SIZE * MIN_PART_SIZE;
+    }
+
+    /**
+     * 限制在 [MIN_PART_SIZE, maxPartSize] 内，但不小于分片数上限要求的大小
+     */
+    private static long bound(long size, long fileSize, long maxPartSize) {
+        long limited = Math.min(Math.max(size, MIN_PART_SIZE), maxPartSize);
+        return Math.max(limited, minPartSizeFor(fileSize, MAX_PART_COUNT));
+    }
+}
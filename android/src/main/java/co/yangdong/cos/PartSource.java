@@ -0,0 +1,266 @@
+package co.yangdong.cos;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 分片上传的数据来源
+ * 本地文件直接交给 SDK 按偏移读取；content:// 和 base64 数据按分片读到内存中上传，不需要先复制成临时文件
+ */
+public abstract class PartSource implements Closeable {
+
+    // 需要读到内存中的来源限制分片大小，避免并发上传时占用过多内存
+    public static final long MAX_BUFFERED_PART_SIZE = 8 * 1024 * 1024;
+    private static final long CRC64_MAP_WINDOW = 64 * 1024 * 1024;
+    private static final int CRC64_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * @param fileUri 本地路径、file:// 或 content:// 地址
+     * @param base64 不为空时直接上传这段数据，忽略 fileUri
+     */
+    public static PartSource open(Context context, @Nullable String fileUri, @Nullable String base64)
+            throws IOException {
+        if (base64 != null) {
+            return new BytesSource(Base64.decode(base64, Base64.NO_WRAP));
+        }
+        if (fileUri == null) {
+            throw new FileNotFoundException("fileUri is empty");
+        }
+        if (fileUri.startsWith(ContentResolver.SCHEME_CONTENT + "://")) {
+            ParcelFileDescriptor descriptor = context.getContentResolver()
+                    .openFileDescriptor(Uri.parse(fileUri), "r");
+            if (descriptor == null) {
+                throw new FileNotFoundException("cannot open " + fileUri);
+            }
+            return new ChannelSource(descriptor);
+        }
+        String path = fileUri.startsWith(ContentResolver.SCHEME_FILE + "://")
+                ? Uri.parse(fileUri).getPath() : fileUri;
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new FileNotFoundException("file does not exist " + fileUri);
+        }
+        return new FileSource(file);
+    }
+
+    public abstract long size();
+
+    /**
+     * 单个分片的大小上限
+     */
+    public long maxPartSize() {
+        return MAX_BUFFERED_PART_SIZE;
+    }
+
+    public abstract UploadPartRequest createRequest(String bucket, String cosPath, int partNumber,
+                                                    long offset, long size, String uploadId)
+            throws IOException;
+
+    /**
+     * 把一段数据读到内存中，用于上传前计算校验值
+     */
+    public abstract byte[] read(long offset, long size) throws IOException;
+
+    /**
+     * 整个对象一次上传，只用于不超过 maxPartSize 的小对象
+     */
+    public abstract PutObjectRequest createPutRequest(String bucket, String cosPath) throws IOException;
+
+    /**
+     * 本地文件对应的 File，其他来源返回 null
+     */
+    @Nullable
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * 顺序计算整个来源的 CRC64，每次读入一个分片大小的数据
+     */
+    public long crc64() throws IOException {
+        long crc64 = 0;
+        long size = size();
+        for (long position = 0; position < size; position += MAX_BUFFERED_PART_SIZE) {
+            byte[] data = read(position, Math.min(MAX_BUFFERED_PART_SIZE, size - position));
+            crc64 = Crc64.update(crc64, data, 0, data.length);
+        }
+        return crc64;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static class FileSource extends PartSource {
+        private final File file;
+
+        FileSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public long size() {
+            return file.length();
+        }
+
+        @Override
+        public long maxPartSize() {
+            return PartSizePolicy.MAX_PART_SIZE;
+        }
+
+        @Override
+        public UploadPartRequest createRequest(String bucket, String cosPath, int partNumber,
+                                               long offset, long size, String uploadId) {
+            return new UploadPartRequest(bucket, cosPath, partNumber, file.getPath(),
+                    offset, size, uploadId);
+        }
+
+        @Override
+        public byte[] read(long offset, long size) throws IOException {
+            byte[] data = new byte[(int) size];
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                input.seek(offset);
+                input.readFully(data);
+            }
+            return data;
+        }
+
+        @Override
+        public PutObjectRequest createPutRequest(String bucket, String cosPath) {
+            return new PutObjectRequest(bucket, cosPath, file.getPath());
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * 按窗口映射文件，避免大文件一次映射占用过多地址空间
+         */
+        @Override
+        public long crc64() throws IOException {
+            long crc64 = 0;
+            byte[] chunk = new byte[CRC64_CHUNK_SIZE];
+            try (RandomAccessFile input = new RandomAccessFile(file, "r");
+                 FileChannel channel = input.getChannel()) {
+                long size = channel.size();
+                for (long position = 0; position < size; position += CRC64_MAP_WINDOW) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(CRC64_MAP_WINDOW, size - position));
+                    while (buffer.hasRemaining()) {
+                        int length = Math.min(chunk.length, buffer.remaining());
+                        buffer.get(chunk, 0, length);
+                        crc64 = Crc64.update(crc64, chunk, 0, length);
+                    }
+                }
+            }
+            return crc64;
+        }
+    }
+
+    /**
+     * 通过文件描述符读取 content:// 地址，按分片映射对应的区间，不需要从头顺序读
+     */
+    private static class ChannelSource extends PartSource {
+        private final ParcelFileDescriptor descriptor;
+        private final FileInputStream input;
+        private final FileChannel channel;
+        private final long size;
+
+        ChannelSource(ParcelFileDescriptor descriptor) throws IOException {
+            this.descriptor = descriptor;
+            this.input = new FileInputStream(descriptor.getFileDescriptor());
+            this.channel = input.getChannel();
+            this.size = descriptor.getStatSize();
+            if (size < 0) {
+                close();
+                throw new IOException("content uri is not seekable");
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public UploadPartRequest createRequest(String bucket, String cosPath, int partNumber,
+                                               long offset, long size, String uploadId)
+                throws IOException {
+            return new UploadPartRequest(bucket, cosPath, partNumber, read(offset, size), uploadId);
+        }
+
+        @Override
+        public PutObjectRequest createPutRequest(String bucket, String cosPath) throws IOException {
+            return new PutObjectRequest(bucket, cosPath, read(0, size));
+        }
+
+        @Override
+        public byte[] read(long offset, long size) throws IOException {
+            byte[] data = new byte[(int) size];
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            buffer.get(data);
+            return data;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+                input.close();
+                descriptor.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class BytesSource extends PartSource {
+        private final byte[] data;
+
+        BytesSource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public UploadPartRequest createRequest(String bucket, String cosPath, int partNumber,
+                                               long offset, long size, String uploadId) {
+            return new UploadPartRequest(bucket, cosPath, partNumber, read(offset, size), uploadId);
+        }
+
+        @Override
+        public byte[] read(long offset, long size) {
+            return offset == 0 && size == data.length ? data
+                    : Arrays.copyOfRange(data, (int) offset, (int) (offset + size));
+        }
+
+        @Override
+        public PutObjectRequest createPutRequest(String bucket, String cosPath) {
+            return new PutObjectRequest(bucket, cosPath, data);
+        }
+    }
+}
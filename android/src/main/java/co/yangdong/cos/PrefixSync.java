@@ -0,0 +1,445 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 目录增量同步
+ * 分页列举前缀下的对象，处理当前页时预取下一页，和本地清单归并比较，只下载新增或变化的对象，可选删除服务端已删除的对象
+ * 等待写入清单的项数有上限，超过时暂停列举，对象数量很多时内存占用也不会增长
+ * 比较和预取各用一个自己的线程，整个同步期间会阻塞等待，不占用共享线程池
+ */
+public class PrefixSync {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    private static final int PAGE_SIZE = 1000;
+    private static final int MAX_PENDING = 2000;
+    // 结果中最多保留的失败信息条数
+    private static final int MAX_ERRORS = 100;
+    private static final String TEMP_SUFFIX = ".cossync";
+
+    /**
+     * 下载一个对象到指定文件，阻塞直到完成
+     * @return 对象的 eTag
+     */
+    public interface Downloader {
+        @Nullable
+        String download(String cosPath, File file, BatchOperation.Progress progress) throws Exception;
+    }
+
+    public interface Listener {
+        void onComplete(PrefixSync sync, @Nullable Exception error);
+    }
+
+    public static class Stats {
+        public int listed;
+        public int added;
+        public int changed;
+        public int unchanged;
+        public int removed;
+        public int downloaded;
+        public int failed;
+        public long processedBytes;
+        public long targetBytes;
+
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.listed = listed;
+            copy.added = added;
+            copy.changed = changed;
+            copy.unchanged = unchanged;
+            copy.removed = removed;
+            copy.downloaded = downloaded;
+            copy.failed = failed;
+            copy.processedBytes = processedBytes;
+            copy.targetBytes = targetBytes;
+            return copy;
+        }
+    }
+
+    /**
+     * 按列举顺序排队，等前面的项都结束后才写入清单
+     */
+    private static class Pending {
+        final String key;
+        final String eTag;
+        final long size;
+        // 写入新清单的记录，下载失败时为 null，下次同步重新下载
+        @Nullable
+        SyncManifest.Entry result;
+        long complete;
+        boolean done;
+
+        Pending(String key, String eTag, long size) {
+            this.key = key;
+            this.eTag = eTag;
+            this.size = size;
+        }
+    }
+
+    private final String id;
+    private final CosXmlSimpleService cosXmlService;
+    // 一个线程执行 run，另一个预取下一页
+    private final ExecutorService threads = Executors.newFixedThreadPool(2);
+    private final Executor executor;
+    private final String bucket;
+    private final String prefix;
+    private final File localDir;
+    private final File manifestFile;
+    private final boolean deleteRemoved;
+    private final int concurrency;
+    private final Downloader downloader;
+    private final Listener listener;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+    private final Stats stats = new Stats();
+    private final List<String> errors = new ArrayList<>();
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final Set<Pending> downloading = new HashSet<>();
+    private volatile boolean cancelled = false;
+
+    public PrefixSync(String id, CosXmlSimpleService cosXmlService, Executor executor,
+                      String bucket, @Nullable String prefix, File localDir, File manifestDirectory,
+                      boolean deleteRemoved, int concurrency, Downloader downloader, Listener listener) {
+        this.id = id;
+        this.cosXmlService = cosXmlService;
+        this.executor = executor;
+        this.bucket = bucket;
+        this.prefix = prefix != null ? prefix : "";
+        this.localDir = localDir;
+        this.manifestFile = SyncManifest.file(manifestDirectory, bucket, this.prefix, localDir.getPath());
+        this.deleteRemoved = deleteRemoved;
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+        this.downloader = downloader;
+        this.listener = listener;
+    }
+
+    /**
+     * 列举和单个对象的下载都按这个策略重试
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized Stats getStats() {
+        Stats copy = stats.copy();
+        for (Pending item : downloading) {
+            copy.processedBytes += item.complete;
+        }
+        return copy;
+    }
+
+    public synchronized List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    public void start() {
+        threads.execute(this::run);
+    }
+
+    /**
+     * 停止列举，等正在下载的对象结束；未比较的记录原样保留在清单中
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void run() {
+        Exception error = null;
+        try (SyncManifest.Reader reader = new SyncManifest.Reader(manifestFile);
+             SyncManifest.Writer writer = new SyncManifest.Writer(manifestFile)) {
+            SyncManifest.Entry previous = reader.next();
+            Future<ListBucket> next = threads.submit(() -> list(null));
+            String marker = null;
+            try {
+                while (!cancelled && next != null) {
+                    ListBucket page = next.get();
+                    marker = page.isTruncated ? nextMarker(page, marker) : null;
+                    final String pageMarker = marker;
+                    // 处理当前页时预取下一页
+                    next = pageMarker != null ? threads.submit(() -> list(pageMarker)) : null;
+                    List<ListBucket.Contents> contents = page.contentsList != null
+                            ? page.contentsList : Collections.emptyList();
+                    for (ListBucket.Contents object : contents) {
+                        if (cancelled) {
+                            break;
+                        }
+                        while (previous != null && SyncManifest.compare(previous.key, object.key) < 0) {
+                            remove(previous);
+                            previous = reader.next();
+                        }
+                        SyncManifest.Entry existing = null;
+                        if (previous != null && previous.key.equals(object.key)) {
+                            existing = previous;
+                            previous = reader.next();
+                        }
+                        compare(object, existing, writer);
+                    }
+                }
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            if (next != null) {
+                next.cancel(false);
+            }
+            // 取消或列举失败时后面的记录没有比较过，原样保留；正常结束时剩下的都是服务端已删除的对象
+            boolean stopped = cancelled || error != null;
+            for (; previous != null; previous = reader.next()) {
+                if (stopped) {
+                    enqueue(done(previous), writer);
+                } else {
+                    remove(previous);
+                }
+            }
+            awaitPending(writer);
+            writer.commit();
+        } catch (IOException | InterruptedException e) {
+            error = e;
+        }
+        threads.shutdown();
+        listener.onComplete(this, error);
+    }
+
+    private ListBucket list(@Nullable String marker) throws Exception {
+        for (int retries = 0; ; retries++) {
+            try {
+                GetBucketRequest request = new GetBucketRequest(bucket);
+                request.setPrefix(prefix);
+                request.setMaxKeys(PAGE_SIZE);
+                if (marker != null) {
+                    request.setMarker(marker);
+                }
+                GetBucketResult result = cosXmlService.getBucket(request);
+                return result.listBucket != null ? result.listBucket : new ListBucket();
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                if (!retryPolicy.shouldRetry(e, retries) || cancelled) {
+                    throw e;
+                }
+                Thread.sleep(retryPolicy.delayMillis(retries));
+            }
+        }
+    }
+
+    /**
+     * 没有设置分隔符时服务端不一定返回 NextMarker，用本页最后一个 key 继续
+     */
+    @Nullable
+    private static String nextMarker(ListBucket page, @Nullable String marker) {
+        if (page.nextMarker != null && !page.nextMarker.isEmpty()) {
+            return page.nextMarker;
+        }
+        if (page.contentsList == null || page.contentsList.isEmpty()) {
+            return null;
+        }
+        String last = page.contentsList.get(page.contentsList.size() - 1).key;
+        return last.equals(marker) ? null : last;
+    }
+
+    private void compare(ListBucket.Contents object, @Nullable SyncManifest.Entry existing,
+                         SyncManifest.Writer writer) throws IOException, InterruptedException {
+        synchronized (this) {
+            stats.listed++;
+        }
+        // 目录占位对象不对应本地文件
+        if (object.key.endsWith("/")) {
+            return;
+        }
+        File file = localFile(object.key);
+        if (file == null) {
+            fail(object.key, "invalid key");
+            return;
+        }
+        if (existing != null && existing.eTag.equals(object.eTag) && existing.size == object.size
+                && file.isFile() && file.length() == existing.size && file.lastModified() == existing.mtime) {
+            synchronized (this) {
+                stats.unchanged++;
+            }
+            enqueue(done(existing), writer);
+            return;
+        }
+
+        Pending item = new Pending(object.key, object.eTag, object.size);
+        synchronized (this) {
+            if (existing == null) {
+                stats.added++;
+            } else {
+                stats.changed++;
+            }
+            stats.targetBytes += object.size;
+            // 同时下载的数量不超过 concurrency
+            while (downloading.size() >= concurrency) {
+                wait();
+            }
+            downloading.add(item);
+        }
+        enqueue(item, writer);
+        executor.execute(() -> download(item, file));
+    }
+
+    private void download(Pending item, File file) {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        SyncManifest.Entry result = null;
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+            String eTag = downloadWithRetry(item, temp);
+            // 下载到临时文件再替换，失败时不会留下不完整的文件
+            if (!temp.renameTo(file)) {
+                throw new IOException("failed to move " + temp + " to " + file);
+            }
+            result = new SyncManifest.Entry(item.key, eTag != null ? eTag : item.eTag,
+                    file.length(), file.lastModified());
+        } catch (Exception e) {
+            temp.delete();
+            fail(item.key, e.toString());
+        }
+        synchronized (this) {
+            downloading.remove(item);
+            item.done = true;
+            item.result = result;
+            stats.processedBytes += item.size;
+            if (result != null) {
+                stats.downloaded++;
+            }
+            notifyAll();
+        }
+    }
+
+    @Nullable
+    private String downloadWithRetry(Pending item, File temp) throws Exception {
+        for (int retries = 0; ; retries++) {
+            try {
+                return downloader.download(item.key, temp, (complete, target) -> {
+                    synchronized (this) {
+                        item.complete = complete;
+                    }
+                });
+            } catch (Exception e) {
+                if (!retryPolicy.shouldRetry(e, retries) || cancelled) {
+                    throw e;
+                }
+                synchronized (this) {
+                    item.complete = 0;
+                }
+                Thread.sleep(retryPolicy.delayMillis(retries));
+            }
+        }
+    }
+
+    private void remove(SyncManifest.Entry entry) {
+        synchronized (this) {
+            stats.removed++;
+        }
+        if (!deleteRemoved) {
+            return;
+        }
+        File file = localFile(entry.key);
+        // 本地文件在上次同步之后被改动过时保留
+        if (file != null && file.isFile() && file.lastModified() == entry.mtime) {
+            file.delete();
+        }
+    }
+
+    private Pending done(SyncManifest.Entry entry) {
+        Pending item = new Pending(entry.key, entry.eTag, entry.size);
+        item.result = entry;
+        item.done = true;
+        return item;
+    }
+
+    /**
+     * 排队等待写入清单，队列满时等待最前面的下载结束
+     */
+    private void enqueue(Pending item, SyncManifest.Writer writer) throws IOException, InterruptedException {
+        synchronized (this) {
+            while (pending.size() >= MAX_PENDING && !pending.peekFirst().done) {
+                wait();
+            }
+            pending.addLast(item);
+        }
+        flush(writer);
+    }
+
+    private void flush(SyncManifest.Writer writer) throws IOException {
+        while (true) {
+            Pending head;
+            synchronized (this) {
+                head = pending.peekFirst();
+                if (head == null || !head.done) {
+                    return;
+                }
+                pending.pollFirst();
+            }
+            if (head.result != null) {
+                writer.write(head.result);
+            }
+        }
+    }
+
+    private void awaitPending(SyncManifest.Writer writer) throws IOException, InterruptedException {
+        while (true) {
+            flush(writer);
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                if (!pending.peekFirst().done) {
+                    wait();
+                }
+            }
+        }
+    }
+
+    private void fail(String key, String error) {
+        synchronized (this) {
+            stats.failed++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(key + ": " + error);
+            }
+        }
+    }
+
+    /**
+     * 对象在本地对应的文件，key 去掉前缀后拼到本地目录下，越出本地目录时返回 null
+     */
+    @Nullable
+    private File localFile(String key) {
+        if (!key.startsWith(prefix) || key.length() == prefix.length()) {
+            return null;
+        }
+        File file = new File(localDir, key.substring(prefix.length()));
+        try {
+            String root = localDir.getCanonicalPath() + File.separator;
+            return file.getCanonicalPath().startsWith(root) ? file : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
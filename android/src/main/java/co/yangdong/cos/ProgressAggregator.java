@@ -0,0 +1,107 @@
+package co.yangdong.cos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进度事件合并
+ * 按 requestId 只保留最新进度，定时批量发送一次，跨过百分比阈值或传输完成时立即发送
+ */
+public class ProgressAggregator {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public interface Sink {
+        void onProgress(List<Update> updates);
+    }
+
+    public static class Update {
+        public final String requestId;
+        public final long processedBytes;
+        public final long targetBytes;
+
+        Update(String requestId, long processedBytes, long targetBytes) {
+            this.requestId = requestId;
+            this.processedBytes = processedBytes;
+            this.targetBytes = targetBytes;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final Object emitLock = new Object();
+
+    private final Map<String, Update> pending = new LinkedHashMap<>();
+    private final Map<String, Long> reportedSteps = new HashMap<>();
+    private boolean flushScheduled = false;
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private int thresholdPercent = DEFAULT_THRESHOLD_PERCENT;
+
+    public ProgressAggregator(ScheduledExecutorService scheduler, Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * @param intervalMillis 批量发送间隔，小于等于 0 时每次回调都立即发送
+     * @param thresholdPercent 跨过该百分比的整数倍时立即发送，小于等于 0 时不按百分比发送
+     */
+    public synchronized void configure(long intervalMillis, int thresholdPercent) {
+        this.intervalMillis = intervalMillis;
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    public void update(String requestId, long processedBytes, long targetBytes) {
+        boolean flushNow;
+        synchronized (this) {
+            pending.put(requestId, new Update(requestId, processedBytes, targetBytes));
+
+            boolean finished = targetBytes > 0 && processedBytes >= targetBytes;
+            long step = thresholdPercent > 0 && targetBytes > 0
+                    ? processedBytes * 100 / targetBytes / thresholdPercent : 0;
+            Long reported = reportedSteps.put(requestId, step);
+            flushNow = finished || intervalMillis <= 0 || (reported != null && step > reported);
+            if (finished) {
+                reportedSteps.remove(requestId);
+            }
+
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * 丢弃未发送的进度，用于暂停或取消之后
+     */
+    public synchronized void remove(String requestId) {
+        pending.remove(requestId);
+        reportedSteps.remove(requestId);
+    }
+
+    public void flush() {
+        // 取快照和发送在同一把锁内，保证同一个 requestId 的进度按顺序到达
+        synchronized (emitLock) {
+            List<Update> updates;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                updates = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            sink.onProgress(updates);
+        }
+    }
+}
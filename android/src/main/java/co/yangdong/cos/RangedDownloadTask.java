@@ -0,0 +1,548 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段并发下载任务
+ * 先查询对象大小并预分配本地文件，再按字节范围拆分并发下载，每段写入文件的对应位置，暂停后按段续传
+ * 只有整段写完的才算完成，中断的段从头重新下载，不会因为进度回调早于写入而跳过数据
+ * 设置日志后已完成的段会记录到文件中，进程被杀后重新创建任务也能续传
+ */
+public class RangedDownloadTask {
+
+    public static final int DEFAULT_CONNECTIONS = 4;
+    private static final long MIN_RANGE_SIZE = 8 * 1024 * 1024;
+    // 只有完成的段才算进续传位置，限制单段大小，中断时最多重新下载这么多
+    private static final long MAX_RANGE_SIZE = 64 * 1024 * 1024;
+    // 每个连接平均分到的段数，段越多负载越均衡，单段失败时重传的量也越小
+    private static final int RANGES_PER_CONNECTION = 4;
+    private static final int CHECKSUM_BUFFER_SIZE = 256 * 1024;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    public interface Listener {
+        void onProgress(RangedDownloadTask task, long complete, long target);
+
+        void onSuccess(RangedDownloadTask task);
+
+        void onPaused(RangedDownloadTask task);
+
+        void onFail(RangedDownloadTask task, Exception exception);
+    }
+
+    private static class Range {
+        final long start;
+        final long end;
+        // 已确认写入文件的字节数，只有 0 和整段两种值
+        long downloaded;
+        // 进度回调报告的字节数，只用于显示进度
+        long received;
+        GetObjectRequest request;
+        // 等待重试期间也保持 running，避免被重复调度
+        boolean running;
+        int retries;
+        // 这一段写入完成后计算的 CRC64
+        long crc64;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long size() {
+            return end - start + 1;
+        }
+
+        boolean done() {
+            return downloaded >= size();
+        }
+    }
+
+    private final CosXmlSimpleService cosXmlService;
+    // 每段下载都阻塞一个线程，用自己的线程池，不占用模块中其他传输共用的线程
+    private final ThreadPoolExecutor executor;
+    private final String bucket;
+    private final String cosPath;
+    private final File file;
+    private final int connections;
+    private final Listener listener;
+    private TransferMetrics metrics = TransferMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private ScheduledExecutorService retryScheduler;
+    private ChecksumType checksum = ChecksumType.NONE;
+    @Nullable
+    private BandwidthThrottle throttle;
+    @Nullable
+    private DownloadJournal journal;
+
+    private List<Range> ranges;
+    private long objectSize = -1;
+    private String eTag;
+    private String lastModified;
+    @Nullable
+    private Long expectedCrc64;
+    private int inFlight = 0;
+    // 暂停还没有结束时不能重新开始，否则被取消的请求会被当作失败
+    private boolean active = false;
+    // 暂停还没有结束时又调用了 start，结束后立即重新开始
+    private boolean restartPending = false;
+    private boolean paused = false;
+    private boolean finished = false;
+
+    public RangedDownloadTask(CosXmlSimpleService cosXmlService,
+                              String bucket, String cosPath, String filePath,
+                              int connections, Listener listener) {
+        this.cosXmlService = cosXmlService;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.file = new File(filePath);
+        this.connections = connections > 0 ? connections : DEFAULT_CONNECTIONS;
+        this.listener = listener;
+        // 暂停后可以重新开始，线程池不关闭，空闲的线程超时后自动退出
+        this.executor = new ThreadPoolExecutor(this.connections + 1, this.connections + 1,
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 失败的段单独等待后重新下载，不影响其他段
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService retryScheduler) {
+        this.retryPolicy = retryPolicy;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 只支持 CRC64：每段写入后立即读回计算，全部完成后按顺序合并，与 HEAD 返回的整个对象的 CRC64 比较
+     */
+    public void setChecksum(ChecksumType checksum) {
+        this.checksum = checksum;
+    }
+
+    public void setThrottle(@Nullable BandwidthThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 需要跨进程续传时设置，下载成功或校验失败后删除
+     */
+    public void setJournal(@Nullable DownloadJournal journal) {
+        this.journal = journal;
+    }
+
+    public synchronized String getETag() {
+        return eTag;
+    }
+
+    public synchronized String getLastModified() {
+        return lastModified;
+    }
+
+    public synchronized long getObjectSize() {
+        return objectSize;
+    }
+
+    public String getFilePath() {
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * 开始或从暂停处继续下载，已完成的段不会重新下载
+     */
+    public void start() {
+        synchronized (this) {
+            if (active) {
+                if (paused) {
+                    restartPending = true;
+                }
+                return;
+            }
+            active = true;
+            paused = false;
+            finished = false;
+        }
+        executor.execute(() -> {
+            try {
+                prepare();
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            schedule();
+        });
+    }
+
+    public void pause() {
+        List<GetObjectRequest> requests = new ArrayList<>();
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            paused = true;
+            if (ranges != null) {
+                for (Range range : ranges) {
+                    if (range.running && range.request != null) {
+                        requests.add(range.request);
+                    }
+                }
+            }
+        }
+        for (GetObjectRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        settleIfIdle();
+    }
+
+    public void cancel() {
+        pause();
+        file.delete();
+    }
+
+    private void prepare() throws CosXmlClientException, CosXmlServiceException, IOException {
+        synchronized (this) {
+            if (ranges != null) {
+                return;
+            }
+        }
+        HeadObjectResult head = head();
+        long size = CosHeaders.getLong(head, CosHeaders.CONTENT_LENGTH);
+        if (size < 0) {
+            throw new CosXmlClientException(ClientErrorCode.INTERNAL_ERROR.getCode(),
+                    "missing Content-Length for " + cosPath);
+        }
+
+        String headETag = CosHeaders.get(head, CosHeaders.ETAG);
+
+        // 日志对应同一个对象且本地文件还在时，按日志中的分段继续
+        boolean resume = journal != null && journal.matches(headETag, size)
+                && file.isFile() && file.length() == size;
+        long rangeSize = resume ? journal.getRangeSize() : Math.min(MAX_RANGE_SIZE, Math.max(MIN_RANGE_SIZE,
+                (size + connections * RANGES_PER_CONNECTION - 1) / (connections * RANGES_PER_CONNECTION)));
+        if (!resume) {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+            // 预分配完整大小，各段直接写入自己的位置
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.setLength(size);
+            }
+            if (journal != null && headETag != null) {
+                journal.reset(headETag, size, rangeSize);
+            }
+        }
+
+        List<Range> planned = new ArrayList<>();
+        for (long start = 0; start < size; start += rangeSize) {
+            planned.add(new Range(start, Math.min(start + rangeSize, size) - 1));
+        }
+        if (resume) {
+            for (DownloadJournal.Entry entry : journal.getEntries()) {
+                int index = (int) (entry.start / rangeSize);
+                if (index < planned.size() && planned.get(index).start == entry.start) {
+                    Range range = planned.get(index);
+                    range.downloaded = range.size();
+                    range.received = range.size();
+                    range.crc64 = entry.crc64;
+                }
+            }
+        }
+
+        synchronized (this) {
+            objectSize = size;
+            eTag = headETag;
+            lastModified = CosHeaders.get(head, CosHeaders.LAST_MODIFIED);
+            expectedCrc64 = Crc64.parse(CosHeaders.get(head, CosHeaders.CRC64));
+            ranges = planned;
+        }
+    }
+
+    private void schedule() {
+        List<Range> next = new ArrayList<>();
+        boolean complete;
+        synchronized (this) {
+            if (finished || paused) {
+                return;
+            }
+            boolean pending = false;
+            for (Range range : ranges) {
+                if (range.done()) {
+                    continue;
+                }
+                pending = true;
+                if (!range.running && inFlight < connections) {
+                    range.running = true;
+                    inFlight++;
+                    next.add(range);
+                }
+            }
+            complete = !pending && inFlight == 0;
+            if (complete) {
+                finished = true;
+                active = false;
+            }
+        }
+
+        for (Range range : next) {
+            executor.execute(() -> download(range));
+        }
+        if (complete) {
+            try {
+                verifyObject();
+            } catch (ChecksumMismatchException e) {
+                if (journal != null) {
+                    journal.delete();
+                }
+                // 损坏的文件大小正确，留下会被当成已下载的内容
+                file.delete();
+                listener.onFail(this, e);
+                return;
+            }
+            if (journal != null) {
+                journal.delete();
+            }
+            listener.onSuccess(this);
+        }
+    }
+
+    private void download(Range range) {
+        GetObjectRequest request;
+        synchronized (this) {
+            request = new GetObjectRequest(bucket, cosPath, file.getParent(), file.getName());
+            request.setRange(range.start, range.end);
+            request.setFileOffset(range.start);
+            range.request = request;
+            if (paused || finished) {
+                range.running = false;
+                inFlight--;
+                settleIfIdleLocked();
+                return;
+            }
+        }
+        CosXmlProgressListener progressListener = (complete, target) -> onRangeProgress(range, complete);
+        request.setProgressListener(throttle != null
+                ? throttle.wrap(progressListener, this::isStopped) : progressListener);
+
+        TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_DOWNLOAD);
+        try {
+            String expectedETag = getETag();
+            if (expectedETag != null) {
+                // 续传期间对象被覆盖时直接失败，避免拼出新旧混合的文件
+                request.setRequestHeaders("If-Match", expectedETag);
+            }
+            cosXmlService.getObject(request);
+            call.success(range.size());
+            // 刚写入的数据还在页缓存中，读回计算的开销很小
+            long crc64 = checksum == ChecksumType.CRC64 ? crc64(range) : 0;
+            if (journal != null) {
+                record(range, crc64);
+            }
+            synchronized (this) {
+                range.crc64 = crc64;
+                range.downloaded = range.size();
+                range.received = range.size();
+                range.running = false;
+                range.request = null;
+                inFlight--;
+            }
+        } catch (CosXmlClientException | CosXmlServiceException | IOException e) {
+            boolean retry;
+            int retries;
+            synchronized (this) {
+                range.request = null;
+                inFlight--;
+                if (paused) {
+                    range.running = false;
+                    call.cancel();
+                    settleIfIdleLocked();
+                    return;
+                }
+                retries = range.retries;
+                retry = retryScheduler != null && retryPolicy.shouldRetry(e, retries);
+                if (retry) {
+                    range.retries++;
+                } else {
+                    range.running = false;
+                }
+            }
+            call.fail(e);
+            if (!retry) {
+                fail(e);
+                return;
+            }
+            metrics.recordRetry(bucket, TransferMetrics.OP_DOWNLOAD);
+            retryScheduler.schedule(() -> {
+                synchronized (this) {
+                    range.running = false;
+                }
+                schedule();
+            }, retryPolicy.delayMillis(retries), TimeUnit.MILLISECONDS);
+            // 空出的连接先给其他段
+            schedule();
+            return;
+        }
+        listener.onProgress(this, receivedBytes(), getObjectSize());
+        schedule();
+    }
+
+    /**
+     * 先把这一段的数据刷到磁盘再写日志，日志中的段在重新执行时不会再下载
+     */
+    private void record(Range range, long crc64) {
+        try {
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.getFD().sync();
+            }
+            journal.append(new DownloadJournal.Entry(range.start, crc64));
+        } catch (IOException e) {
+            // 日志写入失败只影响跨进程续传
+            e.printStackTrace();
+        }
+    }
+
+    private long crc64(Range range) throws IOException {
+        long crc64 = 0;
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(range.start);
+            long remaining = range.size();
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("unexpected end of " + file);
+                }
+                crc64 = Crc64.update(crc64, buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc64;
+    }
+
+    private void verifyObject() throws ChecksumMismatchException {
+        Long expected;
+        List<Range> completed;
+        synchronized (this) {
+            expected = expectedCrc64;
+            completed = new ArrayList<>(ranges);
+        }
+        if (checksum != ChecksumType.CRC64 || expected == null) {
+            return;
+        }
+        long crc64 = 0;
+        for (Range range : completed) {
+            crc64 = Crc64.combine(crc64, range.crc64, range.size());
+        }
+        if (expected != crc64) {
+            throw new ChecksumMismatchException(checksum, cosPath,
+                    Crc64.toString(expected), Crc64.toString(crc64));
+        }
+    }
+
+    private HeadObjectResult head() throws CosXmlClientException, CosXmlServiceException {
+        for (int retries = 0; ; retries++) {
+            TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_HEAD_OBJECT);
+            try {
+                HeadObjectResult head = cosXmlService.headObject(new HeadObjectRequest(bucket, cosPath));
+                call.success(0);
+                return head;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                if (!retryPolicy.shouldRetry(e, retries)) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                metrics.recordRetry(bucket, TransferMetrics.OP_HEAD_OBJECT);
+            }
+        }
+    }
+
+    private void onRangeProgress(Range range, long received) {
+        synchronized (this) {
+            // 重新下载的段追上之前的进度前不更新，显示的进度不会后退
+            range.received = Math.min(Math.max(range.received, received), range.size());
+        }
+        listener.onProgress(this, receivedBytes(), getObjectSize());
+    }
+
+    private synchronized long receivedBytes() {
+        long bytes = 0;
+        for (Range range : ranges) {
+            bytes += range.received;
+        }
+        return bytes;
+    }
+
+    private synchronized boolean isStopped() {
+        return paused || finished;
+    }
+
+    private void settleIfIdle() {
+        synchronized (this) {
+            settleIfIdleLocked();
+        }
+    }
+
+    private void settleIfIdleLocked() {
+        if (paused && !finished && inFlight == 0) {
+            finished = true;
+            active = false;
+            boolean restart = restartPending;
+            restartPending = false;
+            executor.execute(() -> {
+                listener.onPaused(this);
+                if (restart) {
+                    start();
+                }
+            });
+        }
+    }
+
+    private void fail(Exception e) {
+        List<GetObjectRequest> requests = new ArrayList<>();
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            active = false;
+            if (ranges != null) {
+                for (Range range : ranges) {
+                    if (range.running && range.request != null) {
+                        requests.add(range.request);
+                    }
+                }
+            }
+        }
+        for (GetObjectRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+        listener.onFail(this, e);
+    }
+}
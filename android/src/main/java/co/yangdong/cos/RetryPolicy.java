@@ -0,0 +1,86 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略
+ * 只重试网络错误、超时、限流和服务端 5xx，等待时间按指数增长并加随机抖动，避免大量请求同时重试
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 15000;
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(DEFAULT_MAX_RETRIES,
+            DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    public final int maxRetries;
+    public final long baseDelayMillis;
+    public final long maxDelayMillis;
+
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = Math.max(maxRetries, 0);
+        this.baseDelayMillis = Math.max(baseDelayMillis, 0);
+        this.maxDelayMillis = Math.max(maxDelayMillis, this.baseDelayMillis);
+    }
+
+    /**
+     * 读取 { maxRetries, baseDelay, maxDelay }，未传入的字段使用 defaults 的值
+     */
+    public static RetryPolicy from(@Nullable ReadableMap options, RetryPolicy defaults) {
+        if (options == null) {
+            return defaults;
+        }
+        return new RetryPolicy(
+                (int) SafeReadableMap.safeGetDouble(options, "maxRetries", defaults.maxRetries),
+                (long) SafeReadableMap.safeGetDouble(options, "baseDelay", defaults.baseDelayMillis),
+                (long) SafeReadableMap.safeGetDouble(options, "maxDelay", defaults.maxDelayMillis));
+    }
+
+    /**
+     * @param retries 已经重试的次数
+     */
+    public boolean shouldRetry(Exception error, int retries) {
+        return retries < maxRetries && isRetryable(error);
+    }
+
+    /**
+     * 第 retries + 1 次重试前的等待时间，在 [0, min(maxDelay, baseDelay * 2^retries)] 中随机选取
+     */
+    public long delayMillis(int retries) {
+        long ceiling = baseDelayMillis << Math.min(retries, 20);
+        ceiling = Math.min(ceiling, maxDelayMillis);
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    public static boolean isRetryable(Exception error) {
+        // 分片或区间在传输中损坏，重新传输这一段即可
+        if (error instanceof ChecksumMismatchException) {
+            return true;
+        }
+        if (error instanceof CosXmlServiceException) {
+            CosXmlServiceException serviceException = (CosXmlServiceException) error;
+            int status = serviceException.getStatusCode();
+            String code = serviceException.getErrorCode();
+            return status >= 500 || status == 408 || status == 429
+                    || "RequestTimeout".equals(code) || "SlowDown".equals(code);
+        }
+        if (error instanceof CosXmlClientException) {
+            int code = ((CosXmlClientException) error).errorCode;
+            // 参数、密钥错误和用户取消重试也不会成功
+            return code == ClientErrorCode.POOR_NETWORK.getCode()
+                    || code == ClientErrorCode.IO_ERROR.getCode()
+                    || code == ClientErrorCode.SERVERERROR.getCode();
+        }
+        return false;
+    }
+}
@@ -1,5 +1,6 @@
 package co.yangdong.cos;
 
+import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableArray;
@@ -30,6 +31,31 @@ public class SafeReadableMap {
         }
     }
 
+    public static double safeGetDouble(ReadableMap options, String key, double defaultValue) {
+        try {
+            return options.hasKey(key) && !options.isNull(key) ? options.getDouble(key) : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean safeGetBoolean(ReadableMap options, String key, boolean defaultValue) {
+        try {
+            return options.hasKey(key) && !options.isNull(key) ? options.getBoolean(key) : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    @Nullable
+    public static ReadableMap safeGetMap(ReadableMap options, String key) {
+        try {
+            return options.hasKey(key) && !options.isNull(key) ? options.getMap(key) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public static ReadableArray safeGetArray(ReadableMap options, String key) {
         try {
             return options.getArray(key);
@@ -0,0 +1,176 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 目录同步清单
+ * 每行记录一个对象同步到本地时的 key、eTag、大小和本地文件的修改时间，按 key 排序
+ * 与服务端同样有序的列举结果做归并比较，读写都是流式的，对象数量很多时内存占用也不会增长
+ */
+public class SyncManifest {
+
+    public static final String DIRECTORY = "cos-sync";
+
+    public static class Entry {
+        public final String key;
+        public final String eTag;
+        public final long size;
+        // 本地文件的修改时间，本地文件被改动或替换后重新下载
+        public final long mtime;
+
+        public Entry(String key, String eTag, long size, long mtime) {
+            this.key = key;
+            this.eTag = eTag;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    /**
+     * 同一个 bucket/prefix 同步到不同目录时使用不同的清单
+     */
+    public static File file(File directory, String bucket, String prefix, String localDir) {
+        return new File(directory, Digests.sha1Hex(bucket + "/" + prefix + "\n" + localDir) + ".manifest");
+    }
+
+    /**
+     * 按顺序读取清单，文件不存在时视为空清单
+     */
+    public static class Reader implements Closeable {
+        @Nullable
+        private final BufferedReader reader;
+
+        public Reader(File file) throws IOException {
+            reader = file.exists() ? new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8)) : null;
+        }
+
+        /**
+         * @return 下一条记录，读完时返回 null
+         */
+        @Nullable
+        public Entry next() throws IOException {
+            if (reader == null) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    return new Entry(unescape(fields[0]), fields[1],
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * 写入临时文件，commit 时替换原清单；没有 commit 就关闭时原清单保持不变
+     */
+    public static class Writer implements Closeable {
+        private final File file;
+        private final File temp;
+        private final FileOutputStream output;
+        private final BufferedWriter writer;
+        private boolean committed = false;
+
+        public Writer(File file) throws IOException {
+            this.file = file;
+            this.temp = new File(file.getPath() + ".tmp");
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+            output = new FileOutputStream(temp);
+            writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 调用方需要按 key 的顺序写入
+         */
+        public void write(Entry entry) throws IOException {
+            writer.write(escape(entry.key) + "\t" + entry.eTag + "\t" + entry.size + "\t" + entry.mtime + "\n");
+        }
+
+        public void commit() throws IOException {
+            writer.flush();
+            output.getFD().sync();
+            writer.close();
+            committed = true;
+            if (!temp.renameTo(file)) {
+                throw new IOException("failed to replace manifest " + file);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                writer.close();
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * 按 Unicode 码点比较，与服务端按 UTF-8 字节序列举的顺序一致
+     */
+    public static int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // key 中可能包含制表符和换行
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return builder.toString();
+    }
+}
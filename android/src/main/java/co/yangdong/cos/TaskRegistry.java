@@ -0,0 +1,110 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 传输任务登记表
+ * 运行中的任务可以在任意线程并发读写，任务完成、失败或取消后移出，只保留有限条最近结果用于排查问题
+ */
+public class TaskRegistry<T> {
+
+    public static final int DEFAULT_HISTORY_SIZE = 100;
+
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_PAUSED = "paused";
+    public static final String STATUS_CANCELLED = "cancelled";
+
+    public static class Record {
+        public final String id;
+        public final String type;
+        public final String status;
+        public final long startedAt;
+        public final long finishedAt;
+        @Nullable
+        public final String error;
+
+        Record(String id, String type, String status, long startedAt, long finishedAt,
+               @Nullable String error) {
+            this.id = id;
+            this.type = type;
+            this.status = status;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.error = error;
+        }
+    }
+
+    private static class Active<T> {
+        final T task;
+        final long startedAt = System.currentTimeMillis();
+
+        Active(T task) {
+            this.task = task;
+        }
+    }
+
+    private final String type;
+    private final int historySize;
+    private final Map<String, Active<T>> active = new ConcurrentHashMap<>();
+    private final Deque<Record> history = new ArrayDeque<>();
+
+    public TaskRegistry(String type, int historySize) {
+        this.type = type;
+        this.historySize = historySize;
+    }
+
+    public void put(String id, T task) {
+        active.put(id, new Active<>(task));
+    }
+
+    @Nullable
+    public T get(String id) {
+        Active<T> entry = id != null ? active.get(id) : null;
+        return entry != null ? entry.task : null;
+    }
+
+    public boolean contains(String id) {
+        return id != null && active.containsKey(id);
+    }
+
+    public int size() {
+        return active.size();
+    }
+
+    /**
+     * 移出任务并记录结果，任务已经移出时返回 null
+     */
+    @Nullable
+    public T finish(String id, String status, @Nullable Exception error) {
+        Active<T> entry = id != null ? active.remove(id) : null;
+        if (entry == null) {
+            return null;
+        }
+        Record record = new Record(id, type, status, entry.startedAt, System.currentTimeMillis(),
+                error != null ? error.toString() : null);
+        synchronized (history) {
+            history.addFirst(record);
+            while (history.size() > historySize) {
+                history.removeLast();
+            }
+        }
+        return entry.task;
+    }
+
+    /**
+     * 最近的结果，新的在前
+     */
+    public List<Record> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package co.yangdong.cos;
 
-import android.net.Uri;
 import android.os.Environment;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.work.Data;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -19,6 +19,7 @@ import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.tencent.cos.xml.CosXmlService;
 import com.tencent.cos.xml.CosXmlServiceConfig;
 import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.listener.CosXmlResultListener;
@@ -27,43 +28,131 @@ import com.tencent.cos.xml.model.CosXmlResult;
 import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
 import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
 import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectResult;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
 import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
 import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
 import com.tencent.cos.xml.model.object.ListPartsRequest;
 import com.tencent.cos.xml.model.object.ListPartsResult;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
 import com.tencent.cos.xml.model.object.UploadPartRequest;
 import com.tencent.cos.xml.model.object.UploadPartResult;
 import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+import com.tencent.cos.xml.model.tag.DeleteResult;
 import com.tencent.cos.xml.model.tag.InitiateMultipartUpload;
 import com.tencent.cos.xml.model.tag.ListParts;
 import com.tencent.cos.xml.transfer.COSXMLDownloadTask;
 import com.tencent.cos.xml.transfer.TransferConfig;
 import com.tencent.cos.xml.transfer.TransferManager;
+import com.tencent.cos.xml.transfer.TransferState;
 import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
 import com.tencent.qcloud.core.auth.SessionCredentialProvider;
 import com.tencent.qcloud.core.auth.ShortTimeCredentialProvider;
 import com.tencent.qcloud.core.http.HttpRequest;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.FileNameMap;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TencentCosModule extends ReactContextBaseJavaModule {
 
     public static final String NAME = "TencentCos";
+    private static final int TRANSFER_THREADS = 8;
+    private static final int BATCH_THREADS = 8;
+    private static final int MAX_DELETE_OBJECTS = 1000;
+    static final long DEFAULT_SLICE_SIZE = 1024 * 1024;
     private final ReactApplicationContext reactContext;
+    private final ExecutorService transferExecutor = Executors.newFixedThreadPool(TRANSFER_THREADS);
+    // 批量操作的每一项会阻塞等待完成，与分片上传分开，避免占满传输线程
+    private final ExecutorService batchExecutor = Executors.newFixedThreadPool(BATCH_THREADS);
+    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ProgressAggregator progressAggregator;
+    private final TransferScheduler transferScheduler = new TransferScheduler();
+    private final TaskRegistry<MultipartUploadTask> uploadTasks =
+            new TaskRegistry<>(TransferScheduler.TYPE_UPLOAD, TaskRegistry.DEFAULT_HISTORY_SIZE);
+    // uploadPart 按 uploadId 共用的分片策略，完成、取消、失败或闲置超时后移除
+    private final Map<String, PartSizePolicy> partSizePolicies = new ConcurrentHashMap<>();
+    private static final long PART_SIZE_POLICY_IDLE_MILLIS = 30 * 60 * 1000;
+    private final UploadJournal.Store uploadJournals;
+    private final DownloadCache downloadCache;
+    private final DownloadValidators downloadValidators;
+    private final FileHashCache fileHashCache;
+    private final TransferMetrics transferMetrics = new TransferMetrics();
+    // 单连接下载的整个任务作为一次请求统计，暂停时结束，恢复时重新开始
+    private final Map<String, TransferMetrics.Call> downloadCalls = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> metricsUpdates;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    // 所有传输共用的限速，单个请求的限速挂在它下面
+    private final BandwidthThrottle bandwidthThrottle = new BandwidthThrottle(0, null);
+    private final NetworkPolicy networkPolicy;
+    private volatile long bandwidthLimit = 0;
+    private volatile int maxConcurrentTransfers = TransferScheduler.DEFAULT_MAX_CONCURRENT;
+    private CredentialManager credentialManager;
+    private final BackgroundTransfers backgroundTransfers;
+    private final BackgroundTransfers.Listener backgroundListener = new BackgroundTransfers.Listener() {
+        @Override
+        public void onProgress(String requestId, long complete, long target) {
+            sendProgressMessage(requestId, complete, target);
+        }
+
+        @Override
+        public void onResult(BackgroundTransfers.Result result) {
+            sendBackgroundResultMessage(result);
+        }
+    };
+    private long sliceSizeForUpload = DEFAULT_SLICE_SIZE;
 
-    private CosXmlSimpleService cosXmlService;
+    private volatile CosXmlSimpleService cosXmlService;
     private CosXmlServiceConfig serviceConfig;
-    private TransferManager transferManager;
-    private Map<String, COSXMLDownloadTask> downloadTasks;
+    private volatile TransferManager transferManager;
+    private ReadableMap configuration;
+    private QCloudCredentialProvider credentialProvider;
+    private final TaskRegistry<COSXMLDownloadTask> downloadTasks =
+            new TaskRegistry<>(TransferScheduler.TYPE_DOWNLOAD, TaskRegistry.DEFAULT_HISTORY_SIZE);
+    private final TaskRegistry<RangedDownloadTask> rangedDownloadTasks =
+            new TaskRegistry<>(TransferScheduler.TYPE_DOWNLOAD, TaskRegistry.DEFAULT_HISTORY_SIZE);
+    private final TaskRegistry<MultipartCopyTask> copyTasks =
+            new TaskRegistry<>(TransferScheduler.TYPE_COPY, TaskRegistry.DEFAULT_HISTORY_SIZE);
+    private final Map<String, PrefixSync> prefixSyncs = new ConcurrentHashMap<>();
+    private final Map<String, TransformedUpload> transformedUploads = new ConcurrentHashMap<>();
 
     public TencentCosModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.uploadJournals = new UploadJournal.Store(
+                new File(reactContext.getFilesDir(), UploadJournal.DIRECTORY));
+        this.progressAggregator = new ProgressAggregator(scheduledExecutor, this::sendProgressBatch);
+        this.downloadCache = new DownloadCache(
+                new File(reactContext.getCacheDir(), DownloadCache.DIRECTORY), DownloadCache.DEFAULT_MAX_SIZE);
+        this.downloadValidators = new DownloadValidators(reactContext);
+        this.fileHashCache = new FileHashCache(reactContext);
+        this.backgroundTransfers = new BackgroundTransfers(reactContext);
+        this.transferScheduler.setStartListener((id, type, waitMillis) ->
+                transferMetrics.recordQueueWait(type, waitMillis));
+        this.networkPolicy = new NetworkPolicy(reactContext, (network, rule) -> applyNetworkPolicy());
     }
 
     @Override
@@ -111,51 +200,197 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void initWithPlainSecret(ReadableMap configuration, ReadableMap credentials, Promise promise) {
-        if (cosXmlService == null) {
-            serviceConfig = initConfiguration(configuration);
-
+        try {
             QCloudCredentialProvider credentialProvider = new ShortTimeCredentialProvider(
                     SafeReadableMap.safeGetString(credentials, "secretId"),
                     SafeReadableMap.safeGetString(credentials, "secretKey"),
                     600
             );
+            if (credentialManager != null) {
+                credentialManager.close();
+                credentialManager = null;
+            }
+            installService(configuration, credentialProvider);
+            promise.resolve(null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            promise.reject(e);
+        }
+    }
 
-            cosXmlService = new CosXmlSimpleService(reactContext, serviceConfig,
-                    credentialProvider);
+    @ReactMethod
+    public void initWithSessionCredential(final ReadableMap configuration, final Promise promise) {
+        try {
+            // URL 是后台临时密钥服务的地址，如何搭建服务请参考（https://cloud.tencent.com/document/product/436/14048）
+            URL url = new URL(SafeReadableMap.safeGetString(configuration, "url"));
+            QCloudCredentialProvider sessionProvider = new SessionCredentialProvider(new HttpRequest.Builder<String>()
+                    .url(url)
+                    .method("GET")
+                    .build());
+            // 缓存临时密钥并在过期前提前刷新，避免上传时等待密钥请求
+            if (credentialManager != null) {
+                credentialManager.close();
+            }
+            credentialManager = new CredentialManager(sessionProvider,
+                    new CredentialStore(reactContext, url.toString()),
+                    scheduledExecutor, transferExecutor, this::sendCredentialRefreshMessage);
+            credentialManager.start();
+            installService(configuration, credentialManager);
+            // 后台任务用同一个临时密钥服务创建自己的服务实例
+            backgroundTransfers.saveConfiguration(configuration);
 
-            TransferConfig transferConfig = initTransferConfig();
-            transferManager = new TransferManager(cosXmlService, transferConfig);
+            promise.resolve(null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            promise.reject(e);
+        }
+    }
 
-            downloadTasks = new HashMap<>();
+    /**
+     * 修改配置，未传入的字段保持不变
+     * 服务实例会按新配置重建，已经开始的传输继续使用原来的实例直到结束
+     * @param configuration
+     * @param promise
+     */
+    @ReactMethod
+    public void updateConfiguration(ReadableMap configuration, Promise promise) {
+        try {
+            synchronized (this) {
+                if (credentialProvider == null) {
+                    promise.reject(new IllegalStateException("TencentCos is not initialized"));
+                    return;
+                }
+                WritableMap merged = Arguments.createMap();
+                merged.merge(this.configuration);
+                merged.merge(configuration);
+                installService(merged, credentialProvider);
+            }
+            promise.resolve(null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            promise.reject(e);
         }
+    }
 
-        promise.resolve(null);
+    /**
+     * 创建服务并替换当前实例，所有请求共用这一个实例和它的连接池，重复初始化时按新配置重建
+     */
+    private synchronized void installService(ReadableMap configuration,
+                                             QCloudCredentialProvider credentialProvider) {
+        serviceConfig = initConfiguration(configuration);
+        cosXmlService = new CosXmlService(reactContext, serviceConfig, credentialProvider);
+        transferManager = new TransferManager(cosXmlService, initTransferConfig(configuration));
+        initProgressAggregator(configuration);
+        initTransferScheduler(configuration);
+        initDownloadCache(configuration);
+        initMetrics(configuration);
+        retryPolicy = RetryPolicy.from(SafeReadableMap.safeGetMap(configuration, "retry"), RetryPolicy.DEFAULT);
+        this.configuration = configuration;
+        this.credentialProvider = credentialProvider;
+
+        // 初始化后 JS 已经在监听事件，转发后台任务的进度和尚未确认的结果
+        BackgroundTransfers.setListener(backgroundListener);
+        for (BackgroundTransfers.Result result : backgroundTransfers.getResults()) {
+            sendBackgroundResultMessage(result);
+        }
     }
 
-    @ReactMethod
-    public void initWithSessionCredential(final ReadableMap configuration, final Promise promise) {
-        if (cosXmlService == null) {
-            serviceConfig = initConfiguration(configuration);
-            try {
-                // URL 是后台临时密钥服务的地址，如何搭建服务请参考（https://cloud.tencent.com/document/product/436/14048）
-                URL url = new URL(SafeReadableMap.safeGetString(configuration, "url"));
-                QCloudCredentialProvider credentialProvider = new SessionCredentialProvider(new HttpRequest.Builder<String>()
-                        .url(url)
-                        .method("GET")
-                        .build());
-                CosXmlService cosXmlService = new CosXmlService(reactContext, serviceConfig, credentialProvider);
-                TransferConfig transferConfig = initTransferConfig();
-                transferManager = new TransferManager(cosXmlService, transferConfig);
-
-                downloadTasks = new HashMap<>();
+    /**
+     * 旧版本 React Native 在销毁模块时调用
+     */
+    @Override
+    public void onCatalystInstanceDestroy() {
+        teardown();
+    }
 
-                promise.resolve(null);
-            } catch (Exception e) {
-                e.printStackTrace();
-                promise.reject(e);
+    /**
+     * 新版本 React Native 在销毁模块时调用，JS 重新加载后旧模块不能再接收后台任务的回调
+     */
+    public void invalidate() {
+        teardown();
+    }
+
+    private void teardown() {
+        BackgroundTransfers.clearListener(backgroundListener);
+    }
+
+    /**
+     * 把上传或下载交给系统后台执行，应用退到后台或被杀死后继续传输
+     * 结果通过 COSDownloadResultUpdate 或 COSUploadResultUpdate 事件返回，应用不在运行时等下次初始化后返回
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void enqueueBackgroundTransfer(ReadableMap options, Promise promise) {
+        try {
+            if (backgroundTransfers.loadConfiguration() == null) {
+                promise.reject(new IllegalStateException(
+                        "background transfers require initWithSessionCredential"));
+                return;
+            }
+            String type = SafeReadableMap.safeGetString(options, "type");
+            String requestId = SafeReadableMap.safeGetString(options, "requestId");
+            if (requestId == null) {
+                requestId = UUID.randomUUID().toString();
+            }
+            Data.Builder input = new Data.Builder()
+                    .putString(TransferWorker.KEY_TYPE, TransferScheduler.TYPE_UPLOAD.equals(type)
+                            ? TransferScheduler.TYPE_UPLOAD : TransferScheduler.TYPE_DOWNLOAD)
+                    .putString(TransferWorker.KEY_REQUEST_ID, requestId)
+                    .putString(TransferWorker.KEY_BUCKET, SafeReadableMap.safeGetString(options, "bucket"))
+                    .putString(TransferWorker.KEY_COS_PATH, SafeReadableMap.safeGetString(options, "cosPath"))
+                    .putString(TransferWorker.KEY_FILE_URI, SafeReadableMap.safeGetString(options, "fileUri"))
+                    .putString(TransferWorker.KEY_FILE_PATH, SafeReadableMap.safeGetString(options, "filePath"))
+                    .putString(TransferWorker.KEY_CHECKSUM, SafeReadableMap.safeGetString(options, "checksum"));
+            int connections = SafeReadableMap.safeGetInt(options, "connections");
+            if (connections > 0) {
+                input.putInt(TransferWorker.KEY_CONNECTIONS, connections);
             }
+            backgroundTransfers.enqueue(requestId, input.build(),
+                    SafeReadableMap.safeGetString(options, "network"),
+                    SafeReadableMap.safeGetBoolean(options, "expedited", true));
+
+            WritableMap result = Arguments.createMap();
+            result.putString("requestId", requestId);
+            promise.resolve(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+            promise.reject(e);
         }
+    }
 
+    /**
+     * 取消后台传输
+     * @param requestId
+     * @param promise
+     */
+    @ReactMethod
+    public void cancelBackgroundTransfer(String requestId, Promise promise) {
+        backgroundTransfers.cancel(requestId);
+        promise.resolve(null);
+    }
+
+    /**
+     * JS 收到后台传输结果后确认，之后不再重复发送
+     * @param requestId
+     * @param promise
+     */
+    @ReactMethod
+    public void acknowledgeBackgroundResult(String requestId, Promise promise) {
+        backgroundTransfers.acknowledgeResult(requestId);
+        promise.resolve(null);
+    }
+
+    /**
+     * 重新发送尚未确认的后台传输结果，用于初始化之后才开始监听的情况
+     * @param promise
+     */
+    @ReactMethod
+    public void resendBackgroundResults(Promise promise) {
+        for (BackgroundTransfers.Result result : backgroundTransfers.getResults()) {
+            sendBackgroundResultMessage(result);
+        }
+        promise.resolve(null);
     }
 
     @ReactMethod
@@ -171,6 +406,11 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
                 result.putBoolean("exists", exists);
                 result.putString("mime", mime);
                 result.putDouble("size", size);
+                // 只返回已经缓存的值，不在这里读取整个文件
+                Long crc64 = fileHashCache.get(file);
+                if (crc64 != null) {
+                    result.putString("crc64", Crc64.toString(crc64));
+                }
                 promise.resolve(result);
             } else {
                 promise.reject(new Error("file does not exist "));
@@ -180,6 +420,55 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * 检查目标位置是否已经有相同的对象，用于秒传
+     * 先 HEAD 目标对象，大小一致且带有 CRC64 时才计算本地数据的 CRC64 比较，本地文件的结果会被缓存
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void findUploadedObject(final ReadableMap options, final Promise promise) {
+        final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+        final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
+        transferExecutor.execute(() -> {
+            try (PartSource source = PartSource.open(reactContext,
+                    SafeReadableMap.safeGetString(options, "fileUri"),
+                    SafeReadableMap.safeGetString(options, "base64"))) {
+                WritableMap result = Arguments.createMap();
+                result.putBoolean("matched", false);
+                HeadObjectResult head;
+                TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_HEAD_OBJECT);
+                try {
+                    head = cosXmlService.headObject(new HeadObjectRequest(bucket, cosPath));
+                    call.success(0);
+                } catch (CosXmlServiceException e) {
+                    call.fail(e);
+                    if (e.getStatusCode() == 404) {
+                        promise.resolve(result);
+                        return;
+                    }
+                    throw e;
+                } catch (CosXmlClientException e) {
+                    call.fail(e);
+                    throw e;
+                }
+                Long remote = Crc64.parse(CosHeaders.get(head, CosHeaders.CRC64));
+                if (remote == null || CosHeaders.getLong(head, CosHeaders.CONTENT_LENGTH) != source.size()) {
+                    promise.resolve(result);
+                    return;
+                }
+                long crc64 = fileHashCache.crc64(source);
+                result.putBoolean("matched", crc64 == remote);
+                result.putDouble("size", source.size());
+                result.putString("crc64", Crc64.toString(crc64));
+                result.putString("eTag", CosHeaders.get(head, CosHeaders.ETAG));
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject(e);
+            }
+        });
+    }
+
     /**
      * 初始化分片上传
      *
@@ -192,9 +481,9 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
             final String bucket = SafeReadableMap.safeGetString(options, "bucket");
             final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
 
-            InitMultipartUploadRequest initMultipartUploadRequest =
-                    new InitMultipartUploadRequest(bucket, cosPath);
-            cosXmlService.initMultipartUploadAsync(initMultipartUploadRequest,
+            sendWithRetry(bucket, TransferMetrics.OP_INIT_UPLOAD, 0, requestRetryPolicy(options),
+                    () -> new InitMultipartUploadRequest(bucket, cosPath),
+                    (request, listener) -> cosXmlService.initMultipartUploadAsync(request, listener),
                     new CosXmlResultListener() {
                         @Override
                         public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
@@ -234,164 +523,184 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
             final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
             final String requestId = SafeReadableMap.safeGetString(options, "requestId");
 
-            ListPartsRequest listPartsRequest = new ListPartsRequest(bucket, cosPath,
-                    requestId);
-            cosXmlService.listPartsAsync(listPartsRequest, new CosXmlResultListener() {
-                @Override
-                public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
-                    ListParts listParts = ((ListPartsResult) result).listParts;
-
-                    WritableArray parts = Arguments.createArray();
-                    for (ListParts.Part part : listParts.parts) {
-                        WritableMap dic = Arguments.createMap();
-                        dic.putDouble("size", Double.parseDouble(part.size));
-                        dic.putInt("partNumber", Integer.parseInt(part.partNumber));
-                        dic.putString("eTag", part.eTag);
-                        parts.pushMap(dic);
-                    }
-                    promise.resolve(parts);
-                }
+            sendWithRetry(bucket, TransferMetrics.OP_LIST_PARTS, 0, requestRetryPolicy(options),
+                    () -> new ListPartsRequest(bucket, cosPath, requestId),
+                    (request, listener) -> cosXmlService.listPartsAsync(request, listener),
+                    new CosXmlResultListener() {
+                        @Override
+                        public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
+                            ListParts listParts = ((ListPartsResult) result).listParts;
+
+                            WritableArray parts = Arguments.createArray();
+                            for (ListParts.Part part : listParts.parts) {
+                                WritableMap dic = Arguments.createMap();
+                                dic.putDouble("size", Double.parseDouble(part.size));
+                                dic.putInt("partNumber", Integer.parseInt(part.partNumber));
+                                dic.putString("eTag", part.eTag);
+                                parts.pushMap(dic);
+                            }
+                            promise.resolve(parts);
+                        }
 
-                @Override
-                public void onFail(CosXmlRequest cosXmlRequest,
-                                   @Nullable CosXmlClientException clientException,
-                                   @Nullable CosXmlServiceException serviceException) {
-                    promise.reject(clientException != null ? clientException : serviceException);
-                }
-            });
+                        @Override
+                        public void onFail(CosXmlRequest cosXmlRequest,
+                                           @Nullable CosXmlClientException clientException,
+                                           @Nullable CosXmlServiceException serviceException) {
+                            promise.reject(clientException != null ? clientException : serviceException);
+                        }
+                    });
         } catch (Exception ex) {
             promise.reject(ex);
         }
     }
 
     /**
-     * 上传分块
+     * 查询本地记录的已上传分片，有记录时可以不经过 listParts 直接续传
      * @param options
      * @param promise
      */
     @ReactMethod
-    public void uploadPart(final ReadableMap options, final Promise promise) {
+    public void getUploadState(final ReadableMap options, final Promise promise) {
         try {
-            String fileUri = SafeReadableMap.safeGetString(options, "fileUri");
             final String bucket = SafeReadableMap.safeGetString(options, "bucket");
             final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
             final String requestId = SafeReadableMap.safeGetString(options, "requestId");
-            final int partNumber = SafeReadableMap.safeGetInt(options, "partNumber");
-            final long  offset = (long) SafeReadableMap.safeGetDouble(options, "offset");
-            final long sliceSize = 1 * 1024 * 1024;
-
-            File file = new File(fileUri);
-            Uri uri = Uri.fromFile(file);
-
-            // 文件总大小
-            long totalFileSize = file.length();
-
-            // 剩余文件大小
-            long restFileSize = totalFileSize - offset;
-
-            long slice = Math.min(restFileSize, sliceSize);
-
-            UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath,
-                    partNumber, uri.getPath(), offset, slice, requestId);
 
-            cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
-                @Override
-                public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
-                    // 根据文件大小判断是否是最后一段分片
-                    boolean last = slice + offset >= totalFileSize;
-
-                    String eTag = ((UploadPartResult) result).eTag;
-                    WritableMap dic = Arguments.createMap();
-                    dic.putInt("partNumber", partNumber);
-                    dic.putDouble("fileSize", totalFileSize);
-                    dic.putDouble("partSize", slice);
-                    dic.putString("eTag", eTag);
-                    dic.putBoolean("last", last);
-                    promise.resolve(dic);
+            UploadJournal journal = uploadJournals.open(bucket, cosPath, requestId);
+            WritableArray parts = Arguments.createArray();
+            for (UploadJournal.Entry entry : journal.getEntries()) {
+                if (entry.partNumber >= journal.getNextPartNumber()) {
+                    break;
                 }
-
-                @Override
-                public void onFail(CosXmlRequest cosXmlRequest,
-                                   @Nullable CosXmlClientException clientException,
-                                   @Nullable CosXmlServiceException serviceException) {
-                    promise.reject(clientException != null ? clientException : serviceException);
+                WritableMap dic = Arguments.createMap();
+                dic.putInt("partNumber", entry.partNumber);
+                dic.putDouble("offset", entry.offset);
+                dic.putDouble("size", entry.size);
+                dic.putString("eTag", entry.eTag);
+                if (entry.crc64 != null) {
+                    dic.putString("crc64", Crc64.toString(entry.crc64));
                 }
-            });
+                parts.pushMap(dic);
+            }
+
+            WritableMap result = Arguments.createMap();
+            result.putArray("parts", parts);
+            result.putInt("nextPartNumber", journal.getNextPartNumber());
+            result.putDouble("nextOffset", journal.getNextOffset());
+            promise.resolve(result);
         } catch (Exception ex) {
             promise.reject(ex);
         }
     }
 
-
-    /**
-     * 完成分块上传
-     * @param options
-     * @param promise
-     */
-    @ReactMethod
-    public void completeUpload(final ReadableMap options, final Promise promise) {
-        final String bucket = SafeReadableMap.safeGetString(options, "bucket");
-        final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
-        final String requestId = SafeReadableMap.safeGetString(options, "requestId");
-        final ReadableArray uploadedParts = SafeReadableMap.safeGetArray(options, "uploadedParts");
-
-        Map<Integer, String> eTags = new HashMap<Integer, String>();
-        for (int i = 0; i < uploadedParts.size(); i ++) {
-            ReadableMap part = uploadedParts.getMap(i);
-            eTags.put(part.getInt("partNumber"), part.getString("eTag"));
-        }
-
-        CompleteMultiUploadRequest completeMultiUploadRequest =
-                new CompleteMultiUploadRequest(bucket,
-                        cosPath, requestId, eTags);
-
-        cosXmlService.completeMultiUploadAsync(completeMultiUploadRequest,
-                new CosXmlResultListener() {
-                    @Override
-                    public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
-                        CompleteMultipartUploadResult completeMultiUploadResult =
-                                ((CompleteMultiUploadResult) result).completeMultipartUpload;
-                        WritableMap dic = Arguments.createMap();
-                        dic.putString("key", completeMultiUploadResult.key);
-                        dic.putString("eTag", completeMultiUploadResult.eTag);
-                        promise.resolve(dic);
-                    }
-
-                    @Override
-                    public void onFail(CosXmlRequest cosXmlRequest,
-                                       @Nullable CosXmlClientException clientException,
-                                       @Nullable CosXmlServiceException serviceException) {
-                        promise.reject(clientException != null ? clientException : serviceException);
-                    }
-                });
-    }
-
     /**
-     * 取消上传
+     * 上传分块
      * @param options
      * @param promise
      */
     @ReactMethod
-    public void cancelUpload(final ReadableMap options, final Promise promise) {
+    public void uploadPart(final ReadableMap options, final Promise promise) {
         try {
+            final String fileUri = SafeReadableMap.safeGetString(options, "fileUri");
+            final String base64 = SafeReadableMap.safeGetString(options, "base64");
             final String bucket = SafeReadableMap.safeGetString(options, "bucket");
             final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
             final String requestId = SafeReadableMap.safeGetString(options, "requestId");
+            final int partNumber = SafeReadableMap.safeGetInt(options, "partNumber");
+            final long  offset = (long) SafeReadableMap.safeGetDouble(options, "offset");
+            final ChecksumType checksum = ChecksumType.from(SafeReadableMap.safeGetString(options, "checksum"));
+
+            // 支持本地路径、content:// 地址和 base64 数据
+            final PartSource source = PartSource.open(reactContext, fileUri, base64);
+
+            // 文件总大小
+            long totalFileSize;
+            long maxPartSize;
+            try {
+                totalFileSize = source.size();
+                maxPartSize = source.maxPartSize();
+            } finally {
+                source.close();
+            }
+            // 开启校验时分片要读到内存中
+            if (checksum != ChecksumType.NONE) {
+                maxPartSize = Math.min(maxPartSize, PartSource.MAX_BUFFERED_PART_SIZE);
+            }
 
-            AbortMultiUploadRequest abortMultiUploadRequest =
-                    new AbortMultiUploadRequest(bucket,
-                            cosPath, requestId);
-            cosXmlService.abortMultiUploadAsync(abortMultiUploadRequest,
+            // 剩余文件大小
+            long restFileSize = totalFileSize - offset;
+
+            final PartSizePolicy policy = partSizePolicy(requestId, totalFileSize, maxPartSize);
+
+            long slice = policy.nextPartSize(restFileSize, partNumber);
+            final long startTime = System.nanoTime();
+
+            // 每次重试都重新读取分片数据，开启校验时同时重新计算校验值
+            final AtomicReference<ChecksummedPart> checksummed = new AtomicReference<>();
+            final BandwidthThrottle throttle = requestThrottle(options);
+            RequestFactory<UploadPartRequest> factory = () -> {
+                try (PartSource partSource = PartSource.open(reactContext, fileUri, base64)) {
+                    UploadPartRequest request;
+                    if (checksum == ChecksumType.NONE) {
+                        request = partSource.createRequest(bucket, cosPath, partNumber, offset, slice, requestId);
+                    } else {
+                        ChecksummedPart part = ChecksummedPart.read(partSource, checksum, bucket, cosPath,
+                                partNumber, offset, slice, requestId);
+                        checksummed.set(part);
+                        request = part.request;
+                    }
+                    request.setProgressListener(throttle.wrap(null));
+                    return request;
+                }
+            };
+            sendWithRetry(bucket, TransferMetrics.OP_UPLOAD_PART, slice, requestRetryPolicy(options), factory,
+                    (request, listener) -> cosXmlService.uploadPartAsync(request, listener),
                     new CosXmlResultListener() {
                         @Override
                         public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
-                            promise.resolve(null);
+                            // 根据文件大小判断是否是最后一段分片
+                            boolean last = slice + offset >= totalFileSize;
+                            policy.onPartCompleted(slice,
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+                            String eTag = ((UploadPartResult) result).eTag;
+                            ChecksummedPart part = checksummed.get();
+                            Long crc64 = part != null ? part.crc64 : null;
+                            if (part != null) {
+                                try {
+                                    part.verify((UploadPartResult) result);
+                                } catch (ChecksumMismatchException e) {
+                                    removePartSizePolicy(requestId);
+                                    rejectTransfer(promise, e);
+                                    return;
+                                }
+                            }
+                            try {
+                                uploadJournals.open(bucket, cosPath, requestId).append(
+                                        new UploadJournal.Entry(partNumber, offset, slice, eTag, crc64));
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                            }
+
+                            WritableMap dic = Arguments.createMap();
+                            dic.putInt("partNumber", partNumber);
+                            dic.putDouble("fileSize", totalFileSize);
+                            dic.putDouble("partSize", slice);
+                            dic.putDouble("nextPartSize", policy.getPartSize());
+                            dic.putString("eTag", eTag);
+                            if (crc64 != null) {
+                                dic.putString("crc64", Crc64.toString(crc64));
+                            }
+                            dic.putBoolean("last", last);
+                            promise.resolve(dic);
                         }
 
                         @Override
                         public void onFail(CosXmlRequest cosXmlRequest,
                                            @Nullable CosXmlClientException clientException,
                                            @Nullable CosXmlServiceException serviceException) {
+                            // 重试用尽的上传通常会被放弃，再次上传时重新估计分片大小
+                            removePartSizePolicy(requestId);
                             promise.reject(clientException != null ? clientException : serviceException);
                         }
                     });
@@ -400,128 +709,1693 @@ public class TencentCosModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * 同一个 uploadId 共用一个分片策略，按已完成分片的吞吐量调整分片大小
+     * 没有 uploadId 时不保存；顺带清理闲置过久的策略，被放弃的上传不会一直占用内存
+     */
+    private PartSizePolicy partSizePolicy(@Nullable String requestId, long fileSize, long maxPartSize) {
+        for (Map.Entry<String, PartSizePolicy> entry : partSizePolicies.entrySet()) {
+            if (entry.getValue().getIdleMillis() > PART_SIZE_POLICY_IDLE_MILLIS) {
+                partSizePolicies.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (requestId == null) {
+            return new PartSizePolicy(fileSize, sliceSizeForUpload, maxPartSize);
+        }
+        return partSizePolicies.computeIfAbsent(requestId,
+                id -> new PartSizePolicy(fileSize, sliceSizeForUpload, maxPartSize));
+    }
+
+    private void removePartSizePolicy(@Nullable String requestId) {
+        if (requestId != null) {
+            partSizePolicies.remove(requestId);
+        }
+    }
+
 
     /**
-     * 下载
+     * 上传文件，在原生层并发上传分片，全部完成后返回
      * @param options
      * @param promise
      */
     @ReactMethod
-    public void download(ReadableMap options, final Promise promise) {
+    public void uploadFile(final ReadableMap options, final Promise promise) {
         try {
+            final String fileUri = SafeReadableMap.safeGetString(options, "fileUri");
+            final String base64 = SafeReadableMap.safeGetString(options, "base64");
             final String bucket = SafeReadableMap.safeGetString(options, "bucket");
             final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
             final String requestId = SafeReadableMap.safeGetString(options, "requestId");
-            final String filePath = SafeReadableMap.safeGetString(options, "filePath");
-
-            File file = new File(filePath);
-            String savePathDir = file.getParent();
-            String savedFileName = file.getName();
+            final int concurrency = SafeReadableMap.safeGetInt(options, "concurrency");
+            final int priority = (int) SafeReadableMap.safeGetDouble(options, "priority",
+                    TransferScheduler.PRIORITY_NORMAL);
+            // 转换后上传时 JS 不预先初始化分片上传，用 taskId 标识任务
+            final String id = SafeReadableMap.safeGetString(options, "taskId");
+            final String taskId = id != null ? id : requestId != null ? requestId : UUID.randomUUID().toString();
+
+            if (uploadTasks.contains(requestId)) {
+                promise.reject(new Error("upload task is already running " + requestId));
+                return;
+            }
 
-            if (downloadTasks.containsKey(requestId)) {
-                COSXMLDownloadTask cosxmlDownloadTask = downloadTasks.get(requestId);
-                if (cosxmlDownloadTask != null) {
-                    cosxmlDownloadTask.resume();
+            TransformedUpload.Options transformOptions = TransformedUpload.Options.from(options);
+            if (transformOptions != null) {
+                String mimeType = TransformedUpload.mimeType(reactContext, fileUri);
+                String transform = TransformedUpload.resolve(transformOptions.mode, mimeType);
+                if (transform != null) {
+                    if (requestId != null) {
+                        // 转换后的请求头和已初始化的分片上传不一致，uploadId 仍归调用方，由调用方取消
+                        promise.reject(new Error("requestId cannot be used with transform, cancel upload "
+                                + requestId + " and upload again without it"));
+                        return;
+                    }
+                    uploadTransformed(options, taskId, priority, fileUri, base64, bucket, cosPath,
+                            mimeType, transform, transformOptions, concurrency, promise);
+                    return;
                 }
-                promise.resolve(null);
-                return;
             }
 
-            COSXMLDownloadTask cosxmlDownloadTask =
-                    transferManager.download(reactContext,
-                            bucket, cosPath, savePathDir, savedFileName);
+            // 网络规则挂起时任务暂停后重新排队，轮到时用新的任务从同一个 uploadId 续传
+            final MultipartUploadTask[] current = new MultipartUploadTask[1];
+            final boolean[] requeued = new boolean[1];
+            final MultipartUploadTask.Listener listener = new MultipartUploadTask.Listener() {
+                @Override
+                public void onInit(MultipartUploadTask task) {
+                    uploadTasks.put(task.getUploadId(), task);
+                }
 
-            downloadTasks.put(requestId, cosxmlDownloadTask);
+                @Override
+                public void onProgress(MultipartUploadTask task, long complete, long target) {
+                    sendProgressMessage(taskId, complete, target);
+                }
 
-            //设置下载进度回调
-            cosxmlDownloadTask.setCosXmlProgressListener((complete, target) ->
-                    sendProgressMessage(requestId, complete, target));
+                @Override
+                public void onSuccess(MultipartUploadTask task, CompleteMultipartUploadResult result) {
+                    uploadTasks.finish(task.getUploadId(), TaskRegistry.STATUS_SUCCESS, null);
+                    transferScheduler.finish(taskId);
+                    WritableMap dic = Arguments.createMap();
+                    dic.putString("uploadId", task.getUploadId());
+                    dic.putString("key", result.key);
+                    dic.putString("eTag", result.eTag);
+                    dic.putDouble("fileSize", task.getFileSize());
+                    dic.putDouble("partSize", task.getPartSize());
+                    dic.putBoolean("paused", false);
+                    if (task.isUnverified()) {
+                        dic.putBoolean("unverified", true);
+                    }
+                    promise.resolve(dic);
+                }
 
-            //设置返回结果回调
-            cosxmlDownloadTask.setCosXmlResultListener(new CosXmlResultListener() {
                 @Override
-                public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                    COSXMLDownloadTask.COSXMLDownloadTaskResult downloadTaskResult =
-                            (COSXMLDownloadTask.COSXMLDownloadTaskResult) result;
-                    sendDownloadResultMessage(requestId, downloadTaskResult, null);
+                public void onPaused(MultipartUploadTask task) {
+                    synchronized (current) {
+                        requeued[0] = true;
+                    }
+                    if (transferScheduler.paused(taskId)) {
+                        return;
+                    }
+                    resolveUploadPaused(taskId, task, promise);
                 }
 
                 @Override
-                public void onFail(CosXmlRequest request,
-                                   CosXmlClientException clientException,
-                                   CosXmlServiceException serviceException) {
-                    sendDownloadResultMessage(requestId, null, clientException != null ? clientException : serviceException);
+                public void onFail(MultipartUploadTask task, Exception exception) {
+                    uploadTasks.finish(task.getUploadId(), TaskRegistry.STATUS_FAILED, exception);
+                    transferScheduler.finish(taskId);
+                    rejectTransfer(promise, exception);
                 }
-            });
-            promise.resolve(null);
-        } catch (Exception e) {
-            promise.reject(e);
+            };
+            current[0] = createUploadTask(options, requestId, listener);
+            if (requestId != null) {
+                uploadTasks.put(requestId, current[0]);
+            }
+            transferScheduler.enqueue(taskId, TransferScheduler.TYPE_UPLOAD, priority,
+                    new TransferScheduler.Job() {
+                        @Override
+                        public void start() {
+                            MultipartUploadTask task;
+                            synchronized (current) {
+                                if (requeued[0]) {
+                                    String uploadId = current[0].getUploadId();
+                                    try {
+                                        current[0] = createUploadTask(options, uploadId, listener);
+                                    } catch (IOException e) {
+                                        uploadTasks.finish(uploadId, TaskRegistry.STATUS_FAILED, e);
+                                        transferScheduler.finish(taskId);
+                                        promise.reject(e);
+                                        return;
+                                    }
+                                    if (uploadId != null) {
+                                        uploadTasks.put(uploadId, current[0]);
+                                    }
+                                    requeued[0] = false;
+                                }
+                                task = current[0];
+                            }
+                            task.start();
+                        }
+
+                        @Override
+                        public void pause() {
+                            MultipartUploadTask task;
+                            boolean waiting;
+                            synchronized (current) {
+                                task = current[0];
+                                waiting = requeued[0];
+                            }
+                            if (waiting) {
+                                // 挂起后等待重新开始的任务已经停下，直接按暂停返回
+                                resolveUploadPaused(taskId, task, promise);
+                            } else {
+                                task.pause();
+                            }
+                        }
+                    });
+        } catch (Exception ex) {
+            promise.reject(ex);
         }
     }
 
     /**
-     * 暂停下载
-     * @param requestId
-     * @param promise
+     * 创建上传任务，续传时传入已有的 uploadId
      */
-    @ReactMethod
-    public void pauseDownload(String requestId, final Promise promise) {
-        if (downloadTasks.containsKey(requestId)) {
-            COSXMLDownloadTask task = downloadTasks.get(requestId);
-            if (task != null) {
-                task.pause();
-            }
+    private MultipartUploadTask createUploadTask(ReadableMap options, @Nullable String uploadId,
+                                                 MultipartUploadTask.Listener listener) throws IOException {
+        PartSource source = PartSource.open(reactContext, SafeReadableMap.safeGetString(options, "fileUri"),
+                SafeReadableMap.safeGetString(options, "base64"));
+        MultipartUploadTask task = new MultipartUploadTask(cosXmlService,
+                SafeReadableMap.safeGetString(options, "bucket"), SafeReadableMap.safeGetString(options, "cosPath"),
+                uploadId, source, uploadJournals, sliceSizeForUpload,
+                SafeReadableMap.safeGetInt(options, "concurrency"), listener);
+        task.setMetrics(transferMetrics);
+        task.setRetryPolicy(requestRetryPolicy(options), scheduledExecutor);
+        task.setChecksum(ChecksumType.from(SafeReadableMap.safeGetString(options, "checksum")));
+        task.setThrottle(requestThrottle(options));
+        return task;
+    }
+
+    private void resolveUploadPaused(String taskId, MultipartUploadTask task, Promise promise) {
+        uploadTasks.finish(task.getUploadId(), TaskRegistry.STATUS_PAUSED, null);
+        transferScheduler.finish(taskId);
+        WritableMap dic = Arguments.createMap();
+        dic.putString("uploadId", task.getUploadId());
+        dic.putDouble("fileSize", task.getFileSize());
+        dic.putDouble("partSize", task.getPartSize());
+        dic.putBoolean("paused", true);
+        promise.resolve(dic);
+    }
+
+    /**
+     * 转换后上传，转换和分片上传在后台线程流式进行
+     */
+    private void uploadTransformed(ReadableMap options, final String taskId, int priority,
+                                   String fileUri, String base64, String bucket, String cosPath,
+                                   String mimeType, String transform,
+                                   TransformedUpload.Options transformOptions, int concurrency,
+                                   final Promise promise) {
+        if (transformedUploads.containsKey(taskId)) {
+            promise.reject(new Error("upload task is already running " + taskId));
+            return;
         }
-        promise.resolve(true);
+        final TransformedUpload upload = new TransformedUpload(reactContext, cosXmlService,
+                transferExecutor, bucket, cosPath, fileUri, base64, mimeType, transform,
+                transformOptions, sliceSizeForUpload, concurrency,
+                (complete, target) -> sendProgressMessage(taskId, complete, target));
+        upload.setMetrics(transferMetrics);
+        upload.setRetryPolicy(requestRetryPolicy(options));
+        upload.setThrottle(requestThrottle(options));
+        transformedUploads.put(taskId, upload);
+        transferScheduler.enqueue(taskId, TransferScheduler.TYPE_UPLOAD, priority,
+                new TransferScheduler.Job() {
+                    @Override
+                    public void start() {
+                        batchExecutor.execute(() -> {
+                            try {
+                                TransformedUpload.Result result = upload.run();
+                                WritableMap dic = Arguments.createMap();
+                                if (result.uploadId != null) {
+                                    dic.putString("uploadId", result.uploadId);
+                                }
+                                dic.putString("key", cosPath);
+                                dic.putString("eTag", result.eTag);
+                                dic.putDouble("fileSize", result.transformedSize);
+                                dic.putDouble("partSize", result.partSize);
+                                dic.putBoolean("paused", false);
+                                WritableMap info = Arguments.createMap();
+                                info.putString("type", result.transform);
+                                info.putDouble("originalSize", result.originalSize);
+                                info.putDouble("transformedSize", result.transformedSize);
+                                info.putDouble("compressionRatio", result.originalSize > 0
+                                        ? (double) result.transformedSize / result.originalSize : 1);
+                                info.putDouble("transformMillis", result.transformMillis);
+                                info.putString("contentType", result.contentType);
+                                info.putString("contentEncoding", result.contentEncoding);
+                                dic.putMap("transform", info);
+                                promise.resolve(dic);
+                            } catch (Exception e) {
+                                if (!upload.isCancelled()) {
+                                    rejectTransfer(promise, e);
+                                    return;
+                                }
+                                // 暂停即取消，和暂停一样正常返回，由 cancelled 区分
+                                WritableMap dic = Arguments.createMap();
+                                dic.putString("uploadId", "");
+                                dic.putString("key", cosPath);
+                                dic.putDouble("fileSize", 0);
+                                dic.putDouble("partSize", 0);
+                                dic.putBoolean("paused", false);
+                                dic.putBoolean("cancelled", true);
+                                promise.resolve(dic);
+                            } finally {
+                                transformedUploads.remove(taskId);
+                                transferScheduler.finish(taskId);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void pause() {
+                        // 转换后的上传不能续传，暂停即取消
+                        upload.cancel();
+                    }
+                });
     }
 
     /**
-     * 取消下载
+     * 暂停 uploadFile 发起的上传，转换后的上传会被取消
      * @param requestId
      * @param promise
      */
     @ReactMethod
-    public void cancelDownload(String requestId, final Promise promise) {
-        if (downloadTasks.containsKey(requestId)) {
-            COSXMLDownloadTask task = downloadTasks.get(requestId);
-            if (task != null) {
-                task.cancel();
-            }
+    public void pauseUpload(String requestId, final Promise promise) {
+        TransformedUpload transformed = transformedUploads.get(requestId);
+        if (transformed != null) {
+            // 排队中的任务开始后立即结束，返回 cancelled
+            transformed.cancel();
+            promise.resolve(true);
+            return;
         }
-        promise.resolve(null);
+        MultipartUploadTask task = uploadTasks.get(requestId);
+        if (transferScheduler.contains(requestId)) {
+            transferScheduler.pause(requestId);
+        } else if (task != null) {
+            task.pause();
+        }
+        promise.resolve(true);
     }
 
-    private CosXmlServiceConfig initConfiguration(ReadableMap configuration) {
-        String region = configuration.getString("region");
+    /**
+     * 服务端复制对象，大对象按分片并发复制，数据不经过设备
+     * 传入 uploadId 时续传暂停的分片复制，deleteSource 为 true 时复制完成后删除源对象
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void copyObject(final ReadableMap options, final Promise promise) {
+        try {
+            final String id = SafeReadableMap.safeGetString(options, "requestId");
+            final String requestId = id != null ? id : UUID.randomUUID().toString();
+            final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+            final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
+            final String uploadId = SafeReadableMap.safeGetString(options, "uploadId");
+            final String sourceRegion = SafeReadableMap.safeGetString(options, "sourceRegion");
+            final MultipartCopyTask.Source source = new MultipartCopyTask.Source(
+                    SafeReadableMap.safeGetString(options, "sourceBucket"),
+                    sourceRegion != null ? sourceRegion : serviceConfig.getRegion(),
+                    SafeReadableMap.safeGetString(options, "sourceCosPath"));
+            final boolean deleteSource = SafeReadableMap.safeGetBoolean(options, "deleteSource", false);
+            final long partSize = (long) SafeReadableMap.safeGetDouble(options, "partSize");
+            final int concurrency = SafeReadableMap.safeGetInt(options, "concurrency");
+            final int priority = (int) SafeReadableMap.safeGetDouble(options, "priority",
+                    TransferScheduler.PRIORITY_NORMAL);
+
+            if (copyTasks.contains(requestId)) {
+                promise.reject(new Error("copy task is already running " + requestId));
+                return;
+            }
+
+            MultipartCopyTask task = new MultipartCopyTask(cosXmlService, source,
+                    bucket, cosPath, uploadId, uploadJournals, partSize, concurrency,
+                    new MultipartCopyTask.Listener() {
+                        @Override
+                        public void onInit(MultipartCopyTask task) {
+                        }
+
+                        @Override
+                        public void onProgress(MultipartCopyTask task, long complete, long target) {
+                            sendProgressMessage(requestId, complete, target);
+                        }
+
+                        @Override
+                        public void onSuccess(MultipartCopyTask task, String eTag) {
+                            boolean sourceDeleted = deleteSource && deleteCopySource(source);
+                            copyTasks.finish(requestId, TaskRegistry.STATUS_SUCCESS, null);
+                            transferScheduler.finish(requestId);
+                            WritableMap dic = Arguments.createMap();
+                            dic.putString("uploadId", task.getUploadId());
+                            dic.putString("eTag", eTag);
+                            dic.putDouble("objectSize", task.getObjectSize());
+                            dic.putBoolean("paused", false);
+                            dic.putBoolean("sourceDeleted", sourceDeleted);
+                            promise.resolve(dic);
+                        }
+
+                        @Override
+                        public void onPaused(MultipartCopyTask task) {
+                            copyTasks.finish(requestId, TaskRegistry.STATUS_PAUSED, null);
+                            transferScheduler.finish(requestId);
+                            WritableMap dic = Arguments.createMap();
+                            dic.putString("uploadId", task.getUploadId());
+                            dic.putDouble("objectSize", task.getObjectSize());
+                            dic.putBoolean("paused", true);
+                            promise.resolve(dic);
+                        }
+
+                        @Override
+                        public void onFail(MultipartCopyTask task, Exception exception) {
+                            copyTasks.finish(requestId, TaskRegistry.STATUS_FAILED, exception);
+                            transferScheduler.finish(requestId);
+                            promise.reject(exception);
+                        }
+                    });
+            task.setMetrics(transferMetrics);
+            task.setRetryPolicy(requestRetryPolicy(options), scheduledExecutor);
+            copyTasks.put(requestId, task);
+            transferScheduler.enqueue(requestId, TransferScheduler.TYPE_COPY, priority,
+                    new TransferScheduler.Job() {
+                        @Override
+                        public void start() {
+                            task.start();
+                        }
+
+                        @Override
+                        public void pause() {
+                            task.pause();
+                        }
+                    });
+        } catch (Exception ex) {
+            promise.reject(ex);
+        }
+    }
+
+    /**
+     * 暂停 copyObject 发起的复制
+     * @param requestId
+     * @param promise
+     */
+    @ReactMethod
+    public void pauseCopy(String requestId, final Promise promise) {
+        MultipartCopyTask task = copyTasks.get(requestId);
+        if (transferScheduler.contains(requestId)) {
+            transferScheduler.pause(requestId);
+        } else if (task != null) {
+            task.pause();
+        }
+        promise.resolve(true);
+    }
+
+    /**
+     * 移动对象时删除复制源，失败时保留源对象，由调用方决定是否重试
+     */
+    private boolean deleteCopySource(MultipartCopyTask.Source source) {
+        TransferMetrics.Call call = transferMetrics.begin(source.bucket, TransferMetrics.OP_DELETE_OBJECTS);
+        try {
+            DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(source.bucket);
+            request.setRegion(source.region);
+            request.setObjectList(Collections.singletonList(source.cosPath));
+            request.setQuiet(true);
+            DeleteMultiObjectResult result = cosXmlService.deleteMultiObject(request);
+            call.success(0);
+            return result.deleteResult == null || result.deleteResult.errorList == null
+                    || result.deleteResult.errorList.isEmpty();
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * 完成分块上传
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void completeUpload(final ReadableMap options, final Promise promise) {
+        final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+        final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
+        final String requestId = SafeReadableMap.safeGetString(options, "requestId");
+        final ReadableArray uploadedParts = SafeReadableMap.safeGetArray(options, "uploadedParts");
+
+        removePartSizePolicy(requestId);
 
-        return new CosXmlServiceConfig.Builder()
+        Map<Integer, String> eTags = new HashMap<Integer, String>();
+        for (int i = 0; i < uploadedParts.size(); i ++) {
+            ReadableMap part = uploadedParts.getMap(i);
+            eTags.put(part.getInt("partNumber"), part.getString("eTag"));
+        }
+        final Long partsCrc64 = ChecksumType.from(SafeReadableMap.safeGetString(options, "checksum"))
+                == ChecksumType.CRC64 ? combineCrc64(uploadedParts) : null;
+
+        try {
+            sendWithRetry(bucket, TransferMetrics.OP_COMPLETE_UPLOAD, 0, requestRetryPolicy(options),
+                    () -> new CompleteMultiUploadRequest(bucket, cosPath, requestId, eTags),
+                    (request, listener) -> cosXmlService.completeMultiUploadAsync(request, listener),
+                    new CosXmlResultListener() {
+                        @Override
+                        public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
+                            CompleteMultipartUploadResult completeMultiUploadResult =
+                                    ((CompleteMultiUploadResult) result).completeMultipartUpload;
+                            uploadJournals.delete(bucket, cosPath, requestId);
+                            Long expected = Crc64.parse(CosHeaders.get(result, CosHeaders.CRC64));
+                            if (partsCrc64 != null && expected != null && !expected.equals(partsCrc64)) {
+                                ChecksumMismatchException mismatch = new ChecksumMismatchException(
+                                        ChecksumType.CRC64, cosPath,
+                                        Crc64.toString(expected), Crc64.toString(partsCrc64));
+                                // 合并后的对象已经可以被读取，先删除再报错
+                                batchExecutor.execute(() -> {
+                                    deleteObject(bucket, cosPath);
+                                    rejectTransfer(promise, mismatch);
+                                });
+                                return;
+                            }
+                            WritableMap dic = Arguments.createMap();
+                            dic.putString("key", completeMultiUploadResult.key);
+                            dic.putString("eTag", completeMultiUploadResult.eTag);
+                            promise.resolve(dic);
+                        }
+
+                        @Override
+                        public void onFail(CosXmlRequest cosXmlRequest,
+                                           @Nullable CosXmlClientException clientException,
+                                           @Nullable CosXmlServiceException serviceException) {
+                            promise.reject(clientException != null ? clientException : serviceException);
+                        }
+                    });
+        } catch (Exception ex) {
+            promise.reject(ex);
+        }
+    }
+
+    /**
+     * 删除校验失败的对象，失败时保留，由调用方决定是否重试
+     */
+    private void deleteObject(String bucket, String cosPath) {
+        TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_DELETE_OBJECTS);
+        try {
+            DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(bucket);
+            request.setObjectList(Collections.singletonList(cosPath));
+            request.setQuiet(true);
+            cosXmlService.deleteMultiObject(request);
+            call.success(0);
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+        }
+    }
+
+    /**
+     * 按分片编号顺序合并各分片的 CRC64，有分片缺少 crc64 或 size 时返回 null，不做整体校验
+     */
+    @Nullable
+    private static Long combineCrc64(ReadableArray uploadedParts) {
+        TreeMap<Integer, ReadableMap> parts = new TreeMap<>();
+        for (int i = 0; i < uploadedParts.size(); i++) {
+            ReadableMap part = uploadedParts.getMap(i);
+            parts.put(part.getInt("partNumber"), part);
+        }
+        long crc64 = 0;
+        for (ReadableMap part : parts.values()) {
+            Long partCrc64 = Crc64.parse(SafeReadableMap.safeGetString(part, "crc64"));
+            long size = (long) SafeReadableMap.safeGetDouble(part, "size", -1);
+            if (partCrc64 == null || size < 0) {
+                return null;
+            }
+            crc64 = Crc64.combine(crc64, partCrc64, size);
+        }
+        return crc64;
+    }
+
+    /**
+     * 校验失败使用单独的错误码，JS 层可以和网络错误区分
+     */
+    private static void rejectTransfer(Promise promise, Exception e) {
+        if (e instanceof ChecksumMismatchException) {
+            promise.reject(ChecksumMismatchException.CODE, e.getMessage(), e);
+        } else {
+            promise.reject(e);
+        }
+    }
+
+    /**
+     * 取消上传
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void cancelUpload(final ReadableMap options, final Promise promise) {
+        try {
+            final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+            final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
+            final String requestId = SafeReadableMap.safeGetString(options, "requestId");
+
+            MultipartUploadTask task = uploadTasks.finish(requestId, TaskRegistry.STATUS_CANCELLED, null);
+            if (transferScheduler.contains(requestId)) {
+                // 挂起后等待重新开始的上传也要离开队列
+                transferScheduler.pause(requestId);
+            } else if (task != null) {
+                task.pause();
+            }
+            removePartSizePolicy(requestId);
+
+            sendWithRetry(bucket, TransferMetrics.OP_ABORT_UPLOAD, 0, requestRetryPolicy(options),
+                    () -> new AbortMultiUploadRequest(bucket, cosPath, requestId),
+                    (request, listener) -> cosXmlService.abortMultiUploadAsync(request, listener),
+                    new CosXmlResultListener() {
+                        @Override
+                        public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
+                            uploadJournals.delete(bucket, cosPath, requestId);
+                            promise.resolve(null);
+                        }
+
+                        @Override
+                        public void onFail(CosXmlRequest cosXmlRequest,
+                                           @Nullable CosXmlClientException clientException,
+                                           @Nullable CosXmlServiceException serviceException) {
+                            promise.reject(clientException != null ? clientException : serviceException);
+                        }
+                    });
+        } catch (Exception ex) {
+            promise.reject(ex);
+        }
+    }
+
+
+    /**
+     * 下载
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void download(ReadableMap options, final Promise promise) {
+        try {
+            final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+            final String cosPath = SafeReadableMap.safeGetString(options, "cosPath");
+            final String requestId = SafeReadableMap.safeGetString(options, "requestId");
+            final String filePath = SafeReadableMap.safeGetString(options, "filePath");
+
+            final int priority = (int) SafeReadableMap.safeGetDouble(options, "priority",
+                    TransferScheduler.PRIORITY_NORMAL);
+            final int connections = SafeReadableMap.safeGetInt(options, "connections");
+            final boolean useCache = SafeReadableMap.safeGetBoolean(options, "useCache", false);
+            final RetryPolicy retry = requestRetryPolicy(options);
+            final ChecksumType checksum = ChecksumType.from(SafeReadableMap.safeGetString(options, "checksum"));
+            final BandwidthThrottle throttle = requestThrottle(options);
+
+            File file = new File(filePath);
+            final String savePathDir = file.getParent();
+            final String savedFileName = file.getName();
+
+            // 本地文件存在时才做条件请求，没有传入校验值时使用上次下载记录的值
+            String ifNoneMatch = null;
+            String ifModifiedSince = null;
+            if (file.exists()) {
+                DownloadValidators.Entry validator = downloadValidators.get(bucket, cosPath, file);
+                ifNoneMatch = SafeReadableMap.safeGetString(options, "ifNoneMatch");
+                ifModifiedSince = SafeReadableMap.safeGetString(options, "ifModifiedSince");
+                if (ifNoneMatch == null && ifModifiedSince == null && validator != null) {
+                    ifNoneMatch = validator.eTag;
+                    ifModifiedSince = validator.lastModified;
+                }
+            }
+            final DownloadValidators.Entry conditions = ifNoneMatch != null || ifModifiedSince != null
+                    ? new DownloadValidators.Entry(ifNoneMatch, ifModifiedSince, file.length()) : null;
+
+            // 已暂停的任务重新排队，轮到时从断点继续
+            if (transferScheduler.contains(requestId)) {
+                transferScheduler.resume(requestId);
+                promise.resolve(null);
+                return;
+            }
+
+            transferScheduler.enqueue(requestId, TransferScheduler.TYPE_DOWNLOAD, priority,
+                    new TransferScheduler.Job() {
+                        @Override
+                        public void start() {
+                            COSXMLDownloadTask task = downloadTasks.get(requestId);
+                            RangedDownloadTask rangedTask = rangedDownloadTasks.get(requestId);
+                            if (task != null) {
+                                downloadCalls.put(requestId,
+                                        transferMetrics.begin(bucket, TransferMetrics.OP_DOWNLOAD));
+                                task.resume();
+                            } else if (rangedTask != null) {
+                                rangedTask.start();
+                            } else if (useCache || conditions != null) {
+                                transferExecutor.execute(() -> startCheckedDownload(requestId,
+                                        bucket, cosPath, filePath, connections, useCache, conditions, retry,
+                                        checksum, throttle));
+                            } else {
+                                startNetworkDownload(requestId, bucket, cosPath, filePath,
+                                        connections, false, retry, checksum, throttle);
+                            }
+                        }
+
+                        @Override
+                        public void pause() {
+                            COSXMLDownloadTask task = downloadTasks.get(requestId);
+                            RangedDownloadTask rangedTask = rangedDownloadTasks.get(requestId);
+                            if (rangedTask != null) {
+                                // 分段下载在 onPaused 中让出位置
+                                rangedTask.pause();
+                                return;
+                            }
+                            if (task != null) {
+                                endDownloadCall(requestId, -1, null);
+                                task.pause();
+                            }
+                            transferScheduler.paused(requestId);
+                        }
+                    });
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    /**
+     * 先用 HEAD 校验，对象未修改时直接返回，缓存命中时直接放到 filePath，否则照常下载
+     */
+    private void startCheckedDownload(String requestId, String bucket, String cosPath,
+                                      String filePath, int connections, boolean useCache,
+                                      @Nullable DownloadValidators.Entry conditions, RetryPolicy retry,
+                                      ChecksumType checksum, BandwidthThrottle throttle) {
+        File file = new File(filePath);
+        TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_HEAD_OBJECT);
+        try {
+            HeadObjectRequest request = new HeadObjectRequest(bucket, cosPath);
+            if (conditions != null && conditions.eTag != null) {
+                request.setRequestHeaders("If-None-Match", conditions.eTag);
+            }
+            if (conditions != null && conditions.lastModified != null) {
+                request.setRequestHeaders("If-Modified-Since", conditions.lastModified);
+            }
+            HeadObjectResult head = cosXmlService.headObject(request);
+            call.success(0);
+            String eTag = CosHeaders.get(head, CosHeaders.ETAG);
+            if (useCache && eTag != null
+                    && downloadCache.restore(DownloadCache.key(bucket, cosPath, eTag), file)) {
+                transferScheduler.finish(requestId);
+                downloadValidators.put(bucket, cosPath, file, eTag,
+                        CosHeaders.get(head, CosHeaders.LAST_MODIFIED));
+                sendProgressMessage(requestId, file.length(), file.length());
+                WritableMap params = Arguments.createMap();
+                params.putBoolean("cached", true);
+                sendDownloadResultMessage(requestId, eTag, null, params);
+                return;
+            }
+        } catch (CosXmlServiceException e) {
+            if (e.getStatusCode() == 304) {
+                call.success(0);
+                transferScheduler.finish(requestId);
+                sendProgressMessage(requestId, file.length(), file.length());
+                WritableMap params = Arguments.createMap();
+                params.putBoolean("notModified", true);
+                sendDownloadResultMessage(requestId, conditions != null ? conditions.eTag : null, null, params);
+                return;
+            }
+            // 其他错误照常下载，由下载流程报告
+            call.fail(e);
+        } catch (CosXmlClientException e) {
+            // HEAD 失败时照常下载，错误由下载流程报告
+            call.fail(e);
+        }
+        startNetworkDownload(requestId, bucket, cosPath, filePath, connections, useCache, retry,
+                checksum, throttle);
+    }
+
+    /**
+     * 单连接下载由 SDK 自己重试，分段下载按 retry 单独重试失败的段
+     * 需要校验 CRC64 时单连接也按段下载，每段写完就计算，不需要下载后再完整读一遍文件
+     */
+    private void startNetworkDownload(String requestId, String bucket, String cosPath,
+                                      String filePath, int connections, boolean cache, RetryPolicy retry,
+                                      ChecksumType checksum, BandwidthThrottle throttle) {
+        if (connections > 1 || checksum == ChecksumType.CRC64) {
+            startRangedDownload(requestId, bucket, cosPath, filePath, Math.max(connections, 1),
+                    cache, retry, checksum, throttle);
+        } else {
+            File file = new File(filePath);
+            startDownload(requestId, bucket, cosPath, file.getParent(), file.getName(), cache, throttle);
+        }
+    }
+
+    private void cacheDownload(String bucket, String cosPath, String eTag, String filePath) {
+        if (eTag == null) {
+            return;
+        }
+        transferExecutor.execute(() ->
+                downloadCache.store(DownloadCache.key(bucket, cosPath, eTag), new File(filePath)));
+    }
+
+    private void startDownload(final String requestId, final String bucket, final String cosPath,
+                               final String savePathDir, final String savedFileName, final boolean cache,
+                               BandwidthThrottle throttle) {
+        COSXMLDownloadTask cosxmlDownloadTask =
+                transferManager.download(reactContext,
+                        bucket, cosPath, savePathDir, savedFileName);
+
+        downloadTasks.put(requestId, cosxmlDownloadTask);
+        downloadCalls.put(requestId, transferMetrics.begin(bucket, TransferMetrics.OP_DOWNLOAD));
+
+        //设置下载进度回调
+        cosxmlDownloadTask.setCosXmlProgressListener(throttle.wrap((complete, target) ->
+                sendProgressMessage(requestId, complete, target), () -> {
+                    TransferState state = cosxmlDownloadTask.getTaskState();
+                    return state == TransferState.PAUSED || state == TransferState.CANCELED;
+                }));
+
+        //设置返回结果回调
+        cosxmlDownloadTask.setCosXmlResultListener(new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                COSXMLDownloadTask.COSXMLDownloadTaskResult downloadTaskResult =
+                        (COSXMLDownloadTask.COSXMLDownloadTaskResult) result;
+                File file = new File(savePathDir, savedFileName);
+                endDownloadCall(requestId, file.length(), null);
+                downloadTasks.finish(requestId, TaskRegistry.STATUS_SUCCESS, null);
+                transferScheduler.finish(requestId);
+                downloadValidators.put(bucket, cosPath, file, downloadTaskResult.eTag,
+                        CosHeaders.get(result, CosHeaders.LAST_MODIFIED));
+                sendDownloadResultMessage(requestId, downloadTaskResult.eTag, null);
+                if (cache) {
+                    cacheDownload(bucket, cosPath, downloadTaskResult.eTag, file.getAbsolutePath());
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request,
+                               CosXmlClientException clientException,
+                               CosXmlServiceException serviceException) {
+                Exception error = clientException != null ? clientException : serviceException;
+                endDownloadCall(requestId, 0, error);
+                downloadTasks.finish(requestId, TaskRegistry.STATUS_FAILED, error);
+                transferScheduler.finish(requestId);
+                sendDownloadResultMessage(requestId, null, error);
+            }
+        });
+    }
+
+    private interface RequestFactory<T extends CosXmlRequest> {
+        T create() throws Exception;
+    }
+
+    private interface RequestSender<T extends CosXmlRequest> {
+        void send(T request, CosXmlResultListener listener);
+    }
+
+    /**
+     * 请求中的 retry 覆盖初始化配置中的重试策略
+     */
+    private RetryPolicy requestRetryPolicy(ReadableMap options) {
+        return RetryPolicy.from(SafeReadableMap.safeGetMap(options, "retry"), retryPolicy);
+    }
+
+    /**
+     * 发送异步请求并记录指标，失败时按重试策略等待后重新创建请求再发送，最终结果交给 listener
+     */
+    private <T extends CosXmlRequest> void sendWithRetry(String bucket, String operation, long bytes,
+                                                         RetryPolicy retry, RequestFactory<T> factory,
+                                                         RequestSender<T> sender,
+                                                         CosXmlResultListener listener) throws Exception {
+        sender.send(factory.create(), new CosXmlResultListener() {
+            TransferMetrics.Call call = transferMetrics.begin(bucket, operation);
+            int retries = 0;
+
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                call.success(bytes);
+                listener.onSuccess(request, result);
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request,
+                               @Nullable CosXmlClientException clientException,
+                               @Nullable CosXmlServiceException serviceException) {
+                Exception error = clientException != null ? clientException : serviceException;
+                call.fail(error);
+                if (!retry.shouldRetry(error, retries)) {
+                    listener.onFail(request, clientException, serviceException);
+                    return;
+                }
+                transferMetrics.recordRetry(bucket, operation);
+                CosXmlResultListener next = this;
+                scheduledExecutor.schedule(() -> {
+                    try {
+                        retries++;
+                        call = transferMetrics.begin(bucket, operation);
+                        sender.send(factory.create(), next);
+                    } catch (Exception e) {
+                        call.cancel();
+                        listener.onFail(request, new CosXmlClientException(
+                                ClientErrorCode.IO_ERROR.getCode(), e), null);
+                    }
+                }, retry.delayMillis(retries), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * 结束单连接下载的统计，bytes 小于 0 表示暂停或取消
+     */
+    private void endDownloadCall(String requestId, long bytes, @Nullable Exception error) {
+        TransferMetrics.Call call = downloadCalls.remove(requestId);
+        if (call == null) {
+            return;
+        } else if (error != null) {
+            call.fail(error);
+        } else if (bytes < 0) {
+            call.cancel();
+        } else {
+            call.success(bytes);
+        }
+    }
+
+    /**
+     * 分段并发下载，适合大文件
+     */
+    private void startRangedDownload(final String requestId, final String bucket, final String cosPath,
+                                     final String filePath, int connections, final boolean cache,
+                                     RetryPolicy retry, ChecksumType checksum, BandwidthThrottle throttle) {
+        RangedDownloadTask task = new RangedDownloadTask(cosXmlService,
+                bucket, cosPath, filePath, connections, new RangedDownloadTask.Listener() {
+                    @Override
+                    public void onProgress(RangedDownloadTask task, long complete, long target) {
+                        sendProgressMessage(requestId, complete, target);
+                    }
+
+                    @Override
+                    public void onSuccess(RangedDownloadTask task) {
+                        rangedDownloadTasks.finish(requestId, TaskRegistry.STATUS_SUCCESS, null);
+                        transferScheduler.finish(requestId);
+                        downloadValidators.put(bucket, cosPath, new File(filePath), task.getETag(),
+                                task.getLastModified());
+                        sendDownloadResultMessage(requestId, task.getETag(), null);
+                        if (cache) {
+                            cacheDownload(bucket, cosPath, task.getETag(), filePath);
+                        }
+                    }
+
+                    @Override
+                    public void onPaused(RangedDownloadTask task) {
+                        // 暂停的任务保留在登记表中，再次调用 download 时按段续传
+                        transferScheduler.paused(requestId);
+                    }
+
+                    @Override
+                    public void onFail(RangedDownloadTask task, Exception exception) {
+                        rangedDownloadTasks.finish(requestId, TaskRegistry.STATUS_FAILED, exception);
+                        transferScheduler.finish(requestId);
+                        // 预分配的文件大小和对象一致，旧的校验值不能再用于条件请求
+                        downloadValidators.remove(bucket, cosPath, new File(filePath));
+                        sendDownloadResultMessage(requestId, null, exception);
+                    }
+                });
+        task.setMetrics(transferMetrics);
+        task.setRetryPolicy(retry, scheduledExecutor);
+        task.setChecksum(checksum);
+        task.setThrottle(throttle);
+        rangedDownloadTasks.put(requestId, task);
+        task.start();
+    }
+
+    /**
+     * 暂停下载
+     * @param requestId
+     * @param promise
+     */
+    @ReactMethod
+    public void pauseDownload(String requestId, final Promise promise) {
+        progressAggregator.remove(requestId);
+        transferScheduler.pause(requestId);
+        promise.resolve(true);
+    }
+
+    /**
+     * 取消下载
+     * @param requestId
+     * @param promise
+     */
+    @ReactMethod
+    public void cancelDownload(String requestId, final Promise promise) {
+        progressAggregator.remove(requestId);
+        COSXMLDownloadTask task = downloadTasks.finish(requestId, TaskRegistry.STATUS_CANCELLED, null);
+        if (task != null) {
+            endDownloadCall(requestId, -1, null);
+            task.cancel();
+        }
+        RangedDownloadTask rangedTask = rangedDownloadTasks.finish(requestId,
+                TaskRegistry.STATUS_CANCELLED, null);
+        if (rangedTask != null) {
+            rangedTask.cancel();
+        }
+        transferScheduler.finish(requestId);
+        promise.resolve(null);
+    }
+
+    /**
+     * 调整排队中或运行中任务的优先级
+     * @param requestId
+     * @param priority 0 低，1 普通，2 高
+     * @param promise
+     */
+    @ReactMethod
+    public void setPriority(String requestId, int priority, final Promise promise) {
+        transferScheduler.setPriority(requestId, priority);
+        promise.resolve(null);
+    }
+
+    /**
+     * 设置同时运行的最大传输数
+     * @param maxConcurrent
+     * @param promise
+     */
+    @ReactMethod
+    public void setMaxConcurrentTransfers(int maxConcurrent, final Promise promise) {
+        maxConcurrentTransfers = maxConcurrent;
+        applyNetworkPolicy();
+        promise.resolve(null);
+    }
+
+    /**
+     * 设置所有上传和下载共用的限速
+     * @param bytesPerSecond 每秒字节数，0 表示不限速
+     * @param promise
+     */
+    @ReactMethod
+    public void setBandwidthLimit(double bytesPerSecond, final Promise promise) {
+        bandwidthLimit = (long) bytesPerSecond;
+        applyNetworkPolicy();
+        promise.resolve(null);
+    }
+
+    /**
+     * 获取传输队列快照
+     * @param promise
+     */
+    @ReactMethod
+    public void getTransferQueue(final Promise promise) {
+        WritableArray list = Arguments.createArray();
+        for (TransferScheduler.Snapshot snapshot : transferScheduler.snapshot()) {
+            WritableMap dic = Arguments.createMap();
+            dic.putString("requestId", snapshot.id);
+            dic.putString("type", snapshot.type);
+            dic.putInt("priority", snapshot.priority);
+            dic.putString("state", snapshot.state.name().toLowerCase());
+            dic.putDouble("waitMillis", snapshot.waitMillis);
+            list.pushMap(dic);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("maxConcurrent", transferScheduler.getMaxConcurrent());
+        result.putArray("tasks", list);
+        promise.resolve(result);
+    }
+
+    /**
+     * 获取下载缓存统计
+     * @param promise
+     */
+    @ReactMethod
+    public void getCacheStats(final Promise promise) {
+        DownloadCache.Stats stats = downloadCache.getStats();
+        WritableMap result = Arguments.createMap();
+        result.putDouble("hits", stats.hits);
+        result.putDouble("misses", stats.misses);
+        result.putDouble("evictions", stats.evictions);
+        result.putDouble("size", stats.size);
+        result.putDouble("maxSize", stats.maxSize);
+        result.putInt("count", stats.count);
+        promise.resolve(result);
+    }
+
+    /**
+     * 清空下载缓存
+     * @param promise
+     */
+    @ReactMethod
+    public void clearCache(final Promise promise) {
+        transferExecutor.execute(() -> {
+            downloadCache.clear();
+            promise.resolve(null);
+        });
+    }
+
+    /**
+     * 批量上传，所有对象共用一个线程池，通过 COSBatchProgressUpdate 汇报进度，全部结束后按输入顺序返回每一项的结果
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void batchUpload(final ReadableMap options, final Promise promise) {
+        final ReadableArray items = SafeReadableMap.safeGetArray(options, "items");
+        final BandwidthThrottle throttle = requestThrottle(options);
+        startBatch(options, items.size(), (index, progress) -> {
+            ReadableMap item = items.getMap(index);
+            String bucket = SafeReadableMap.safeGetString(item, "bucket");
+            String cosPath = SafeReadableMap.safeGetString(item, "cosPath");
+            PartSource source = PartSource.open(reactContext,
+                    SafeReadableMap.safeGetString(item, "fileUri"),
+                    SafeReadableMap.safeGetString(item, "base64"));
+            try {
+                // 小对象一次上传，省去初始化和完成分片上传两次请求
+                if (source.size() <= source.maxPartSize()) {
+                    PutObjectRequest request = source.createPutRequest(bucket, cosPath);
+                    request.setProgressListener(throttle.wrap(progress::onProgress));
+                    TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_PUT_OBJECT);
+                    try {
+                        String eTag = cosXmlService.putObject(request).eTag;
+                        call.success(source.size());
+                        return eTag;
+                    } catch (CosXmlClientException | CosXmlServiceException e) {
+                        call.fail(e);
+                        throw e;
+                    }
+                }
+                return uploadMultipart(bucket, cosPath, source, requestRetryPolicy(options), throttle,
+                        progress);
+            } finally {
+                source.close();
+            }
+        }, promise);
+    }
+
+    /**
+     * 批量下载
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void batchDownload(final ReadableMap options, final Promise promise) {
+        final ReadableArray items = SafeReadableMap.safeGetArray(options, "items");
+        final BandwidthThrottle throttle = requestThrottle(options);
+        startBatch(options, items.size(), (index, progress) -> {
+            ReadableMap item = items.getMap(index);
+            String bucket = SafeReadableMap.safeGetString(item, "bucket");
+            String cosPath = SafeReadableMap.safeGetString(item, "cosPath");
+            File file = new File(SafeReadableMap.safeGetString(item, "filePath"));
+            GetObjectResult result = downloadObject(bucket, cosPath, file, throttle, progress);
+            String eTag = CosHeaders.get(result, CosHeaders.ETAG);
+            downloadValidators.put(bucket, cosPath, file, eTag,
+                    CosHeaders.get(result, CosHeaders.LAST_MODIFIED));
+            return eTag;
+        }, promise);
+    }
+
+    /**
+     * 在当前线程下载一个对象
+     */
+    private GetObjectResult downloadObject(String bucket, String cosPath, File file, BandwidthThrottle throttle,
+                                  BatchOperation.Progress progress)
+            throws CosXmlClientException, CosXmlServiceException {
+        GetObjectRequest request = new GetObjectRequest(bucket, cosPath, file.getParent(), file.getName());
+        request.setProgressListener(throttle.wrap(progress::onProgress));
+        TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_DOWNLOAD);
+        GetObjectResult result;
+        try {
+            result = cosXmlService.getObject(request);
+            call.success(file.length());
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * 把前缀下的对象增量同步到本地目录，只下载新增或变化的对象
+     * 进度合并为 COSSyncProgressUpdate 事件定时发送
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void syncPrefix(final ReadableMap options, final Promise promise) {
+        final String id = SafeReadableMap.safeGetString(options, "syncId");
+        final String syncId = id != null ? id : UUID.randomUUID().toString();
+        final String bucket = SafeReadableMap.safeGetString(options, "bucket");
+        final String localDir = SafeReadableMap.safeGetString(options, "localDir");
+        final BandwidthThrottle throttle = requestThrottle(options);
+        final ScheduledFuture<?>[] ticker = new ScheduledFuture<?>[1];
+        if (bucket == null || localDir == null) {
+            promise.reject(new Error("bucket and localDir are required"));
+            return;
+        }
+        if (prefixSyncs.containsKey(syncId)) {
+            promise.reject(new Error("sync is already running " + syncId));
+            return;
+        }
+        PrefixSync sync = new PrefixSync(syncId, cosXmlService, transferExecutor, bucket,
+                SafeReadableMap.safeGetString(options, "prefix"),
+                new File(localDir),
+                new File(reactContext.getFilesDir(), SyncManifest.DIRECTORY),
+                SafeReadableMap.safeGetBoolean(options, "deleteRemoved", false),
+                SafeReadableMap.safeGetInt(options, "concurrency"),
+                (cosPath, file, progress) -> CosHeaders.get(
+                        downloadObject(bucket, cosPath, file, throttle, progress), CosHeaders.ETAG),
+                (finished, error) -> {
+                    prefixSyncs.remove(syncId);
+                    synchronized (ticker) {
+                        if (ticker[0] != null) {
+                            ticker[0].cancel(false);
+                        }
+                    }
+                    sendSyncProgress(finished, true);
+                    if (error != null) {
+                        promise.reject(error);
+                        return;
+                    }
+                    WritableMap result = syncStats(finished);
+                    WritableArray errors = Arguments.createArray();
+                    for (String message : finished.getErrors()) {
+                        errors.pushString(message);
+                    }
+                    result.putArray("errors", errors);
+                    promise.resolve(result);
+                });
+        sync.setRetryPolicy(requestRetryPolicy(options));
+        prefixSyncs.put(syncId, sync);
+        synchronized (ticker) {
+            ticker[0] = scheduledExecutor.scheduleAtFixedRate(() -> sendSyncProgress(sync, false),
+                    ProgressAggregator.DEFAULT_INTERVAL_MILLIS, ProgressAggregator.DEFAULT_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+        sync.start();
+    }
+
+    /**
+     * 停止同步，正在下载的对象完成后结束，已同步的部分保留
+     * @param syncId
+     * @param promise
+     */
+    @ReactMethod
+    public void cancelSync(String syncId, final Promise promise) {
+        PrefixSync sync = prefixSyncs.get(syncId);
+        if (sync != null) {
+            sync.cancel();
+        }
+        promise.resolve(null);
+    }
+
+    private void sendSyncProgress(PrefixSync sync, boolean done) {
+        WritableMap params = syncStats(sync);
+        params.putBoolean("done", done);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("COSSyncProgressUpdate", params);
+    }
+
+    private WritableMap syncStats(PrefixSync sync) {
+        PrefixSync.Stats stats = sync.getStats();
+        WritableMap map = Arguments.createMap();
+        map.putString("syncId", sync.getId());
+        map.putInt("listed", stats.listed);
+        map.putInt("added", stats.added);
+        map.putInt("changed", stats.changed);
+        map.putInt("unchanged", stats.unchanged);
+        map.putInt("removed", stats.removed);
+        map.putInt("downloaded", stats.downloaded);
+        map.putInt("failed", stats.failed);
+        map.putDouble("processedBytes", stats.processedBytes);
+        map.putDouble("targetBytes", stats.targetBytes);
+        return map;
+    }
+
+    /**
+     * 批量删除，同一个存储桶的对象合并成多对象删除请求，每个请求最多 1000 个
+     * @param options
+     * @param promise
+     */
+    @ReactMethod
+    public void batchDelete(final ReadableMap options, final Promise promise) {
+        final String batchId = batchId(options);
+        final ReadableArray items = SafeReadableMap.safeGetArray(options, "items");
+        batchExecutor.execute(() -> {
+            BatchOperation.Item[] results = new BatchOperation.Item[items.size()];
+            Map<String, List<Integer>> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                results[i] = new BatchOperation.Item(i);
+                String bucket = SafeReadableMap.safeGetString(items.getMap(i), "bucket");
+                buckets.computeIfAbsent(bucket, key -> new ArrayList<>()).add(i);
+            }
+
+            int completed = 0;
+            int failed = 0;
+            for (Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+                List<Integer> indices = entry.getValue();
+                for (int from = 0; from < indices.size(); from += MAX_DELETE_OBJECTS) {
+                    List<Integer> chunk = indices.subList(from,
+                            Math.min(from + MAX_DELETE_OBJECTS, indices.size()));
+                    deleteObjects(entry.getKey(), chunk, items, results);
+                    List<BatchOperation.Item> changed = new ArrayList<>();
+                    for (int index : chunk) {
+                        changed.add(results[index]);
+                        if (results[index].success) {
+                            completed++;
+                        } else {
+                            failed++;
+                        }
+                    }
+                    sendBatchProgressMessage(batchId, items.size(), completed, failed, 0, 0, changed);
+                }
+            }
+            promise.resolve(batchResult(batchId, Arrays.asList(results)));
+        });
+    }
+
+    private void deleteObjects(String bucket, List<Integer> indices, ReadableArray items,
+                               BatchOperation.Item[] results) {
+        Map<String, List<Integer>> byKey = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int index : indices) {
+            String cosPath = SafeReadableMap.safeGetString(items.getMap(index), "cosPath");
+            keys.add(cosPath);
+            byKey.computeIfAbsent(cosPath, key -> new ArrayList<>()).add(index);
+            results[index].done = true;
+        }
+        TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_DELETE_OBJECTS);
+        try {
+            DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(bucket);
+            request.setObjectList(keys);
+            request.setQuiet(true);
+            DeleteMultiObjectResult result = cosXmlService.deleteMultiObject(request);
+            call.success(0);
+            // 静默模式只返回失败的对象，其余都已删除
+            for (int index : indices) {
+                results[index].success = true;
+            }
+            if (result.deleteResult != null && result.deleteResult.errorList != null) {
+                for (DeleteResult.Error error : result.deleteResult.errorList) {
+                    List<Integer> failed = byKey.get(error.key);
+                    if (failed == null) {
+                        continue;
+                    }
+                    for (int index : failed) {
+                        results[index].success = false;
+                        results[index].error = error.code + ": " + error.message;
+                    }
+                }
+            }
+        } catch (CosXmlClientException | CosXmlServiceException e) {
+            call.fail(e);
+            for (int index : indices) {
+                results[index].success = false;
+                results[index].error = e.toString();
+            }
+        }
+    }
+
+    private void startBatch(ReadableMap options, int count, BatchOperation.Action action,
+                            final Promise promise) {
+        final String batchId = batchId(options);
+        final int concurrency = SafeReadableMap.safeGetInt(options, "concurrency");
+        final ScheduledFuture<?>[] ticker = new ScheduledFuture<?>[1];
+        BatchOperation batch = new BatchOperation(batchId, count, concurrency, batchExecutor, action,
+                finished -> {
+                    synchronized (ticker) {
+                        if (ticker[0] != null) {
+                            ticker[0].cancel(false);
+                        }
+                    }
+                    sendBatchProgress(finished);
+                    promise.resolve(batchResult(batchId, finished.getItems()));
+                });
+        batch.setRetryPolicy(requestRetryPolicy(options));
+        // 各项进度合并后定时发送，避免每个对象的回调都经过桥
+        synchronized (ticker) {
+            ticker[0] = scheduledExecutor.scheduleAtFixedRate(() -> sendBatchProgress(batch),
+                    ProgressAggregator.DEFAULT_INTERVAL_MILLIS, ProgressAggregator.DEFAULT_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+        batch.start();
+    }
+
+    /**
+     * 在当前线程等待分片上传完成，用于批量上传中的大对象
+     * 分片已按 retryPolicy 单独重试，失败时放弃这次上传，批量操作也不再整体重试
+     */
+    private String uploadMultipart(String bucket, String cosPath, PartSource source, RetryPolicy retryPolicy,
+                                   BandwidthThrottle throttle, BatchOperation.Progress progress)
+            throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] eTag = new String[1];
+        final Exception[] error = new Exception[1];
+        MultipartUploadTask task = new MultipartUploadTask(cosXmlService,
+                bucket, cosPath, null, source, uploadJournals, sliceSizeForUpload,
+                MultipartUploadTask.DEFAULT_CONCURRENCY,
+                new MultipartUploadTask.Listener() {
+                    @Override
+                    public void onInit(MultipartUploadTask task) {
+                    }
+
+                    @Override
+                    public void onProgress(MultipartUploadTask task, long complete, long target) {
+                        progress.onProgress(complete, target);
+                    }
+
+                    @Override
+                    public void onSuccess(MultipartUploadTask task, CompleteMultipartUploadResult result) {
+                        eTag[0] = result.eTag;
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onPaused(MultipartUploadTask task) {
+                        error[0] = new IOException("upload paused");
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFail(MultipartUploadTask task, Exception exception) {
+                        error[0] = exception;
+                        done.countDown();
+                    }
+                });
+        task.setMetrics(transferMetrics);
+        task.setRetryPolicy(retryPolicy, scheduledExecutor);
+        task.setThrottle(throttle);
+        task.start();
+        done.await();
+        if (error[0] != null) {
+            String uploadId = task.getUploadId();
+            if (uploadId != null) {
+                abortMultipart(bucket, cosPath, uploadId, retryPolicy);
+            }
+            throw new BatchOperation.RetriedException(error[0]);
+        }
+        return eTag[0];
+    }
+
+    /**
+     * 在当前线程放弃分片上传，失败时只记录，服务端的生命周期规则最终会清理
+     */
+    private void abortMultipart(String bucket, String cosPath, String uploadId, RetryPolicy retryPolicy) {
+        for (int retries = 0; ; retries++) {
+            TransferMetrics.Call call = transferMetrics.begin(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+            try {
+                cosXmlService.abortMultiUpload(new AbortMultiUploadRequest(bucket, cosPath, uploadId));
+                call.success(0);
+                uploadJournals.delete(bucket, cosPath, uploadId);
+                return;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                if (!retryPolicy.shouldRetry(e, retries)) {
+                    e.printStackTrace();
+                    return;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                transferMetrics.recordRetry(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+            }
+        }
+    }
+
+    private static String batchId(ReadableMap options) {
+        String batchId = SafeReadableMap.safeGetString(options, "batchId");
+        return batchId != null ? batchId : UUID.randomUUID().toString();
+    }
+
+    private WritableMap batchResult(String batchId, List<BatchOperation.Item> items) {
+        WritableArray array = Arguments.createArray();
+        for (BatchOperation.Item item : items) {
+            WritableMap map = Arguments.createMap();
+            map.putInt("index", item.index);
+            map.putBoolean("success", item.success);
+            map.putString("eTag", item.eTag);
+            map.putString("error", item.error);
+            array.pushMap(map);
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("batchId", batchId);
+        result.putArray("items", array);
+        return result;
+    }
+
+    /**
+     * 获取传输指标快照
+     * @param reset 读取后清空统计
+     * @param promise
+     */
+    @ReactMethod
+    public void getMetrics(boolean reset, final Promise promise) {
+        promise.resolve(transferMetrics.snapshot(reset));
+    }
+
+    /**
+     * 获取最近完成、失败或取消的传输记录，用于排查问题
+     * @param promise
+     */
+    @ReactMethod
+    public void getRecentTransfers(final Promise promise) {
+        List<TaskRegistry.Record> records = new ArrayList<>(uploadTasks.getHistory());
+        records.addAll(downloadTasks.getHistory());
+        records.addAll(rangedDownloadTasks.getHistory());
+        records.addAll(copyTasks.getHistory());
+        Collections.sort(records, (a, b) -> Long.compare(b.finishedAt, a.finishedAt));
+
+        WritableArray list = Arguments.createArray();
+        for (TaskRegistry.Record record : records) {
+            WritableMap dic = Arguments.createMap();
+            dic.putString("requestId", record.id);
+            dic.putString("type", record.type);
+            dic.putString("status", record.status);
+            dic.putDouble("startedAt", record.startedAt);
+            dic.putDouble("finishedAt", record.finishedAt);
+            dic.putString("error", record.error);
+            list.pushMap(dic);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("activeUploads", uploadTasks.size());
+        result.putInt("activeDownloads", downloadTasks.size() + rangedDownloadTasks.size());
+        result.putInt("activeCopies", copyTasks.size());
+        result.putArray("recent", list);
+        promise.resolve(result);
+    }
+
+    static CosXmlServiceConfig initConfiguration(ReadableMap configuration) {
+        String region = configuration.getString("region");
+
+        CosXmlServiceConfig.Builder builder = new CosXmlServiceConfig.Builder()
                 .setRegion(region)
-                .isHttps(true)
-                .builder();
+                .isHttps(SafeReadableMap.safeGetBoolean(configuration, "https", true));
+        // 自定义域名格式和端口，可以指向本地的 COS 兼容服务
+        String hostFormat = SafeReadableMap.safeGetString(configuration, "hostFormat");
+        if (hostFormat != null) {
+            builder.setHostFormat(hostFormat);
+        }
+        int port = SafeReadableMap.safeGetInt(configuration, "port");
+        if (port > 0) {
+            builder.setPort(port);
+        }
+        int connectionTimeout = (int) SafeReadableMap.safeGetDouble(configuration, "connectionTimeout");
+        if (connectionTimeout > 0) {
+            builder.setConnectionTimeout(connectionTimeout);
+        }
+        int socketTimeout = (int) SafeReadableMap.safeGetDouble(configuration, "socketTimeout");
+        if (socketTimeout > 0) {
+            builder.setSocketTimeout(socketTimeout);
+        }
+        if (configuration.hasKey("dnsCache")) {
+            builder.dnsCache(SafeReadableMap.safeGetBoolean(configuration, "dnsCache", true));
+        }
+        if (configuration.hasKey("accelerate")) {
+            builder.setAccelerate(SafeReadableMap.safeGetBoolean(configuration, "accelerate", false));
+        }
+        return builder.builder();
+    }
+
+    private TransferConfig initTransferConfig(ReadableMap configuration) {
+        long divisionForUpload = (long) SafeReadableMap.safeGetDouble(configuration, "divisionForUpload");
+        long sliceSize = (long) SafeReadableMap.safeGetDouble(configuration, "sliceSizeForUpload");
+
+        TransferConfig.Builder builder = new TransferConfig.Builder();
+        if (divisionForUpload > 0) {
+            builder.setDivisionForUpload(divisionForUpload);
+        }
+        if (sliceSize > 0) {
+            builder.setSliceSizeForUpload(sliceSize);
+            sliceSizeForUpload = sliceSize;
+        }
+        return builder.build();
+    }
+
+    private void initProgressAggregator(ReadableMap configuration) {
+        long interval = (long) SafeReadableMap.safeGetDouble(configuration, "progressInterval",
+                ProgressAggregator.DEFAULT_INTERVAL_MILLIS);
+        int threshold = (int) SafeReadableMap.safeGetDouble(configuration, "progressThreshold",
+                ProgressAggregator.DEFAULT_THRESHOLD_PERCENT);
+        progressAggregator.configure(interval, threshold);
+    }
+
+    private void initTransferScheduler(ReadableMap configuration) {
+        maxConcurrentTransfers = (int) SafeReadableMap.safeGetDouble(configuration,
+                "maxConcurrentTransfers", TransferScheduler.DEFAULT_MAX_CONCURRENT);
+        bandwidthLimit = (long) SafeReadableMap.safeGetDouble(configuration, "bandwidthLimit", 0);
+        networkPolicy.configure(SafeReadableMap.safeGetMap(configuration, "networkPolicy"));
+        applyNetworkPolicy();
+    }
+
+    /**
+     * 按当前网络的规则调整全局限速和同时传输的数量，规则要求暂停时挂起调度器
+     */
+    private synchronized void applyNetworkPolicy() {
+        NetworkPolicy.Rule rule = networkPolicy.getRule();
+        long rate = bandwidthLimit;
+        if (rule.bandwidth > 0) {
+            rate = rate > 0 ? Math.min(rate, rule.bandwidth) : rule.bandwidth;
+        }
+        int maxConcurrent = rule.maxConcurrent > 0
+                ? Math.min(rule.maxConcurrent, maxConcurrentTransfers) : maxConcurrentTransfers;
+        bandwidthThrottle.setRate(rate);
+        transferScheduler.setMaxConcurrent(maxConcurrent);
+        transferScheduler.setSuspended(rule.pause);
+
+        WritableMap params = Arguments.createMap();
+        params.putString("network", networkPolicy.getNetwork());
+        params.putBoolean("paused", rule.pause);
+        params.putInt("maxConcurrent", maxConcurrent);
+        params.putDouble("bandwidthLimit", rate);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("COSNetworkPolicyUpdate", params);
     }
 
-    private TransferConfig initTransferConfig() {
-        return  new TransferConfig.Builder().build();
+    /**
+     * 请求中的 bandwidthLimit 只限制这个请求，同时仍受全局限速约束
+     */
+    private BandwidthThrottle requestThrottle(ReadableMap options) {
+        long limit = (long) SafeReadableMap.safeGetDouble(options, "bandwidthLimit", 0);
+        return limit > 0 ? new BandwidthThrottle(limit, bandwidthThrottle) : bandwidthThrottle;
+    }
+
+    private void initMetrics(ReadableMap configuration) {
+        transferMetrics.setRegion(SafeReadableMap.safeGetString(configuration, "region"));
+        if (metricsUpdates != null) {
+            metricsUpdates.cancel(false);
+            metricsUpdates = null;
+        }
+        long interval = (long) SafeReadableMap.safeGetDouble(configuration, "metricsInterval", 0);
+        if (interval > 0) {
+            metricsUpdates = scheduledExecutor.scheduleAtFixedRate(() ->
+                    reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                            .emit("COSMetricsUpdate", transferMetrics.snapshot(false)),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void initDownloadCache(ReadableMap configuration) {
+        downloadCache.setMaxSize((long) SafeReadableMap.safeGetDouble(configuration,
+                "downloadCacheSize", DownloadCache.DEFAULT_MAX_SIZE));
     }
 
     private void sendProgressMessage(String requestId, long completeBytes, long targetBytes) {
+        progressAggregator.update(requestId, completeBytes, targetBytes);
+    }
+
+    private void sendProgressBatch(List<ProgressAggregator.Update> updates) {
+        WritableArray list = Arguments.createArray();
+        for (ProgressAggregator.Update update : updates) {
+            WritableMap params = Arguments.createMap();
+            params.putString("requestId", update.requestId);
+            params.putDouble("processedBytes", update.processedBytes);
+            params.putDouble("targetBytes", update.targetBytes);
+            list.pushMap(params);
+        }
+
         WritableMap params = Arguments.createMap();
-        params.putString("requestId", requestId);
-        params.putDouble("processedBytes", completeBytes);
+        params.putArray("updates", list);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("COSProgressBatchUpdate", params);
+    }
+
+    private void sendBackgroundResultMessage(BackgroundTransfers.Result result) {
+        progressAggregator.remove(result.requestId);
+        WritableMap params = Arguments.createMap();
+        params.putBoolean("background", true);
+        if (!result.success) {
+            params.putString("error", result.error);
+        }
+        Exception error = result.success ? null : new Exception(result.error);
+        if (TransferScheduler.TYPE_DOWNLOAD.equals(result.type)) {
+            sendDownloadResultMessage(result.requestId, result.eTag, error, params);
+            return;
+        }
+        params.putString("requestId", result.requestId);
+        params.putBoolean("success", result.success);
+        params.putString("eTag", result.eTag);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("COSUploadResultUpdate", params);
+    }
+
+    private void sendBatchProgress(BatchOperation batch) {
+        List<BatchOperation.Item> changed = batch.takeChanged();
+        if (changed.isEmpty()) {
+            return;
+        }
+        sendBatchProgressMessage(batch.getId(), batch.size(), batch.getCompleted(), batch.getFailed(),
+                batch.getProcessedBytes(), batch.getTargetBytes(), changed);
+    }
+
+    private void sendBatchProgressMessage(String batchId, int total, int completed, int failed,
+                                          long processedBytes, long targetBytes,
+                                          List<BatchOperation.Item> items) {
+        WritableArray array = Arguments.createArray();
+        for (BatchOperation.Item item : items) {
+            WritableMap map = Arguments.createMap();
+            map.putInt("index", item.index);
+            map.putDouble("processedBytes", item.complete);
+            map.putDouble("targetBytes", item.target);
+            map.putBoolean("done", item.done);
+            map.putBoolean("success", item.success);
+            array.pushMap(map);
+        }
+        WritableMap params = Arguments.createMap();
+        params.putString("batchId", batchId);
+        params.putInt("total", total);
+        params.putInt("completed", completed);
+        params.putInt("failed", failed);
+        params.putDouble("processedBytes", processedBytes);
         params.putDouble("targetBytes", targetBytes);
+        params.putArray("items", array);
         reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit("COSProgressUpdate", params);
+                .emit("COSBatchProgressUpdate", params);
     }
 
-    private void sendDownloadResultMessage(String requestId, COSXMLDownloadTask.COSXMLDownloadTaskResult result, Exception error) {
+    private void sendCredentialRefreshMessage(long latencyMillis, @Nullable Exception error) {
         WritableMap params = Arguments.createMap();
+        params.putDouble("latency", latencyMillis);
+        params.putBoolean("success", error == null);
+        if (error != null) {
+            params.putString("error", error.toString());
+        }
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("COSCredentialRefresh", params);
+    }
+
+    private void sendDownloadResultMessage(String requestId, String eTag, Exception error) {
+        sendDownloadResultMessage(requestId, eTag, error, Arguments.createMap());
+    }
+
+    private void sendDownloadResultMessage(String requestId, String eTag, Exception error, WritableMap params) {
         params.putString("requestId", requestId);
         if (error == null) {
             params.putBoolean("success", true);
-            params.putString("eTag", result.eTag);
+            params.putString("eTag", eTag);
         } else {
             params.putBoolean("success", false);
             params.putString("eTag", "");
+            params.putString("error", error.getMessage());
+            if (error instanceof ChecksumMismatchException) {
+                params.putString("errorCode", ChecksumMismatchException.CODE);
+            }
         }
 
         reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
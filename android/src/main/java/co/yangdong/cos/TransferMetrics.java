@@ -0,0 +1,310 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传输指标
+ * 按 地域/存储桶/操作 统计请求数、耗时分布、吞吐量、进行中的请求数和错误码，另外统计任务在队列中的等待时间
+ */
+public class TransferMetrics {
+
+    public static final String OP_INIT_UPLOAD = "initMultiUpload";
+    public static final String OP_LIST_PARTS = "listParts";
+    public static final String OP_UPLOAD_PART = "uploadPart";
+    public static final String OP_COMPLETE_UPLOAD = "completeUpload";
+    public static final String OP_ABORT_UPLOAD = "abortUpload";
+    public static final String OP_PUT_OBJECT = "putObject";
+    public static final String OP_HEAD_OBJECT = "headObject";
+    public static final String OP_DOWNLOAD = "download";
+    public static final String OP_DELETE_OBJECTS = "deleteObjects";
+    public static final String OP_COPY_OBJECT = "copyObject";
+    public static final String OP_UPLOAD_PART_COPY = "uploadPartCopy";
+
+    // 耗时分布的桶上界（毫秒），最后一个桶统计超过最大上界的请求
+    public static final long[] LATENCY_BOUNDS_MILLIS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    /**
+     * 不记录任何数据，用于没有接入指标的调用方
+     */
+    public static final TransferMetrics NONE = new TransferMetrics() {
+        @Override
+        public Call begin(String bucket, String operation) {
+            return new Call(null);
+        }
+
+        @Override
+        public void recordRetry(String bucket, String operation) {
+        }
+
+        @Override
+        public void recordQueueWait(String type, long waitMillis) {
+        }
+    };
+
+    /**
+     * 一次请求，结束时调用 success、fail 或 cancel 中的一个
+     */
+    public static class Call {
+        @Nullable
+        private final Operation operation;
+        private final long startTime = System.nanoTime();
+        private boolean ended;
+
+        Call(@Nullable Operation operation) {
+            this.operation = operation;
+        }
+
+        public void success(long bytes) {
+            end(bytes, null);
+        }
+
+        public void fail(Exception error) {
+            end(0, error);
+        }
+
+        /**
+         * 暂停或取消，不计入成功和失败
+         */
+        public void cancel() {
+            if (operation == null) {
+                return;
+            }
+            synchronized (operation) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                operation.inFlight--;
+            }
+        }
+
+        private void end(long bytes, @Nullable Exception error) {
+            if (operation == null) {
+                return;
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            synchronized (operation) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                operation.inFlight--;
+                operation.record(millis, bytes, error);
+            }
+        }
+    }
+
+    private static class Histogram {
+        final long[] counts = new long[LATENCY_BOUNDS_MILLIS.length + 1];
+        long count;
+        long totalMillis;
+        long maxMillis;
+
+        void add(long millis) {
+            int index = 0;
+            while (index < LATENCY_BOUNDS_MILLIS.length && millis > LATENCY_BOUNDS_MILLIS[index]) {
+                index++;
+            }
+            counts[index]++;
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        WritableMap toMap() {
+            WritableArray buckets = Arguments.createArray();
+            for (long value : counts) {
+                buckets.pushDouble(value);
+            }
+            WritableMap map = Arguments.createMap();
+            map.putDouble("count", count);
+            map.putDouble("averageMillis", count > 0 ? (double) totalMillis / count : 0);
+            map.putDouble("maxMillis", maxMillis);
+            map.putArray("buckets", buckets);
+            return map;
+        }
+    }
+
+    private static class Operation {
+        Histogram latency = new Histogram();
+        Map<String, Long> errors = new TreeMap<>();
+        long successes;
+        long failures;
+        long retries;
+        long bytes;
+        // 成功请求的耗时之和，用于计算单个请求的平均吞吐量
+        long transferMillis;
+        int inFlight;
+
+        void record(long millis, long bytes, @Nullable Exception error) {
+            latency.add(millis);
+            if (error != null) {
+                failures++;
+                String code = errorCode(error);
+                Long count = errors.get(code);
+                errors.put(code, count != null ? count + 1 : 1);
+            } else {
+                successes++;
+                this.bytes += bytes;
+                transferMillis += millis;
+            }
+        }
+
+        /**
+         * 清空已结束请求的统计，进行中的请求结束时仍会计入
+         */
+        synchronized void reset() {
+            latency = new Histogram();
+            errors = new TreeMap<>();
+            successes = 0;
+            failures = 0;
+            retries = 0;
+            bytes = 0;
+            transferMillis = 0;
+        }
+
+        synchronized WritableMap toMap() {
+            WritableMap errorMap = Arguments.createMap();
+            for (Map.Entry<String, Long> entry : errors.entrySet()) {
+                errorMap.putDouble(entry.getKey(), entry.getValue());
+            }
+            WritableMap map = Arguments.createMap();
+            map.putDouble("successes", successes);
+            map.putDouble("failures", failures);
+            map.putDouble("retries", retries);
+            map.putInt("inFlight", inFlight);
+            map.putDouble("bytes", bytes);
+            map.putDouble("bytesPerSecond", transferMillis > 0 ? bytes * 1000.0 / transferMillis : 0);
+            map.putMap("latency", latency.toMap());
+            map.putMap("errors", errorMap);
+            return map;
+        }
+    }
+
+    private final Map<String, Map<String, Operation>> buckets = new LinkedHashMap<>();
+    private final Map<String, Histogram> queueWait = new LinkedHashMap<>();
+    private String region = "";
+    private long since = System.currentTimeMillis();
+
+    public synchronized void setRegion(@Nullable String region) {
+        this.region = region != null ? region : "";
+    }
+
+    /**
+     * 开始一次请求，计入进行中的请求数
+     */
+    public Call begin(String bucket, String operation) {
+        Operation entry = operation(bucket, operation);
+        synchronized (entry) {
+            entry.inFlight++;
+        }
+        return new Call(entry);
+    }
+
+    public void recordRetry(String bucket, String operation) {
+        Operation entry = operation(bucket, operation);
+        synchronized (entry) {
+            entry.retries++;
+        }
+    }
+
+    public synchronized void recordQueueWait(String type, long waitMillis) {
+        Histogram histogram = queueWait.get(type);
+        if (histogram == null) {
+            histogram = new Histogram();
+            queueWait.put(type, histogram);
+        }
+        histogram.add(waitMillis);
+    }
+
+    /**
+     * @param reset 读取后清空已结束请求的统计，进行中的请求数保留
+     */
+    public synchronized WritableMap snapshot(boolean reset) {
+        WritableArray bounds = Arguments.createArray();
+        for (long bound : LATENCY_BOUNDS_MILLIS) {
+            bounds.pushDouble(bound);
+        }
+
+        WritableArray bucketList = Arguments.createArray();
+        for (Map.Entry<String, Map<String, Operation>> bucket : buckets.entrySet()) {
+            int separator = bucket.getKey().indexOf('/');
+            WritableMap operations = Arguments.createMap();
+            for (Map.Entry<String, Operation> operation : bucket.getValue().entrySet()) {
+                operations.putMap(operation.getKey(), operation.getValue().toMap());
+            }
+            WritableMap map = Arguments.createMap();
+            map.putString("region", bucket.getKey().substring(0, separator));
+            map.putString("bucket", bucket.getKey().substring(separator + 1));
+            map.putMap("operations", operations);
+            bucketList.pushMap(map);
+        }
+
+        WritableMap waits = Arguments.createMap();
+        for (Map.Entry<String, Histogram> entry : queueWait.entrySet()) {
+            waits.putMap(entry.getKey(), entry.getValue().toMap());
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putDouble("since", since);
+        result.putDouble("timestamp", System.currentTimeMillis());
+        result.putArray("latencyBoundsMillis", bounds);
+        result.putArray("buckets", bucketList);
+        result.putMap("queueWait", waits);
+
+        if (reset) {
+            for (Map<String, Operation> operations : buckets.values()) {
+                for (Operation operation : operations.values()) {
+                    operation.reset();
+                }
+            }
+            queueWait.clear();
+            since = System.currentTimeMillis();
+        }
+        return result;
+    }
+
+    /**
+     * 服务端错误使用错误码，没有时使用 HTTP 状态码；客户端错误使用 SDK 的错误码；校验失败使用 ChecksumMismatch
+     */
+    public static String errorCode(Exception error) {
+        if (error instanceof CosXmlServiceException) {
+            CosXmlServiceException serviceException = (CosXmlServiceException) error;
+            String code = serviceException.getErrorCode();
+            return code != null ? code : "HTTP" + serviceException.getStatusCode();
+        }
+        if (error instanceof CosXmlClientException) {
+            return "Client" + ((CosXmlClientException) error).errorCode;
+        }
+        if (error instanceof ChecksumMismatchException) {
+            return ChecksumMismatchException.CODE;
+        }
+        return error.getClass().getSimpleName();
+    }
+
+    private synchronized Operation operation(String bucket, String operation) {
+        String key = region + "/" + bucket;
+        Map<String, Operation> operations = buckets.get(key);
+        if (operations == null) {
+            operations = new LinkedHashMap<>();
+            buckets.put(key, operations);
+        }
+        Operation entry = operations.get(operation);
+        if (entry == null) {
+            entry = new Operation();
+            operations.put(operation, entry);
+        }
+        return entry;
+    }
+}
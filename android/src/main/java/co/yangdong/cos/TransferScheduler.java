@@ -0,0 +1,289 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 传输调度器
+ * 限制同时运行的上传和下载数量，排队的任务按优先级和入队顺序启动
+ */
+public class TransferScheduler {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    public static final String TYPE_UPLOAD = "upload";
+    public static final String TYPE_DOWNLOAD = "download";
+    // 服务端复制，不占用设备带宽，和上传下载共用并发名额
+    public static final String TYPE_COPY = "copy";
+
+    public enum State {
+        // PAUSING 表示已请求暂停、任务还在停止中，仍然占用运行位置
+        QUEUED, RUNNING, PAUSING, PAUSED
+    }
+
+    /**
+     * 被调度的传输，start 和 pause 都不能阻塞调用线程
+     * pause 是异步的，任务真正停下后调用 paused 让出位置；暂停即结束的任务调用 finish
+     */
+    public interface Job {
+        void start();
+
+        void pause();
+    }
+
+    /**
+     * 任务从队列中启动时回调，waitMillis 为本次排队等待的时间
+     */
+    public interface StartListener {
+        void onStart(String id, String type, long waitMillis);
+    }
+
+    public static class Snapshot {
+        public final String id;
+        public final String type;
+        public final int priority;
+        public final State state;
+        public final long waitMillis;
+
+        Snapshot(String id, String type, int priority, State state, long waitMillis) {
+            this.id = id;
+            this.type = type;
+            this.priority = priority;
+            this.state = state;
+            this.waitMillis = waitMillis;
+        }
+    }
+
+    private static class Entry {
+        final String id;
+        final String type;
+        final Job job;
+        final long sequence;
+        int priority;
+        State state = State.QUEUED;
+        // 暂停完成后重新排队，挂起或暂停期间又被恢复时为 true
+        boolean requeue = false;
+        long queuedAt = System.currentTimeMillis();
+
+        Entry(String id, String type, Job job, int priority, long sequence) {
+            this.id = id;
+            this.type = type;
+            this.job = job;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private int running = 0;
+    private long sequence = 0;
+    // 挂起期间不启动任何任务
+    private boolean suspended = false;
+    @Nullable
+    private StartListener startListener;
+
+    public synchronized void setStartListener(@Nullable StartListener startListener) {
+        this.startListener = startListener;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        synchronized (this) {
+            this.maxConcurrent = Math.max(maxConcurrent, 1);
+        }
+        promote();
+    }
+
+    /**
+     * 挂起时运行中的任务被暂停，暂停完成后重新排队，恢复后按优先级继续
+     * 暂停即结束的任务需要自己调用 finish 离开队列
+     */
+    public void setSuspended(boolean suspended) {
+        List<Entry> paused = new ArrayList<>();
+        synchronized (this) {
+            if (this.suspended == suspended) {
+                return;
+            }
+            this.suspended = suspended;
+            if (suspended) {
+                for (Entry entry : entries.values()) {
+                    if (entry.state == State.RUNNING) {
+                        entry.state = State.PAUSING;
+                        entry.requeue = true;
+                        paused.add(entry);
+                    }
+                }
+            }
+        }
+        for (Entry entry : paused) {
+            entry.job.pause();
+        }
+        promote();
+    }
+
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public synchronized boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    public void enqueue(String id, String type, int priority, Job job) {
+        synchronized (this) {
+            if (entries.containsKey(id)) {
+                return;
+            }
+            entries.put(id, new Entry(id, type, job, priority, sequence++));
+        }
+        promote();
+    }
+
+    /**
+     * 暂停任务，运行中的任务在 paused 回调后才让出位置
+     */
+    public void pause(String id) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+            if (entry == null || entry.state == State.PAUSED) {
+                return;
+            }
+            entry.requeue = false;
+            if (entry.state == State.PAUSING) {
+                return;
+            }
+            entry.state = entry.state == State.RUNNING ? State.PAUSING : State.PAUSED;
+        }
+        entry.job.pause();
+    }
+
+    /**
+     * 任务暂停完成后调用，释放位置；挂起期间暂停的任务重新排队，否则保持暂停
+     * @return 是否重新排队，重新排队的任务之后会再次 start
+     */
+    public boolean paused(String id) {
+        boolean requeued;
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry == null || entry.state != State.PAUSING) {
+                return false;
+            }
+            running--;
+            requeued = entry.requeue;
+            if (requeued) {
+                entry.state = State.QUEUED;
+                entry.queuedAt = System.currentTimeMillis();
+            } else {
+                entry.state = State.PAUSED;
+            }
+            entry.requeue = false;
+        }
+        promote();
+        return requeued;
+    }
+
+    /**
+     * 恢复暂停的任务，重新排队等待调度；还在停止中的任务停下后再排队
+     */
+    public void resume(String id) {
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return;
+            }
+            if (entry.state == State.PAUSING) {
+                entry.requeue = true;
+                return;
+            }
+            if (entry.state != State.PAUSED) {
+                return;
+            }
+            entry.state = State.QUEUED;
+            entry.queuedAt = System.currentTimeMillis();
+        }
+        promote();
+    }
+
+    public void setPriority(String id, int priority) {
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return;
+            }
+            entry.priority = priority;
+        }
+        promote();
+    }
+
+    /**
+     * 任务完成、失败或取消后调用，释放位置并启动下一个任务
+     */
+    public void finish(String id) {
+        synchronized (this) {
+            Entry entry = entries.remove(id);
+            if (entry != null && (entry.state == State.RUNNING || entry.state == State.PAUSING)) {
+                running--;
+            }
+        }
+        promote();
+    }
+
+    public synchronized List<Snapshot> snapshot() {
+        long now = System.currentTimeMillis();
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            long waitMillis = entry.state == State.QUEUED ? now - entry.queuedAt : 0;
+            snapshots.add(new Snapshot(entry.id, entry.type, entry.priority, entry.state, waitMillis));
+        }
+        return snapshots;
+    }
+
+    private void promote() {
+        List<Entry> started = new ArrayList<>();
+        List<Long> waits = new ArrayList<>();
+        StartListener listener;
+        synchronized (this) {
+            listener = startListener;
+            long now = System.currentTimeMillis();
+            while (!suspended && running < maxConcurrent) {
+                Entry next = null;
+                for (Entry entry : entries.values()) {
+                    if (entry.state != State.QUEUED) {
+                        continue;
+                    }
+                    if (next == null || entry.priority > next.priority
+                            || (entry.priority == next.priority && entry.sequence < next.sequence)) {
+                        next = entry;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.state = State.RUNNING;
+                running++;
+                started.add(next);
+                waits.add(now - next.queuedAt);
+            }
+        }
+        for (int i = 0; i < started.size(); i++) {
+            Entry entry = started.get(i);
+            if (listener != null) {
+                listener.onStart(entry.id, entry.type, waits.get(i));
+            }
+            entry.job.start();
+        }
+    }
+}
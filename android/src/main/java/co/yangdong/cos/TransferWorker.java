@@ -0,0 +1,284 @@
+package co.yangdong.cos;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.Data;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+import com.tencent.qcloud.core.auth.SessionCredentialProvider;
+import com.tencent.qcloud.core.http.HttpRequest;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在 WorkManager 中执行的上传或下载
+ * 以前台服务运行，不受 10 分钟的执行时间限制；被系统中断时暂停，重新调度后上传和下载都从本地日志续传
+ * 连续多次中断都没有进展时按失败结束，避免无限重试
+ */
+public class TransferWorker extends Worker {
+
+    public static final String KEY_TYPE = "type";
+    public static final String KEY_REQUEST_ID = "requestId";
+    public static final String KEY_BUCKET = "bucket";
+    public static final String KEY_COS_PATH = "cosPath";
+    public static final String KEY_FILE_URI = "fileUri";
+    public static final String KEY_FILE_PATH = "filePath";
+    public static final String KEY_CONNECTIONS = "connections";
+    public static final String KEY_CHECKSUM = "checksum";
+
+    private static final int MAX_ATTEMPTS = 5;
+    // 连续没有进展的中断次数上限
+    private static final int MAX_STALLS = 5;
+    private static final int THREADS = 4;
+    private static final String CHANNEL_ID = "cos-transfer";
+
+    private static class Outcome {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String eTag;
+        volatile Exception error;
+        volatile boolean paused;
+        // 已完成的字节数，用于判断两次中断之间有没有进展
+        final AtomicLong progress = new AtomicLong();
+    }
+
+    private volatile MultipartUploadTask uploadTask;
+    private volatile RangedDownloadTask downloadTask;
+
+    public TransferWorker(@NonNull Context context, @NonNull WorkerParameters parameters) {
+        super(context, parameters);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Data input = getInputData();
+        String type = input.getString(KEY_TYPE);
+        String requestId = input.getString(KEY_REQUEST_ID);
+        BackgroundTransfers transfers = new BackgroundTransfers(getApplicationContext());
+
+        ReadableMap configuration = transfers.loadConfiguration();
+        if (configuration == null) {
+            transfers.addResult(new BackgroundTransfers.Result(requestId, type, false, null,
+                    "TencentCos is not initialized with a session credential"));
+            return Result.failure();
+        }
+        if (transfers.getStalls(requestId) >= MAX_STALLS) {
+            finish(transfers, requestId, type);
+            transfers.addResult(new BackgroundTransfers.Result(requestId, type, false, null,
+                    "transfer was stopped " + MAX_STALLS + " times without progress"));
+            return Result.failure();
+        }
+
+        try {
+            // 不设为前台任务时 WorkManager 会在 10 分钟后停止执行
+            setForegroundAsync(getForegroundInfo()).get();
+        } catch (ExecutionException e) {
+            // Android 12 起应用在后台时可能不允许启动前台服务，按普通任务继续
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CredentialManager credentialManager = null;
+        Outcome outcome = new Outcome();
+        try {
+            URL url = new URL(SafeReadableMap.safeGetString(configuration, "url"));
+            credentialManager = new CredentialManager(new SessionCredentialProvider(
+                    new HttpRequest.Builder<String>().url(url).method("GET").build()),
+                    new CredentialStore(getApplicationContext(), url.toString()),
+                    scheduler, executor, (latencyMillis, error) -> { });
+            credentialManager.start();
+            CosXmlService service = new CosXmlService(getApplicationContext(),
+                    TencentCosModule.initConfiguration(configuration), credentialManager);
+
+            RetryPolicy retry = RetryPolicy.from(SafeReadableMap.safeGetMap(configuration, "retry"),
+                    RetryPolicy.DEFAULT);
+            if (TransferScheduler.TYPE_UPLOAD.equals(type)) {
+                upload(service, configuration, transfers, outcome);
+                uploadTask.setRetryPolicy(retry, scheduler);
+                uploadTask.setChecksum(ChecksumType.from(input.getString(KEY_CHECKSUM)));
+                uploadTask.start();
+            } else {
+                download(service, transfers, outcome);
+                downloadTask.setRetryPolicy(retry, scheduler);
+                downloadTask.setChecksum(ChecksumType.from(input.getString(KEY_CHECKSUM)));
+                downloadTask.start();
+            }
+            outcome.done.await();
+        } catch (Exception e) {
+            outcome.error = e;
+        } finally {
+            if (credentialManager != null) {
+                credentialManager.close();
+            }
+            executor.shutdownNow();
+            scheduler.shutdownNow();
+        }
+
+        if (outcome.paused || isStopped()) {
+            // 被停止时 WorkManager 会自己重新调度，次数在下次开始时检查
+            transfers.recordStop(requestId, outcome.progress.get());
+            return Result.retry();
+        }
+        if (outcome.error != null) {
+            if (getRunAttemptCount() + 1 < MAX_ATTEMPTS) {
+                return Result.retry();
+            }
+            finish(transfers, requestId, type);
+            transfers.addResult(new BackgroundTransfers.Result(requestId, type, false, null,
+                    outcome.error.toString()));
+            return Result.failure();
+        }
+        finish(transfers, requestId, type);
+        transfers.addResult(new BackgroundTransfers.Result(requestId, type, true, outcome.eTag, null));
+        return Result.success();
+    }
+
+    /**
+     * 任务结束后清理续传用的本地状态
+     */
+    private static void finish(BackgroundTransfers transfers, String requestId, String type) {
+        transfers.setUploadId(requestId, null);
+        transfers.clearStalls(requestId);
+        if (!TransferScheduler.TYPE_UPLOAD.equals(type)) {
+            transfers.downloadJournal(requestId).delete();
+        }
+    }
+
+    @Override
+    public void onStopped() {
+        MultipartUploadTask upload = uploadTask;
+        RangedDownloadTask download = downloadTask;
+        if (upload != null) {
+            upload.pause();
+        }
+        if (download != null) {
+            download.pause();
+        }
+    }
+
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        Context context = getApplicationContext();
+        NotificationManager manager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager.getNotificationChannel(CHANNEL_ID) == null) {
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "File transfers",
+                    NotificationManager.IMPORTANCE_LOW));
+        }
+        boolean upload = TransferScheduler.TYPE_UPLOAD.equals(getInputData().getString(KEY_TYPE));
+        Notification notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(upload ? android.R.drawable.stat_sys_upload : android.R.drawable.stat_sys_download)
+                .setContentTitle(getInputData().getString(KEY_COS_PATH))
+                .setOngoing(true)
+                .build();
+        int id = getInputData().getString(KEY_REQUEST_ID).hashCode();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(id, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(id, notification);
+    }
+
+    private void upload(CosXmlService service, ReadableMap configuration,
+                        BackgroundTransfers transfers, Outcome outcome) throws Exception {
+        Data input = getInputData();
+        String requestId = input.getString(KEY_REQUEST_ID);
+        long sliceSize = (long) SafeReadableMap.safeGetDouble(configuration, "sliceSizeForUpload",
+                TencentCosModule.DEFAULT_SLICE_SIZE);
+        Context context = getApplicationContext();
+
+        uploadTask = new MultipartUploadTask(service,
+                input.getString(KEY_BUCKET), input.getString(KEY_COS_PATH),
+                transfers.getUploadId(requestId),
+                PartSource.open(context, input.getString(KEY_FILE_URI), null),
+                new UploadJournal.Store(new File(context.getFilesDir(), UploadJournal.DIRECTORY)),
+                sliceSize, MultipartUploadTask.DEFAULT_CONCURRENCY,
+                new MultipartUploadTask.Listener() {
+                    @Override
+                    public void onInit(MultipartUploadTask task) {
+                        transfers.setUploadId(requestId, task.getUploadId());
+                    }
+
+                    @Override
+                    public void onProgress(MultipartUploadTask task, long complete, long target) {
+                        outcome.progress.accumulateAndGet(complete, Math::max);
+                        BackgroundTransfers.notifyProgress(requestId, complete, target);
+                    }
+
+                    @Override
+                    public void onSuccess(MultipartUploadTask task, CompleteMultipartUploadResult result) {
+                        outcome.eTag = result.eTag;
+                        outcome.done.countDown();
+                    }
+
+                    @Override
+                    public void onPaused(MultipartUploadTask task) {
+                        outcome.paused = true;
+                        outcome.done.countDown();
+                    }
+
+                    @Override
+                    public void onFail(MultipartUploadTask task, Exception exception) {
+                        outcome.error = exception;
+                        outcome.done.countDown();
+                    }
+                });
+    }
+
+    private void download(CosXmlService service, BackgroundTransfers transfers, Outcome outcome) {
+        Data input = getInputData();
+        String requestId = input.getString(KEY_REQUEST_ID);
+        downloadTask = new RangedDownloadTask(service,
+                input.getString(KEY_BUCKET), input.getString(KEY_COS_PATH), input.getString(KEY_FILE_PATH),
+                input.getInt(KEY_CONNECTIONS, RangedDownloadTask.DEFAULT_CONNECTIONS),
+                new RangedDownloadTask.Listener() {
+                    @Override
+                    public void onProgress(RangedDownloadTask task, long complete, long target) {
+                        outcome.progress.accumulateAndGet(complete, Math::max);
+                        BackgroundTransfers.notifyProgress(requestId, complete, target);
+                    }
+
+                    @Override
+                    public void onSuccess(RangedDownloadTask task) {
+                        outcome.eTag = task.getETag();
+                        outcome.done.countDown();
+                    }
+
+                    @Override
+                    public void onPaused(RangedDownloadTask task) {
+                        outcome.paused = true;
+                        outcome.done.countDown();
+                    }
+
+                    @Override
+                    public void onFail(RangedDownloadTask task, Exception exception) {
+                        outcome.error = exception;
+                        outcome.done.countDown();
+                    }
+                });
+        downloadTask.setJournal(transfers.downloadJournal(requestId));
+    }
+}
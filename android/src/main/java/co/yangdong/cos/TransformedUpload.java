@@ -0,0 +1,671 @@
+package co.yangdong.cos;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.PutObjectResult;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 上传前转换
+ * 文本类文件 gzip 压缩，图片缩小到不超过指定边长后重新编码，转换的输出直接切成分片上传，不写临时文件
+ * 输出只有一个分片时改用简单上传；转换后的大小事先未知，所以不能暂停续传，暂停会取消上传
+ * HEIC/HEIF 图片重新编码为 JPEG，Content-Type 为 image/jpeg
+ */
+public class TransformedUpload {
+
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_GZIP = "gzip";
+    public static final String MODE_IMAGE = "image";
+
+    public static final int DEFAULT_MAX_DIMENSION = 2048;
+    public static final int DEFAULT_QUALITY = 85;
+    // 除最后一个分片外，分片不能小于 1MB
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    public interface Listener {
+        /**
+         * 进度按读取原始数据的字节数计算
+         */
+        void onProgress(long complete, long target);
+    }
+
+    public static class Options {
+        public final String mode;
+        public final int maxDimension;
+        public final int quality;
+
+        private Options(String mode, int maxDimension, int quality) {
+            this.mode = mode;
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+        }
+
+        /**
+         * 读取 transform、imageMaxDimension 和 imageQuality，没有设置 transform 时返回 null
+         */
+        @Nullable
+        public static Options from(ReadableMap options) {
+            String mode = SafeReadableMap.safeGetString(options, "transform");
+            if (mode == null) {
+                return null;
+            }
+            int maxDimension = SafeReadableMap.safeGetInt(options, "imageMaxDimension");
+            int quality = SafeReadableMap.safeGetInt(options, "imageQuality");
+            return new Options(mode, maxDimension > 0 ? maxDimension : DEFAULT_MAX_DIMENSION,
+                    quality > 0 ? Math.min(quality, 100) : DEFAULT_QUALITY);
+        }
+    }
+
+    public static class Result {
+        public final String transform;
+        @Nullable
+        public final String uploadId;
+        @Nullable
+        public final String eTag;
+        public final long originalSize;
+        public final long transformedSize;
+        // 简单上传时为 0
+        public final long partSize;
+        // 读取、转换并等待分片上传的总耗时中，用于转换的部分
+        public final long transformMillis;
+        public final String contentType;
+        @Nullable
+        public final String contentEncoding;
+
+        Result(String transform, @Nullable String uploadId, @Nullable String eTag, long originalSize,
+               long transformedSize, long partSize, long transformMillis, String contentType,
+               @Nullable String contentEncoding) {
+            this.transform = transform;
+            this.uploadId = uploadId;
+            this.eTag = eTag;
+            this.originalSize = originalSize;
+            this.transformedSize = transformedSize;
+            this.partSize = partSize;
+            this.transformMillis = transformMillis;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+
+    private final Context context;
+    private final CosXmlSimpleService cosXmlService;
+    private final Executor executor;
+    private final String bucket;
+    private final String cosPath;
+    @Nullable
+    private final String fileUri;
+    @Nullable
+    private final byte[] data;
+    private final String mimeType;
+    private final String transform;
+    private final Options options;
+    private final long partSize;
+    private final int concurrency;
+    private final Listener listener;
+    private TransferMetrics metrics = TransferMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    @Nullable
+    private BandwidthThrottle throttle;
+
+    private final Semaphore slots;
+    private final Map<Integer, String> eTags = new HashMap<>();
+    private final List<CosXmlRequest> runningRequests = new ArrayList<>();
+    @Nullable
+    private String uploadId;
+    @Nullable
+    private Exception error;
+    private volatile boolean cancelled = false;
+    private long outputNanos = 0;
+
+    /**
+     * @param transform resolve 返回的转换方式
+     */
+    public TransformedUpload(Context context, CosXmlSimpleService cosXmlService, Executor executor,
+                             String bucket, String cosPath, @Nullable String fileUri, @Nullable String base64,
+                             String mimeType, String transform, Options options, long partSize,
+                             int concurrency, Listener listener) {
+        this.context = context;
+        this.cosXmlService = cosXmlService;
+        this.executor = executor;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.fileUri = fileUri;
+        this.data = base64 != null ? Base64.decode(base64, Base64.NO_WRAP) : null;
+        this.mimeType = mimeType;
+        this.transform = transform;
+        this.options = options;
+        this.partSize = Math.min(Math.max(partSize, MIN_PART_SIZE), PartSource.MAX_BUFFERED_PART_SIZE);
+        this.concurrency = concurrency > 0 ? concurrency : MultipartUploadTask.DEFAULT_CONCURRENCY;
+        this.slots = new Semaphore(this.concurrency);
+        this.listener = listener;
+    }
+
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void setThrottle(@Nullable BandwidthThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 与 getFileInfo 相同，按文件名推断 MIME 类型；content:// 地址由提供方给出
+     */
+    @Nullable
+    public static String mimeType(Context context, @Nullable String fileUri) {
+        if (fileUri == null) {
+            return null;
+        }
+        if (fileUri.startsWith(ContentResolver.SCHEME_CONTENT + "://")) {
+            return context.getContentResolver().getType(Uri.parse(fileUri));
+        }
+        return URLConnection.getFileNameMap().getContentTypeFor(new File(fileUri).getName());
+    }
+
+    /**
+     * 根据请求的方式和 MIME 类型决定实际的转换，不需要转换时返回 null
+     */
+    @Nullable
+    public static String resolve(String mode, @Nullable String mimeType) {
+        if (MODE_GZIP.equals(mode)) {
+            return MODE_GZIP;
+        }
+        boolean image = isImage(mimeType);
+        if (MODE_IMAGE.equals(mode)) {
+            return image ? MODE_IMAGE : null;
+        }
+        if (MODE_AUTO.equals(mode)) {
+            return image ? MODE_IMAGE : isText(mimeType) ? MODE_GZIP : null;
+        }
+        return null;
+    }
+
+    private static boolean isText(@Nullable String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        return mimeType.startsWith("text/") || mimeType.endsWith("+json") || mimeType.endsWith("+xml")
+                || mimeType.equals("application/json") || mimeType.equals("application/xml")
+                || mimeType.equals("application/javascript") || mimeType.equals("application/x-ndjson");
+    }
+
+    // GIF 重新编码会丢失动画，不处理
+    private static boolean isImage(@Nullable String mimeType) {
+        return mimeType != null && (mimeType.equals("image/jpeg") || mimeType.equals("image/png")
+                || mimeType.equals("image/webp") || mimeType.equals("image/heic")
+                || mimeType.equals("image/heif"));
+    }
+
+    /**
+     * 在当前线程转换并上传，阻塞直到完成
+     */
+    public Result run() throws Exception {
+        if (cancelled) {
+            throw new InterruptedIOException("upload cancelled");
+        }
+        long originalSize;
+        if (data != null) {
+            originalSize = data.length;
+        } else {
+            try (PartSource source = PartSource.open(context, fileUri, null)) {
+                originalSize = source.size();
+            }
+        }
+
+        String contentType;
+        String contentEncoding = null;
+        Bitmap.CompressFormat format = null;
+        if (MODE_GZIP.equals(transform)) {
+            contentType = mimeType != null ? mimeType : "application/octet-stream";
+            contentEncoding = "gzip";
+        } else if ("image/png".equals(mimeType)) {
+            contentType = mimeType;
+            format = Bitmap.CompressFormat.PNG;
+        } else if ("image/webp".equals(mimeType)) {
+            contentType = mimeType;
+            format = webpFormat();
+        } else {
+            // Bitmap 不能编码 HEIC，HEIC/HEIF 转成 JPEG；cosPath 由调用方决定，不改扩展名
+            contentType = "image/jpeg";
+            format = Bitmap.CompressFormat.JPEG;
+        }
+
+        long startTime = System.nanoTime();
+        PartOutputStream output = new PartOutputStream(contentType, contentEncoding);
+        try {
+            if (format == null) {
+                gzip(output, originalSize);
+            } else {
+                image(output, format, originalSize);
+            }
+            output.finish();
+            long transformMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime - outputNanos);
+            listener.onProgress(originalSize, originalSize);
+            return new Result(transform, uploadId, output.eTag, originalSize, output.total,
+                    uploadId != null ? partSize : 0, Math.max(transformMillis, 0), contentType, contentEncoding);
+        } catch (Exception e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消上传，已上传的分片随分片上传一起丢弃
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        List<CosXmlRequest> requests;
+        synchronized (this) {
+            cancelled = true;
+            requests = new ArrayList<>(runningRequests);
+        }
+        for (CosXmlRequest request : requests) {
+            cosXmlService.cancel(request);
+        }
+    }
+
+    private void gzip(PartOutputStream output, long originalSize) throws IOException {
+        try (InputStream input = new ProgressInputStream(open(), originalSize);
+             GZIPOutputStream gzip = new GZIPOutputStream(output, GZIP_BUFFER_SIZE)) {
+            byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                gzip.write(buffer, 0, read);
+            }
+            gzip.finish();
+        }
+    }
+
+    /**
+     * 按 2 的幂降采样解码，再缩放到不超过 maxDimension，并按 EXIF 方向旋转，重新编码后丢弃 EXIF
+     */
+    /**
+     * WEBP 在 API 30 废弃，之后按质量参数有损压缩时使用 WEBP_LOSSY
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private void image(PartOutputStream output, Bitmap.CompressFormat format, long originalSize)
+            throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream input = open()) {
+            BitmapFactory.decodeStream(input, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("cannot decode image " + (fileUri != null ? fileUri : "base64"));
+        }
+
+        int orientation;
+        try (InputStream input = open()) {
+            orientation = new ExifInterface(input).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            orientation = ExifInterface.ORIENTATION_NORMAL;
+        }
+
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options decode = new BitmapFactory.Options();
+        decode.inSampleSize = 1;
+        while (longest / (decode.inSampleSize * 2) >= options.maxDimension) {
+            decode.inSampleSize *= 2;
+        }
+        Bitmap bitmap;
+        try (InputStream input = new ProgressInputStream(open(), originalSize)) {
+            bitmap = BitmapFactory.decodeStream(input, null, decode);
+        }
+        if (bitmap == null) {
+            throw new IOException("cannot decode image " + (fileUri != null ? fileUri : "base64"));
+        }
+
+        float scale = Math.min(1f, (float) options.maxDimension
+                / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        Matrix matrix = new Matrix();
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+        if (orientation == ExifInterface.ORIENTATION_ROTATE_90) {
+            matrix.postRotate(90);
+        } else if (orientation == ExifInterface.ORIENTATION_ROTATE_180) {
+            matrix.postRotate(180);
+        } else if (orientation == ExifInterface.ORIENTATION_ROTATE_270) {
+            matrix.postRotate(270);
+        }
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                matrix, true);
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        try {
+            if (!transformed.compress(format, options.quality, output)) {
+                throw new IOException("cannot encode image " + cosPath);
+            }
+        } finally {
+            transformed.recycle();
+        }
+    }
+
+    private InputStream open() throws IOException {
+        if (data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        if (fileUri == null) {
+            throw new IOException("fileUri is empty");
+        }
+        if (fileUri.startsWith(ContentResolver.SCHEME_CONTENT + "://")
+                || fileUri.startsWith(ContentResolver.SCHEME_FILE + "://")) {
+            InputStream input = context.getContentResolver().openInputStream(Uri.parse(fileUri));
+            if (input == null) {
+                throw new IOException("cannot open " + fileUri);
+            }
+            return input;
+        }
+        return new FileInputStream(fileUri);
+    }
+
+    /**
+     * 转换的输出按分片大小切分，满一个分片后等到有新数据写入才上传，这样最后一个分片可以在 finish 时确定
+     * 同时上传的分片不超过 concurrency，占满时阻塞转换线程，内存占用不超过 (concurrency + 1) 个分片
+     */
+    private class PartOutputStream extends OutputStream {
+        private final String contentType;
+        @Nullable
+        private final String contentEncoding;
+        private byte[] buffer = new byte[(int) partSize];
+        private int length = 0;
+        private int nextPartNumber = 1;
+        long total = 0;
+        @Nullable
+        String eTag;
+
+        PartOutputStream(String contentType, @Nullable String contentEncoding) {
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == buffer.length) {
+                    flushPart();
+                }
+                int copied = Math.min(count, buffer.length - length);
+                System.arraycopy(bytes, offset, buffer, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+                total += copied;
+            }
+        }
+
+        void finish() throws Exception {
+            long startTime = System.nanoTime();
+            if (nextPartNumber == 1) {
+                // 输出不超过一个分片，直接简单上传
+                PutObjectRequest request = new PutObjectRequest(bucket, cosPath, Arrays.copyOf(buffer, length));
+                setHeaders(request, contentType, contentEncoding);
+                if (throttle != null) {
+                    request.setProgressListener(throttle.wrap(null, () -> cancelled));
+                }
+                PutObjectResult result = call(TransferMetrics.OP_PUT_OBJECT, length, request,
+                        () -> cosXmlService.putObject(request));
+                eTag = result.eTag;
+            } else {
+                flushPart();
+                // 等所有分片结束
+                slots.acquire(concurrency);
+                slots.release(concurrency);
+                checkState();
+                Map<Integer, String> parts;
+                synchronized (TransformedUpload.this) {
+                    parts = new HashMap<>(eTags);
+                }
+                CompleteMultiUploadRequest request = new CompleteMultiUploadRequest(bucket, cosPath, uploadId, parts);
+                CompleteMultiUploadResult result = call(TransferMetrics.OP_COMPLETE_UPLOAD, 0, request,
+                        () -> cosXmlService.completeMultiUpload(request));
+                eTag = result.completeMultipartUpload != null ? result.completeMultipartUpload.eTag : null;
+            }
+            outputNanos += System.nanoTime() - startTime;
+        }
+
+        private void flushPart() throws IOException {
+            long startTime = System.nanoTime();
+            try {
+                checkState();
+                if (uploadId == null) {
+                    InitMultipartUploadRequest request = new InitMultipartUploadRequest(bucket, cosPath);
+                    setHeaders(request, contentType, contentEncoding);
+                    InitMultipartUploadResult result = call(TransferMetrics.OP_INIT_UPLOAD, 0, request,
+                            () -> cosXmlService.initMultipartUpload(request));
+                    synchronized (TransformedUpload.this) {
+                        uploadId = result.initMultipartUpload.uploadId;
+                    }
+                }
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("upload interrupted");
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                throw new IOException(e);
+            }
+            byte[] part = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+            int partNumber = nextPartNumber++;
+            executor.execute(() -> uploadPart(partNumber, part));
+            buffer = new byte[(int) partSize];
+            length = 0;
+            outputNanos += System.nanoTime() - startTime;
+        }
+    }
+
+    private void uploadPart(int partNumber, byte[] part) {
+        try {
+            UploadPartRequest request = new UploadPartRequest(bucket, cosPath, partNumber, part, uploadId);
+            if (throttle != null) {
+                request.setProgressListener(throttle.wrap(null, () -> cancelled));
+            }
+            UploadPartResult result = call(TransferMetrics.OP_UPLOAD_PART, part.length, request,
+                    () -> cosXmlService.uploadPart(request));
+            synchronized (this) {
+                eTags.put(partNumber, result.eTag);
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        } finally {
+            slots.release();
+        }
+    }
+
+    private synchronized void checkState() throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("upload cancelled");
+        }
+        if (error != null) {
+            throw error instanceof IOException ? (IOException) error : new IOException(error);
+        }
+    }
+
+    private void abort() {
+        String id;
+        synchronized (this) {
+            id = uploadId;
+        }
+        if (id == null) {
+            return;
+        }
+        // 取消后也要终止，不检查 cancelled
+        for (int retries = 0; ; retries++) {
+            TransferMetrics.Call call = metrics.begin(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+            try {
+                cosXmlService.abortMultiUpload(new AbortMultiUploadRequest(bucket, cosPath, id));
+                call.success(0);
+                return;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                // 最终失败时已上传的分片留在服务端，需要由存储桶的生命周期规则清理
+                if (!retryPolicy.shouldRetry(e, retries)) {
+                    return;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                metrics.recordRetry(bucket, TransferMetrics.OP_ABORT_UPLOAD);
+            }
+        }
+    }
+
+    private static void setHeaders(CosXmlRequest request, String contentType,
+                                   @Nullable String contentEncoding) throws IOException {
+        try {
+            request.setRequestHeaders("Content-Type", contentType);
+            if (contentEncoding != null) {
+                request.setRequestHeaders("Content-Encoding", contentEncoding);
+            }
+        } catch (CosXmlClientException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private interface Request<T> {
+        T execute() throws CosXmlClientException, CosXmlServiceException;
+    }
+
+    /**
+     * 执行请求并记录指标，失败时按重试策略在当前线程等待后重试
+     */
+    private <T> T call(String operation, long bytes, CosXmlRequest request, Request<T> execute)
+            throws CosXmlClientException, CosXmlServiceException, IOException {
+        for (int retries = 0; ; retries++) {
+            synchronized (this) {
+                if (cancelled) {
+                    throw new InterruptedIOException("upload cancelled");
+                }
+                runningRequests.add(request);
+            }
+            TransferMetrics.Call call = metrics.begin(bucket, operation);
+            try {
+                T result = execute.execute();
+                call.success(bytes);
+                return result;
+            } catch (CosXmlClientException | CosXmlServiceException e) {
+                call.fail(e);
+                if (!retryPolicy.shouldRetry(e, retries) || cancelled) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(retryPolicy.delayMillis(retries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                metrics.recordRetry(bucket, operation);
+            } finally {
+                synchronized (this) {
+                    runningRequests.remove(request);
+                }
+            }
+        }
+    }
+
+    /**
+     * 统计读取原始数据的字节数作为进度
+     */
+    private class ProgressInputStream extends FilterInputStream {
+        private final long target;
+        private long read = 0;
+
+        ProgressInputStream(InputStream input, long target) {
+            super(input);
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                advance(count);
+            }
+            return count;
+        }
+
+        private void advance(long count) throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("upload cancelled");
+            }
+            read += count;
+            listener.onProgress(read, target);
+        }
+    }
+}
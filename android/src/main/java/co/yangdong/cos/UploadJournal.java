@@ -0,0 +1,224 @@
+package co.yangdong.cos;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分片上传日志
+ * 每个分片上传成功后立即追加一行记录，应用被杀或重启后可以直接从本地状态续传
+ */
+public class UploadJournal {
+
+    public static final String DIRECTORY = "cos-upload-journal";
+
+    public static class Entry {
+        public final int partNumber;
+        public final long offset;
+        public final long size;
+        public final String eTag;
+        // 分片的 CRC64，未开启校验时为空
+        @Nullable
+        public final Long crc64;
+
+        public Entry(int partNumber, long offset, long size, String eTag) {
+            this(partNumber, offset, size, eTag, null);
+        }
+
+        public Entry(int partNumber, long offset, long size, String eTag, @Nullable Long crc64) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.size = size;
+            this.eTag = eTag;
+            this.crc64 = crc64;
+        }
+    }
+
+    /**
+     * 按 bucket/cosPath/uploadId 缓存已打开的日志，同一个上传只对应一个实例
+     */
+    public static class Store {
+        private final File directory;
+        private final Map<String, UploadJournal> journals = new ConcurrentHashMap<>();
+
+        public Store(File directory) {
+            this.directory = directory;
+        }
+
+        public UploadJournal open(String bucket, String cosPath, String uploadId) {
+            return journals.computeIfAbsent(key(bucket, cosPath, uploadId),
+                    key -> UploadJournal.open(directory, key));
+        }
+
+        public void delete(String bucket, String cosPath, String uploadId) {
+            String key = key(bucket, cosPath, uploadId);
+            UploadJournal journal = journals.remove(key);
+            if (journal != null) {
+                journal.delete();
+            } else {
+                new File(directory, key + ".journal").delete();
+            }
+        }
+    }
+
+    private final File file;
+    private final TreeMap<Integer, Entry> entries = new TreeMap<>();
+
+    // 从 1 开始连续分片的末尾，追加时增量推进，续传偏移不需要重新累加
+    private int nextPartNumber = 1;
+    private long nextOffset = 0;
+
+    private UploadJournal(File file) {
+        this.file = file;
+    }
+
+    private static String key(String bucket, String cosPath, String uploadId) {
+        return Digests.sha1Hex(bucket + "/" + cosPath + "/" + uploadId);
+    }
+
+    /**
+     * 打开日志，文件不存在时返回空日志，第一次追加时才创建文件
+     */
+    private static UploadJournal open(File directory, String key) {
+        UploadJournal journal = new UploadJournal(new File(directory, key + ".journal"));
+        journal.load();
+        return journal;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // 进程在写入途中被杀时最后一行可能不完整，直接丢弃；第 5 列 CRC64 是可选的
+                if (fields.length != 4 && fields.length != 5) {
+                    continue;
+                }
+                try {
+                    put(new Entry(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]), fields[3],
+                            fields.length == 5 ? Crc64.parse(fields[4]) : null));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void append(Entry entry) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            writer.write(format(entry));
+            writer.flush();
+            output.getFD().sync();
+        }
+        put(entry);
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int getNextPartNumber() {
+        return nextPartNumber;
+    }
+
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * 用服务端的分片列表校正本地记录，返回被丢弃的分片
+     * 只校对 candidates 中的记录，查询分片列表之后才追加的记录不在服务端结果里，不能丢弃
+     * @param serverETags 服务端分片编号到 eTag 的映射
+     * @param candidates 需要校对的记录
+     */
+    public synchronized List<Entry> reconcile(Map<Integer, String> serverETags,
+                                              Collection<Entry> candidates) throws IOException {
+        List<Entry> dropped = new ArrayList<>();
+        for (Entry entry : candidates) {
+            Entry current = entries.get(entry.partNumber);
+            if (current == null || !current.eTag.equals(entry.eTag)) {
+                continue;
+            }
+            if (!entry.eTag.equals(serverETags.get(entry.partNumber))) {
+                dropped.add(entry);
+            }
+        }
+        if (dropped.isEmpty()) {
+            return dropped;
+        }
+
+        Map<Integer, Entry> kept = new HashMap<>(entries);
+        for (Entry entry : dropped) {
+            kept.remove(entry.partNumber);
+        }
+        entries.clear();
+        nextPartNumber = 1;
+        nextOffset = 0;
+
+        File compacted = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(compacted)) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            for (Entry entry : new TreeMap<>(kept).values()) {
+                writer.write(format(entry));
+                put(entry);
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+        if (!compacted.renameTo(file)) {
+            throw new IOException("failed to compact journal " + file);
+        }
+        return dropped;
+    }
+
+    public synchronized void delete() {
+        entries.clear();
+        nextPartNumber = 1;
+        nextOffset = 0;
+        file.delete();
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.partNumber, entry);
+        Entry next;
+        while ((next = entries.get(nextPartNumber)) != null && next.offset == nextOffset) {
+            nextOffset += next.size;
+            nextPartNumber++;
+        }
+    }
+
+    private static String format(Entry entry) {
+        String line = entry.partNumber + "\t" + entry.offset + "\t" + entry.size + "\t" + entry.eTag;
+        return entry.crc64 != null ? line + "\t" + Crc64.toString(entry.crc64) + "\n" : line + "\n";
+    }
+}
@@ -0,0 +1,85 @@
+package co.yangdong.cos;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthThrottleTest {
+
+    @Test
+    public void unlimitedDoesNotWait() {
+        BandwidthThrottle throttle = new BandwidthThrottle(0, null);
+        long start = System.nanoTime();
+        assertTrue(throttle.acquire(Long.MAX_VALUE / 2, null));
+        assertTrue(elapsedMillis(start) < 50);
+    }
+
+    @Test
+    public void waitsForMissingTokens() {
+        // 桶初始为空，1000 字节每秒时取 200 字节约等 200 毫秒
+        BandwidthThrottle throttle = new BandwidthThrottle(1000, null);
+        long start = System.nanoTime();
+        assertTrue(throttle.acquire(200, null));
+        long elapsed = elapsedMillis(start);
+        assertTrue("elapsed " + elapsed, elapsed >= 180 && elapsed < 1000);
+    }
+
+    @Test
+    public void refillsUpToOneSecond() throws InterruptedException {
+        BandwidthThrottle throttle = new BandwidthThrottle(1000, null);
+        Thread.sleep(1500);
+        // 空闲后最多突发一秒的流量
+        long start = System.nanoTime();
+        assertTrue(throttle.acquire(1000, null));
+        assertTrue(elapsedMillis(start) < 100);
+        start = System.nanoTime();
+        assertTrue(throttle.acquire(100, null));
+        assertTrue(elapsedMillis(start) >= 80);
+    }
+
+    @Test
+    public void parentLimitsChild() {
+        BandwidthThrottle parent = new BandwidthThrottle(1000, null);
+        BandwidthThrottle child = new BandwidthThrottle(1000000, parent);
+        long start = System.nanoTime();
+        assertTrue(child.acquire(200, null));
+        assertTrue(elapsedMillis(start) >= 180);
+    }
+
+    @Test
+    public void cancelStopsWaiting() {
+        // 不取消的话要等 100 秒
+        BandwidthThrottle throttle = new BandwidthThrottle(10, null);
+        long start = System.nanoTime();
+        boolean acquired = throttle.acquire(1000, () -> elapsedMillis(start) > 100);
+        long elapsed = elapsedMillis(start);
+        assertFalse(acquired);
+        assertTrue("elapsed " + elapsed,
+                elapsed < 100 + TimeUnit.NANOSECONDS.toMillis(BandwidthThrottle.SLICE_NANOS) * 3);
+    }
+
+    @Test
+    public void interruptStopsWaiting() {
+        BandwidthThrottle throttle = new BandwidthThrottle(10, null);
+        Thread.currentThread().interrupt();
+        assertFalse(throttle.acquire(1000, null));
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void negativeRateMeansUnlimited() {
+        BandwidthThrottle throttle = new BandwidthThrottle(1000, null);
+        throttle.setRate(500);
+        assertEquals(500, throttle.getRate());
+        throttle.setRate(-1);
+        assertEquals(0, throttle.getRate());
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,43 @@
+package co.yangdong.cos;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Crc64Test {
+
+    @Test
+    public void matchesCheckValue() {
+        byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x995DC9BBDF1939FAL, Crc64.update(0, data, 0, data.length));
+    }
+
+    @Test
+    public void combineMatchesWholeObject() {
+        byte[] data = new byte[100000];
+        new Random(7).nextBytes(data);
+        long whole = Crc64.update(0, data, 0, data.length);
+        // 大小不同的分片，包括空分片
+        int[] sizes = {1, 0, 4096, 33333, 62570};
+        long combined = 0;
+        int offset = 0;
+        for (int size : sizes) {
+            combined = Crc64.combine(combined, Crc64.update(0, data, offset, size), size);
+            offset += size;
+        }
+        assertEquals(data.length, offset);
+        assertEquals(whole, combined);
+    }
+
+    @Test
+    public void parsesUnsignedHeader() {
+        long crc = 0x995DC9BBDF1939FAL;
+        assertEquals(Long.valueOf(crc), Crc64.parse(Crc64.toString(crc)));
+        assertNull(Crc64.parse("not a number"));
+        assertNull(Crc64.parse(null));
+    }
+}
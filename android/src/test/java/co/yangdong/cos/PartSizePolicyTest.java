@@ -0,0 +1,79 @@
+package co.yangdong.cos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartSizePolicyTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void initialSizeIsClampedBetweenOneAndSixtyFourMegabytes() {
+        assertEquals(MB, new PartSizePolicy(100 * MB, 0).getPartSize());
+        assertEquals(MB, new PartSizePolicy(100 * MB, 512 * 1024).getPartSize());
+        assertEquals(64 * MB, new PartSizePolicy(100 * 1024 * MB, 128 * MB).getPartSize());
+        assertEquals(8 * MB, new PartSizePolicy(512 * MB, 32 * MB, 8 * MB).getPartSize());
+    }
+
+    @Test
+    public void partCountLimitWinsOverMaximumSize() {
+        long fileSize = 1024L * 1024 * MB;
+        PartSizePolicy policy = new PartSizePolicy(fileSize, MB);
+        assertTrue(policy.getPartSize() > PartSizePolicy.MAX_PART_SIZE);
+        assertTrue(policy.getPartSize() * PartSizePolicy.MAX_PART_COUNT >= fileSize);
+    }
+
+    @Test
+    public void fastPartsDoubleTheSizeUpToTheMaximum() {
+        PartSizePolicy policy = new PartSizePolicy(512 * MB, MB);
+        long expected = MB;
+        for (int i = 0; i < 10; i++) {
+            policy.onPartCompleted(policy.getPartSize(), 10);
+            expected = Math.min(expected * 2, PartSizePolicy.MAX_PART_SIZE);
+            assertEquals(expected, policy.getPartSize());
+        }
+        assertEquals(PartSizePolicy.MAX_PART_SIZE, policy.getPartSize());
+    }
+
+    @Test
+    public void slowPartsHalveTheSizeDownToOneMegabyte() {
+        PartSizePolicy policy = new PartSizePolicy(512 * MB, 16 * MB);
+        // 每毫秒 64 字节，期望的分片大小远小于 1MB
+        policy.onPartCompleted(16 * MB, 16 * MB / 64);
+        assertEquals(8 * MB, policy.getPartSize());
+        policy.onPartCompleted(8 * MB, 8 * MB / 64);
+        assertEquals(4 * MB, policy.getPartSize());
+        for (int i = 0; i < 5; i++) {
+            policy.onPartCompleted(policy.getPartSize(), policy.getPartSize() / 64);
+        }
+        assertEquals(MB, policy.getPartSize());
+    }
+
+    @Test
+    public void singleSlowPartIsSmoothedByTheAverage() {
+        PartSizePolicy policy = new PartSizePolicy(512 * MB, 4 * MB);
+        // 4MB/s，期望约 16MB，放大一倍
+        policy.onPartCompleted(4 * MB, 1000);
+        assertEquals(8 * MB, policy.getPartSize());
+        // 单次 1MB/s 的样本被平均后仍在 [4MB, 16MB] 之间，分片大小不变
+        policy.onPartCompleted(8 * MB, 8000);
+        assertEquals(8 * MB, policy.getPartSize());
+    }
+
+    @Test
+    public void ignoresSmallOrUntimedParts() {
+        PartSizePolicy policy = new PartSizePolicy(512 * MB, 4 * MB);
+        policy.onPartCompleted(MB / 2, 1);
+        policy.onPartCompleted(4 * MB, 0);
+        assertEquals(4 * MB, policy.getPartSize());
+    }
+
+    @Test
+    public void lastPartIsTruncatedToRemainingBytes() {
+        PartSizePolicy policy = new PartSizePolicy(10 * MB, 4 * MB);
+        assertEquals(4 * MB, policy.nextPartSize(10 * MB, 1));
+        assertEquals(2 * MB, policy.nextPartSize(2 * MB, 3));
+    }
+}
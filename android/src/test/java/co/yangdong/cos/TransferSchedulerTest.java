@@ -0,0 +1,184 @@
+package co.yangdong.cos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferSchedulerTest {
+
+    private TransferScheduler scheduler;
+    private final List<String> events = new ArrayList<>();
+
+    private class RecordingJob implements TransferScheduler.Job {
+        private final String id;
+
+        RecordingJob(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void start() {
+            events.add("start " + id);
+        }
+
+        @Override
+        public void pause() {
+            events.add("pause " + id);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = new TransferScheduler();
+        scheduler.setMaxConcurrent(1);
+    }
+
+    private void enqueue(String id) {
+        enqueue(id, TransferScheduler.PRIORITY_NORMAL);
+    }
+
+    private void enqueue(String id, int priority) {
+        scheduler.enqueue(id, TransferScheduler.TYPE_DOWNLOAD, priority, new RecordingJob(id));
+    }
+
+    private TransferScheduler.State state(String id) {
+        for (TransferScheduler.Snapshot snapshot : scheduler.snapshot()) {
+            if (snapshot.id.equals(id)) {
+                return snapshot.state;
+            }
+        }
+        return null;
+    }
+
+    private List<String> drain() {
+        List<String> drained = new ArrayList<>(events);
+        events.clear();
+        return drained;
+    }
+
+    private static List<String> list(String... items) {
+        List<String> list = new ArrayList<>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    @Test
+    public void suspendDoesNotRestartTaskBeforeItHasPaused() {
+        enqueue("a");
+        assertEquals(list("start a"), drain());
+
+        scheduler.setSuspended(true);
+        assertEquals(list("pause a"), drain());
+        assertEquals(TransferScheduler.State.PAUSING, state("a"));
+
+        // 暂停回调到达前恢复，任务仍在停止中，不能再次启动
+        scheduler.setSuspended(false);
+        enqueue("b");
+        assertEquals(list(), drain());
+
+        scheduler.paused("a");
+        assertEquals(list("start a"), drain());
+        assertEquals(TransferScheduler.State.RUNNING, state("a"));
+        assertEquals(TransferScheduler.State.QUEUED, state("b"));
+    }
+
+    @Test
+    public void pausedWhileSuspendedWaitsForResume() {
+        enqueue("a");
+        scheduler.setSuspended(true);
+        assertTrue(scheduler.paused("a"));
+        assertEquals(TransferScheduler.State.QUEUED, state("a"));
+        assertEquals(list("start a", "pause a"), drain());
+
+        scheduler.setSuspended(false);
+        assertEquals(list("start a"), drain());
+    }
+
+    @Test
+    public void pauseReleasesSlotOnlyAfterPausedCallback() {
+        enqueue("a");
+        enqueue("b");
+        scheduler.pause("a");
+        assertEquals(list("start a", "pause a"), drain());
+        assertEquals(TransferScheduler.State.PAUSING, state("a"));
+
+        assertFalse(scheduler.paused("a"));
+        assertEquals(list("start b"), drain());
+        assertEquals(TransferScheduler.State.PAUSED, state("a"));
+
+        scheduler.resume("a");
+        assertEquals(TransferScheduler.State.QUEUED, state("a"));
+        scheduler.finish("b");
+        assertEquals(list("start a"), drain());
+    }
+
+    @Test
+    public void resumeWhilePausingRequeuesAfterPause() {
+        enqueue("a");
+        scheduler.pause("a");
+        scheduler.resume("a");
+        assertEquals(TransferScheduler.State.PAUSING, state("a"));
+        drain();
+
+        scheduler.paused("a");
+        assertEquals(list("start a"), drain());
+    }
+
+    @Test
+    public void userPauseDuringSuspendKeepsTaskPaused() {
+        enqueue("a");
+        scheduler.setSuspended(true);
+        scheduler.pause("a");
+        scheduler.setSuspended(false);
+        assertFalse(scheduler.paused("a"));
+        assertEquals(list("start a", "pause a"), drain());
+        assertEquals(TransferScheduler.State.PAUSED, state("a"));
+    }
+
+    @Test
+    public void finishWhilePausingReleasesSlot() {
+        enqueue("a");
+        enqueue("b");
+        scheduler.pause("a");
+        drain();
+
+        scheduler.finish("a");
+        assertEquals(list("start b"), drain());
+        assertNull(state("a"));
+
+        // 迟到的暂停回调被忽略
+        assertFalse(scheduler.paused("a"));
+        assertEquals(list(), drain());
+    }
+
+    @Test
+    public void pausingQueuedTaskDoesNotTakeSlot() {
+        enqueue("a");
+        enqueue("b");
+        scheduler.pause("b");
+        assertEquals(TransferScheduler.State.PAUSED, state("b"));
+        scheduler.finish("a");
+        assertEquals(list("start a", "pause b"), drain());
+    }
+
+    @Test
+    public void startsByPriorityThenEnqueueOrder() {
+        scheduler.setSuspended(true);
+        enqueue("low", TransferScheduler.PRIORITY_LOW);
+        enqueue("normal1");
+        enqueue("high", TransferScheduler.PRIORITY_HIGH);
+        enqueue("normal2");
+        scheduler.setMaxConcurrent(4);
+        scheduler.setSuspended(false);
+        assertEquals(list("start high", "start normal1", "start normal2", "start low"), drain());
+    }
+}
@@ -1 +1,183 @@
-it.todo('write a test');
+jest.mock('react-native', () => ({
+  NativeModules: {
+    TencentCos: {
+      initMultiUpload: jest.fn(),
+      getUploadState: jest.fn(),
+      listParts: jest.fn(),
+      uploadPart: jest.fn(),
+      completeUpload: jest.fn(),
+      uploadFile: jest.fn(),
+    },
+  },
+  NativeEventEmitter: class {
+    addListener() {}
+  },
+}));
+
+import { NativeModules } from 'react-native';
+import { CosXml } from '../index';
+
+const mockCos = NativeModules.TencentCos;
+
+const PART_SIZE = 10;
+const FILE_SIZE = 40;
+
+const request = {
+  requestId: 'upload-1',
+  bucket: 'bucket-1250000000',
+  cosPath: 'a/b.bin',
+  fileUri: '/tmp/b.bin',
+};
+
+const part = (partNumber: number, eTag: string) => ({
+  partNumber,
+  size: PART_SIZE,
+  eTag,
+});
+
+beforeEach(() => {
+  jest.clearAllMocks();
+  mockCos.uploadPart.mockImplementation(
+    ({ partNumber, offset }: { partNumber: number; offset: number }) =>
+      Promise.resolve({
+        partNumber,
+        eTag: `new-${partNumber}`,
+        partSize: PART_SIZE,
+        nextPartSize: PART_SIZE,
+        fileSize: FILE_SIZE,
+        last: offset + PART_SIZE >= FILE_SIZE,
+      })
+  );
+  mockCos.completeUpload.mockResolvedValue({ key: request.cosPath });
+});
+
+const uploadedPartNumbers = () =>
+  mockCos.uploadPart.mock.calls.map(
+    ([options]: [{ partNumber: number }]) => options.partNumber
+  );
+
+const completedParts = () =>
+  mockCos.completeUpload.mock.calls[0][0].uploadedParts.map(
+    ({ partNumber, eTag }: { partNumber: number; eTag: string }) =>
+      `${partNumber}:${eTag}`
+  );
+
+it('continues after restored parts when the server agrees', async () => {
+  mockCos.getUploadState.mockResolvedValue({
+    parts: [
+      { ...part(1, 'a'), offset: 0 },
+      { ...part(2, 'b'), offset: 10 },
+    ],
+    nextPartNumber: 3,
+    nextOffset: 20,
+  });
+  mockCos.listParts.mockResolvedValue([part(1, 'a'), part(2, 'b')]);
+
+  await CosXml.upload(request, {});
+
+  expect(uploadedPartNumbers()).toEqual([3, 4]);
+  expect(mockCos.uploadPart.mock.calls[0][0].offset).toBe(20);
+  expect(completedParts()).toEqual(['1:a', '2:b', '3:new-3', '4:new-4']);
+});
+
+it('re-uploads from the first restored part missing on the server', async () => {
+  mockCos.getUploadState.mockResolvedValue({
+    parts: [
+      { ...part(1, 'a'), offset: 0 },
+      { ...part(2, 'b'), offset: 10 },
+    ],
+    nextPartNumber: 3,
+    nextOffset: 20,
+  });
+  mockCos.listParts.mockResolvedValue([part(1, 'a')]);
+
+  await CosXml.upload(request, {});
+
+  expect(uploadedPartNumbers()).toEqual([3, 4, 2, 3, 4]);
+  expect(mockCos.uploadPart.mock.calls[2][0].offset).toBe(10);
+  expect(completedParts()).toEqual([
+    '1:a',
+    '2:new-2',
+    '3:new-3',
+    '4:new-4',
+  ]);
+});
+
+it('keeps restored parts when the server listing fails', async () => {
+  mockCos.getUploadState.mockResolvedValue({
+    parts: [{ ...part(1, 'a'), offset: 0 }],
+    nextPartNumber: 2,
+    nextOffset: 10,
+  });
+  mockCos.listParts.mockRejectedValue(new Error('offline'));
+
+  await CosXml.upload(request, {});
+
+  expect(uploadedPartNumbers()).toEqual([2, 3, 4]);
+  expect(completedParts()).toEqual(['1:a', '2:new-2', '3:new-3', '4:new-4']);
+});
+
+it('lists server parts when there is no local state', async () => {
+  mockCos.getUploadState.mockResolvedValue({
+    parts: [],
+    nextPartNumber: 1,
+    nextOffset: 0,
+  });
+  mockCos.listParts.mockResolvedValue([part(1, 'a'), part(2, 'b')]);
+
+  await CosXml.upload(request, {});
+
+  expect(mockCos.listParts).toHaveBeenCalledTimes(1);
+  expect(uploadedPartNumbers()).toEqual([3, 4]);
+  expect(completedParts()).toEqual(['1:a', '2:b', '3:new-3', '4:new-4']);
+});
+
+it('falls back to listParts where getUploadState is not exported', async () => {
+  const getUploadState = mockCos.getUploadState;
+  delete mockCos.getUploadState;
+  try {
+    mockCos.listParts.mockResolvedValue([part(1, 'a')]);
+
+    await CosXml.upload(request, {});
+
+    expect(uploadedPartNumbers()).toEqual([2, 3, 4]);
+    expect(completedParts()).toEqual([
+      '1:a',
+      '2:new-2',
+      '3:new-3',
+      '4:new-4',
+    ]);
+  } finally {
+    mockCos.getUploadState = getUploadState;
+  }
+});
+
+it('lets native initialise transformed uploads', async () => {
+  mockCos.uploadFile.mockResolvedValue({
+    uploadId: '',
+    key: request.cosPath,
+    fileSize: 0,
+    partSize: 0,
+    paused: false,
+    cancelled: true,
+  });
+  const initListener = jest.fn();
+  const resultListener = jest.fn();
+
+  const result = await CosXml.uploadFile(
+    {
+      bucket: request.bucket,
+      cosPath: request.cosPath,
+      fileUri: request.fileUri,
+      transform: 'image',
+    },
+    { initListener, resultListener }
+  );
+
+  expect(mockCos.initMultiUpload).not.toHaveBeenCalled();
+  const options = mockCos.uploadFile.mock.calls[0][0];
+  expect(options.requestId).toBeUndefined();
+  expect(initListener).toHaveBeenCalledWith(options.taskId);
+  expect(result.cancelled).toBe(true);
+  expect(resultListener).not.toHaveBeenCalled();
+});
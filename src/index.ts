@@ -2,18 +2,45 @@ import { NativeEventEmitter, NativeModules } from 'react-native';
 import { v4 as uuidv4 } from 'uuid';
 import type { Token } from './token';
 import type {
+  BackgroundTransferRequest,
+  BatchDeleteItem,
+  BatchDownloadItem,
+  BatchProgressEvent,
+  BatchProgressListener,
+  BatchRequest,
+  BatchResult,
+  BatchUploadItem,
+  CacheStats,
   CancelUploadRequest,
   Configuration,
+  CopyObjectRequest,
+  CopyObjectResult,
+  CredentialRefreshEvent,
   TencentCosType,
   DownloadObjectRequest,
   DownloadResultEvent,
   FileInfo,
+  FilePart,
+  NetworkPolicyEvent,
   OptionListeners,
+  ProgressBatchEvent,
   ProgressEvent,
   ProgressListener,
+  RecentTransfers,
   ResultListener,
   Secret,
+  SyncProgressEvent,
+  SyncProgressListener,
+  SyncRequest,
+  SyncResult,
+  TransferPriority,
+  TransferMetrics,
+  TransferQueue,
+  UploadFileRequest,
+  UploadFileResult,
+  UploadedObject,
   UploadObjectRequest,
+  UploadResultEvent,
 } from './types';
 
 const { TencentCos } = NativeModules;
@@ -33,6 +60,8 @@ class CosXmlService {
 
   private progressListeners: Map<string, ProgressListener>;
   private downloadResultListeners: Map<string, ResultListener>;
+  private batchProgressListeners: Map<string, BatchProgressListener>;
+  private syncProgressListeners: Map<string, SyncProgressListener>;
 
   private emitter: NativeEventEmitter;
   private initialized: boolean = false;
@@ -40,18 +69,20 @@ class CosXmlService {
   constructor() {
     this.progressListeners = new Map();
     this.downloadResultListeners = new Map();
+    this.batchProgressListeners = new Map();
+    this.syncProgressListeners = new Map();
 
     this.emitter = new NativeEventEmitter(TencentCos);
 
-    this.emitter.addListener('COSProgressUpdate', (event: ProgressEvent) => {
-      const { requestId, processedBytes, targetBytes } = event;
-      if (this.progressListeners.has(requestId)) {
-        this.progressListeners.get(requestId)!(
-          processedBytes >= targetBytes ? targetBytes : processedBytes,
-          targetBytes
-        );
-      }
-    });
+    this.emitter.addListener('COSProgressUpdate', (event: ProgressEvent) =>
+      this.onProgress(event)
+    );
+
+    // Android 端按 requestId 合并后批量发送进度
+    this.emitter.addListener(
+      'COSProgressBatchUpdate',
+      (event: ProgressBatchEvent) => event.updates.forEach(this.onProgress)
+    );
 
     this.emitter.addListener(
       'COSDownloadResultUpdate',
@@ -59,8 +90,42 @@ class CosXmlService {
         const { requestId, success } = event;
         if (this.downloadResultListeners.has(requestId)) {
           this.downloadResultListeners.get(requestId)!(
-            success ? undefined : new Error()
+            success ? undefined : new Error(),
+            event
           );
+          this.acknowledgeBackgroundResult(event);
+        }
+      }
+    );
+
+    this.emitter.addListener(
+      'COSBatchProgressUpdate',
+      (event: BatchProgressEvent) => {
+        if (this.batchProgressListeners.has(event.batchId)) {
+          this.batchProgressListeners.get(event.batchId)!(event);
+        }
+      }
+    );
+
+    this.emitter.addListener(
+      'COSSyncProgressUpdate',
+      (event: SyncProgressEvent) => {
+        if (this.syncProgressListeners.has(event.syncId)) {
+          this.syncProgressListeners.get(event.syncId)!(event);
+        }
+      }
+    );
+
+    // 只有后台上传会发送该事件，结果监听与下载共用
+    this.emitter.addListener(
+      'COSUploadResultUpdate',
+      (event: UploadResultEvent) => {
+        const { requestId, success, error } = event;
+        if (this.downloadResultListeners.has(requestId)) {
+          this.downloadResultListeners.get(requestId)!(
+            success ? undefined : new Error(error)
+          );
+          this.acknowledgeBackgroundResult(event);
         }
       }
     );
@@ -134,6 +199,10 @@ class CosXmlService {
     return Promise.resolve();
   }
 
+  updateConfiguration(configurations: Partial<Configuration>): Promise<void> {
+    return cosModule.updateConfiguration(configurations);
+  }
+
   async upload(
     request: UploadObjectRequest,
     listeners: OptionListeners,
@@ -143,51 +212,102 @@ class CosXmlService {
     try {
       let { requestId } = request;
 
+      const uploaded = await this.findUploaded(request);
+      if (uploaded) {
+        !!progressListener && progressListener(uploaded.size!, uploaded.size!);
+        !!resultListener && resultListener();
+        return;
+      }
+
       if (!requestId) {
         const { uploadId } = await cosModule.initMultiUpload({
           bucket: request.bucket,
           cosPath: request.cosPath,
+          retry: request.retry,
         });
         requestId = uploadId;
         !!initListener && initListener(uploadId);
       }
 
-      // 列出已上传的分片
-      const uploadedParts = await cosModule.listParts({
+      const target = {
         requestId,
         bucket: request.bucket,
         cosPath: request.cosPath,
-      });
+        retry: request.retry,
+      };
+
+      // 优先使用本地记录的分片续传，服务端分片列表只在后台校对
+      // iOS 没有本地记录，直接列出服务端分片
+      const state = cosModule.getUploadState
+        ? await cosModule.getUploadState(target)
+        : undefined;
+      const uploadedParts: FilePart[] = state
+        ? state.parts.map(({ partNumber, size, eTag, crc64 }) => ({
+            partNumber,
+            size,
+            eTag,
+            crc64,
+          }))
+        : [];
+      let offset = state ? state.nextOffset : 0;
+      let restoredCount = uploadedParts.length;
+      let serverParts: Promise<FilePart[] | undefined> | undefined;
+      if (restoredCount === 0) {
+        // 列出已上传的分片
+        uploadedParts.push(...(await cosModule.listParts(target)));
+        offset = uploadedParts.reduce((total, next) => total + next.size, 0);
+      } else {
+        // 校对失败时沿用本地记录，分片不一致会由 completeUpload 报错
+        serverParts = cosModule.listParts(target).catch(() => undefined);
+      }
 
       let last = false;
       let partNumber = uploadedParts.length + 1;
       while (!last) {
-        if (token && token.pause) {
+        while (!last) {
+          if (token && token.pause) {
+            break;
+          }
+
+          const part = await cosModule.uploadPart({
+            ...request,
+            requestId,
+            partNumber,
+            offset,
+          });
+
+          uploadedParts.push({
+            partNumber,
+            size: part.partSize,
+            eTag: part.eTag,
+            crc64: part.crc64,
+          });
+          offset += part.partSize;
+          !!progressListener && progressListener(offset, part.fileSize);
+          last = part.last;
+          partNumber++;
+        }
+
+        const listed = last && serverParts ? await serverParts : undefined;
+        serverParts = undefined;
+        if (!listed) {
           break;
         }
 
-        // 计算已上传的大小
-        const offset = uploadedParts.reduce(
-          (total, next) => total + next.size,
-          0
+        // 本地记录与服务端不一致时，从第一个缺失的分片开始重传
+        const serverETags = new Map(
+          listed.map((part) => [part.partNumber, part.eTag])
         );
-
-        const part = await cosModule.uploadPart({
-          ...request,
-          requestId,
-          partNumber,
-          offset,
-        });
-
-        uploadedParts.push({
-          partNumber,
-          size: part.partSize,
-          eTag: part.eTag,
-        });
-        !!progressListener &&
-          progressListener(offset + part.partSize, part.fileSize);
-        last = part.last;
-        partNumber++;
+        const missing = uploadedParts
+          .slice(0, restoredCount)
+          .findIndex((part) => serverETags.get(part.partNumber) !== part.eTag);
+        if (missing >= 0) {
+          uploadedParts.length = missing;
+          restoredCount = missing;
+          offset = uploadedParts.reduce((total, next) => total + next.size, 0);
+          partNumber = missing + 1;
+          last = false;
+        }
       }
 
       if (last) {
@@ -204,6 +324,98 @@ class CosXmlService {
     }
   }
 
+  async uploadFile(
+    request: UploadFileRequest,
+    listeners: OptionListeners
+  ): Promise<UploadFileResult> {
+    const { initListener, progressListener, resultListener } = listeners;
+    let { requestId } = request;
+    // 转换后的请求头与预先初始化的分片上传不一致，由原生层自己初始化
+    const taskId = request.transform && !requestId ? uuidv4() : undefined;
+    try {
+      const uploaded = await this.findUploaded(request);
+      if (uploaded) {
+        !!progressListener && progressListener(uploaded.size!, uploaded.size!);
+        !!resultListener && resultListener();
+        return {
+          uploadId: '',
+          key: request.cosPath,
+          eTag: uploaded.eTag,
+          fileSize: uploaded.size!,
+          partSize: 0,
+          paused: false,
+          skipped: true,
+        };
+      }
+
+      if (taskId) {
+        !!initListener && initListener(taskId);
+      } else if (!requestId) {
+        const { uploadId } = await cosModule.initMultiUpload({
+          bucket: request.bucket,
+          cosPath: request.cosPath,
+          retry: request.retry,
+        });
+        requestId = uploadId;
+        !!initListener && initListener(uploadId);
+      }
+
+      const id = (taskId || requestId)!;
+      !!progressListener && this.progressListeners.set(id, progressListener);
+      const result = await cosModule.uploadFile({
+        ...request,
+        requestId,
+        taskId,
+      });
+      this.removeListener(id);
+      !result.paused &&
+        !result.cancelled &&
+        !!resultListener &&
+        resultListener();
+      return result;
+    } catch (error) {
+      const id = taskId || requestId;
+      id && this.removeListener(id);
+      !!resultListener && resultListener(error as Error);
+      throw error;
+    }
+  }
+
+  /**
+   * 转换后的上传不能续传，暂停会取消上传，uploadFile 返回 cancelled: true
+   */
+  pauseUpload(requestId: string) {
+    return cosModule.pauseUpload(requestId);
+  }
+
+  /**
+   * 服务端复制或移动对象，进度按已复制的分片计算
+   */
+  async copyObject(
+    request: CopyObjectRequest,
+    listeners: OptionListeners = {}
+  ): Promise<CopyObjectResult> {
+    const requestId = request.requestId || uuidv4();
+    const { initListener, progressListener, resultListener } = listeners;
+    !!initListener && initListener(requestId);
+    !!progressListener &&
+      this.progressListeners.set(requestId, progressListener);
+    try {
+      const result = await cosModule.copyObject({ ...request, requestId });
+      this.removeListener(requestId);
+      !result.paused && !!resultListener && resultListener();
+      return result;
+    } catch (error) {
+      this.removeListener(requestId);
+      !!resultListener && resultListener(error as Error);
+      throw error;
+    }
+  }
+
+  pauseCopy(requestId: string) {
+    return cosModule.pauseCopy(requestId);
+  }
+
   cancelUpload(request: CancelUploadRequest) {
     return cosModule.cancelUpload(request);
   }
@@ -242,6 +454,207 @@ class CosXmlService {
     await cosModule.cancelDownload(requestId);
   }
 
+  setPriority(requestId: string, priority: TransferPriority) {
+    return cosModule.setPriority(requestId, priority);
+  }
+
+  setMaxConcurrentTransfers(maxConcurrent: number) {
+    return cosModule.setMaxConcurrentTransfers(maxConcurrent);
+  }
+
+  setBandwidthLimit(bytesPerSecond: number) {
+    return cosModule.setBandwidthLimit(bytesPerSecond);
+  }
+
+  /**
+   * 监听网络策略的变化，需要在配置中设置 networkPolicy
+   */
+  onNetworkPolicyChange(listener: (event: NetworkPolicyEvent) => void) {
+    return this.emitter.addListener('COSNetworkPolicyUpdate', listener);
+  }
+
+  getTransferQueue(): Promise<TransferQueue> {
+    return cosModule.getTransferQueue();
+  }
+
+  getRecentTransfers(): Promise<RecentTransfers> {
+    return cosModule.getRecentTransfers();
+  }
+
+  /**
+   * 交给系统后台执行传输，应用退到后台或被杀死后继续
+   * 应用重启后监听器不再存在，可以用 onBackgroundTransferResult 接收结果
+   */
+  async enqueueBackgroundTransfer(
+    request: BackgroundTransferRequest,
+    listeners: OptionListeners = {}
+  ): Promise<string> {
+    const requestId = request.requestId || uuidv4();
+    const { initListener, progressListener, resultListener } = listeners;
+    !!initListener && initListener(requestId);
+    !!progressListener &&
+      this.progressListeners.set(requestId, progressListener);
+    !!resultListener &&
+      this.downloadResultListeners.set(requestId, resultListener);
+    try {
+      await cosModule.enqueueBackgroundTransfer({ ...request, requestId });
+    } catch (err) {
+      this.removeListener(requestId);
+      throw err;
+    }
+    return requestId;
+  }
+
+  // 后台传输的结果会一直保留在本地，确认处理后才删除
+  private acknowledgeBackgroundResult(
+    event: UploadResultEvent | DownloadResultEvent
+  ) {
+    event.background &&
+      cosModule.acknowledgeBackgroundResult &&
+      cosModule.acknowledgeBackgroundResult(event.requestId).catch(() => {});
+  }
+
+  async cancelBackgroundTransfer(requestId: string) {
+    this.removeListener(requestId);
+    await cosModule.cancelBackgroundTransfer(requestId);
+  }
+
+  /**
+   * 监听后台传输的结果，包括应用上次运行期间完成的任务
+   */
+  onBackgroundTransferResult(
+    listener: (event: UploadResultEvent | DownloadResultEvent) => void
+  ) {
+    const filter = (event: UploadResultEvent | DownloadResultEvent) => {
+      if (event.background) {
+        listener(event);
+        this.acknowledgeBackgroundResult(event);
+      }
+    };
+    const subscriptions = [
+      this.emitter.addListener('COSUploadResultUpdate', filter),
+      this.emitter.addListener('COSDownloadResultUpdate', filter),
+    ];
+    // 初始化时发送的结果可能早于监听，重新发送尚未确认的结果
+    cosModule.resendBackgroundResults &&
+      cosModule.resendBackgroundResults().catch(() => {});
+    return {
+      remove: () => subscriptions.forEach((sub) => sub.remove()),
+    };
+  }
+
+  /**
+   * 监听临时密钥刷新，可用于统计刷新耗时
+   */
+  onCredentialRefresh(listener: (event: CredentialRefreshEvent) => void) {
+    return this.emitter.addListener('COSCredentialRefresh', listener);
+  }
+
+  batchUpload(
+    request: BatchRequest<BatchUploadItem>,
+    progressListener?: BatchProgressListener
+  ): Promise<BatchResult> {
+    return this.runBatch(request, progressListener, cosModule.batchUpload);
+  }
+
+  batchDownload(
+    request: BatchRequest<BatchDownloadItem>,
+    progressListener?: BatchProgressListener
+  ): Promise<BatchResult> {
+    return this.runBatch(request, progressListener, cosModule.batchDownload);
+  }
+
+  batchDelete(
+    request: BatchRequest<BatchDeleteItem>,
+    progressListener?: BatchProgressListener
+  ): Promise<BatchResult> {
+    return this.runBatch(request, progressListener, cosModule.batchDelete);
+  }
+
+  /**
+   * 把前缀下的对象增量同步到本地目录，只下载新增或变化的对象
+   */
+  async syncPrefix(
+    request: SyncRequest,
+    progressListener?: SyncProgressListener
+  ): Promise<SyncResult> {
+    const syncId = request.syncId || uuidv4();
+    !!progressListener &&
+      this.syncProgressListeners.set(syncId, progressListener);
+    try {
+      return await cosModule.syncPrefix({ ...request, syncId });
+    } finally {
+      this.syncProgressListeners.delete(syncId);
+    }
+  }
+
+  cancelSync(syncId: string) {
+    return cosModule.cancelSync(syncId);
+  }
+
+  getMetrics(reset: boolean = false): Promise<TransferMetrics> {
+    return cosModule.getMetrics(reset);
+  }
+
+  /**
+   * 监听定时发送的传输指标，需要在配置中设置 metricsInterval
+   */
+  onMetrics(listener: (metrics: TransferMetrics) => void) {
+    return this.emitter.addListener('COSMetricsUpdate', listener);
+  }
+
+  getCacheStats(): Promise<CacheStats> {
+    return cosModule.getCacheStats();
+  }
+
+  clearCache() {
+    return cosModule.clearCache();
+  }
+
+  private onProgress = (event: ProgressEvent) => {
+    const { requestId, processedBytes, targetBytes } = event;
+    if (this.progressListeners.has(requestId)) {
+      this.progressListeners.get(requestId)!(
+        processedBytes >= targetBytes ? targetBytes : processedBytes,
+        targetBytes
+      );
+    }
+  };
+
+  private async runBatch<T>(
+    request: BatchRequest<T>,
+    progressListener: BatchProgressListener | undefined,
+    run: (request: BatchRequest<T>) => Promise<BatchResult>
+  ): Promise<BatchResult> {
+    const batchId = request.batchId || uuidv4();
+    !!progressListener &&
+      this.batchProgressListeners.set(batchId, progressListener);
+    try {
+      return await run({ ...request, batchId });
+    } finally {
+      this.batchProgressListeners.delete(batchId);
+    }
+  }
+
+  /**
+   * 开启 skipIfExists 的新上传先检查目标位置，检查失败时照常上传
+   */
+  private async findUploaded(
+    request: UploadObjectRequest
+  ): Promise<UploadedObject | undefined> {
+    if (
+      !request.skipIfExists ||
+      request.requestId ||
+      !cosModule.findUploadedObject
+    ) {
+      return undefined;
+    }
+    const result = await cosModule
+      .findUploadedObject(request)
+      .catch(() => undefined);
+    return result && result.matched ? result : undefined;
+  }
+
   private removeListener(requestId: string) {
     if (requestId) {
       this.progressListeners.delete(requestId);
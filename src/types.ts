@@ -6,12 +6,19 @@ export interface ProgressEvent {
   targetBytes: number;
 }
 
+export interface ProgressBatchEvent {
+  updates: ProgressEvent[];
+}
+
 export type ProgressListener = (
   processedBytes: number,
   targetBytes: number
 ) => void;
 
-export type ResultListener = (error?: Error) => void;
+export type ResultListener = (
+  error?: Error,
+  result?: DownloadResultEvent
+) => void;
 
 export interface OptionListeners {
   initListener?: InitListener;
@@ -23,6 +30,65 @@ export interface DownloadResultEvent {
   requestId: string;
   success: boolean;
   eTag?: string;
+  /**
+   * 命中本地缓存，没有从网络下载
+   */
+  cached?: boolean;
+  /**
+   * 本地文件与对象一致，没有重新下载
+   */
+  notModified?: boolean;
+  /**
+   * 后台传输的结果
+   */
+  background?: boolean;
+  error?: string;
+  /**
+   * 校验失败时为 ChecksumMismatch
+   */
+  errorCode?: string;
+}
+
+export interface UploadResultEvent {
+  requestId: string;
+  success: boolean;
+  eTag?: string;
+  background?: boolean;
+  error?: string;
+}
+
+export interface BackgroundTransferRequest {
+  requestId?: string;
+  type: 'upload' | 'download';
+  bucket: string;
+  cosPath: string;
+  /**
+   * 上传的本地路径、file:// 或 content:// 地址
+   */
+  fileUri?: string;
+  /**
+   * 下载保存的路径
+   */
+  filePath?: string;
+  connections?: number;
+  checksum?: ChecksumType;
+  /**
+   * 网络要求，默认 any
+   */
+  network?: 'any' | 'unmetered' | 'notRoaming';
+  /**
+   * 尽快执行，配额不足时按普通任务执行，默认 true
+   */
+  expedited?: boolean;
+}
+
+export interface CredentialRefreshEvent {
+  /**
+   * 请求临时密钥服务的耗时（毫秒）
+   */
+  latency: number;
+  success: boolean;
+  error?: string;
 }
 
 export interface FileInfo {
@@ -30,11 +96,43 @@ export interface FileInfo {
   size: number;
   mime: string;
   md5: number;
+  /**
+   * 秒传检查时缓存的 CRC64，文件大小或修改时间变化后失效
+   */
+  crc64?: string;
 }
 
+/**
+ * 重试策略，只重试网络错误、超时、限流和服务端 5xx
+ * 第 n 次重试前随机等待 0 到 min(maxDelay, baseDelay * 2^n) 毫秒
+ */
+export interface RetryOptions {
+  /**
+   * 默认 3，0 表示不重试
+   */
+  maxRetries?: number;
+  /**
+   * 默认 500
+   */
+  baseDelay?: number;
+  /**
+   * 默认 15000
+   */
+  maxDelay?: number;
+}
+
+/**
+ * 传输时在本地计算的校验值，不一致时以 ChecksumMismatch 错误码失败
+ * crc64：与服务端的 x-cos-hash-crc64ecma 比较，各分片的值合并成整个对象的值，不需要重新读取文件
+ * md5：上传分片时带上 Content-MD5，并与返回的 ETag 比较，只用于上传
+ * 开启后每个分片读到内存中计算，分片大小不超过 8MB
+ */
+export type ChecksumType = 'crc64' | 'md5';
+
 export interface InitiateMultipartUploadRequest {
   bucket: string;
   cosPath: string;
+  retry?: RetryOptions;
 }
 
 export interface InitiateMultipartUpload {
@@ -47,22 +145,177 @@ export interface UploadObjectRequest {
   requestId?: string;
   bucket: string;
   cosPath: string;
-  fileUri: string;
+  /**
+   * 本地路径、file:// 或 content:// 地址
+   */
+  fileUri?: string;
+  /**
+   * 直接上传的数据，适合较小的内容，传入时忽略 fileUri
+   */
+  base64?: string;
+  /**
+   * 覆盖初始化配置中的重试策略
+   */
+  retry?: RetryOptions;
+  checksum?: ChecksumType;
+  /**
+   * 只限制这个请求的速度（字节/秒），同时受全局限速约束
+   */
+  bandwidthLimit?: number;
+  /**
+   * 目标位置已有大小和 CRC64 都相同的对象时直接完成，不传输数据；续传时不检查
+   */
+  skipIfExists?: boolean;
+}
+
+export interface UploadedObject {
+  matched: boolean;
+  size?: number;
+  crc64?: string;
+  eTag?: string;
+}
+
+export enum TransferPriority {
+  Low = 0,
+  Normal = 1,
+  High = 2,
+}
+
+export interface UploadFileRequest extends UploadObjectRequest {
+  /**
+   * 同时上传的分片数，默认 4
+   */
+  concurrency?: number;
+  priority?: TransferPriority;
+  /**
+   * 上传前在原生层转换，仅 Android 实现
+   * 转换后的上传不能续传，暂停会取消上传，结果中 cancelled 为 true
+   * 需要转换的文件不能同时传入 requestId，请求会被拒绝，已初始化的分片上传需要调用方自己取消
+   * gzip: 压缩后上传，对象带 Content-Encoding: gzip
+   * image: 缩小图片后重新编码，仅处理 JPEG、PNG、WebP 和 HEIC；
+   *   HEIC 会转成 JPEG，Content-Type 为 image/jpeg，cosPath 不会改扩展名
+   * auto: 图片缩小，文本类文件压缩，其他文件原样上传
+   */
+  transform?: UploadTransform;
+  /**
+   * 图片最长边的像素上限，默认 2048
+   */
+  imageMaxDimension?: number;
+  /**
+   * 图片编码质量 1-100，默认 85
+   */
+  imageQuality?: number;
+  /**
+   * 转换后上传时 JS 层生成的任务 id，不预先初始化分片上传，内部使用
+   */
+  taskId?: string;
+}
+
+export type UploadTransform = 'auto' | 'gzip' | 'image';
+
+export interface UploadTransformResult {
+  type: 'gzip' | 'image';
+  originalSize: number;
+  transformedSize: number;
+  /**
+   * transformedSize / originalSize
+   */
+  compressionRatio: number;
+  transformMillis: number;
+  contentType: string;
+  contentEncoding?: string;
+}
+
+export interface UploadFileResult {
+  uploadId: string;
+  key?: string;
+  eTag?: string;
+  fileSize: number;
+  /**
+   * 本次上传最终采用的分片大小
+   */
+  partSize: number;
+  paused: boolean;
+  /**
+   * 目标位置已有相同的对象，没有上传；此时 uploadId 为空字符串
+   */
+  skipped?: boolean;
+  /**
+   * 上传前做了转换时返回，fileSize 为转换后的大小
+   */
+  transform?: UploadTransformResult;
+  /**
+   * 转换后的上传被暂停时为 true，上传已取消，不能续传
+   */
+  cancelled?: boolean;
+  /**
+   * 开启 crc64 校验但没能校验整个对象时为 true，例如续传的分片无法重新读取；对象已上传成功
+   */
+  unverified?: boolean;
+}
+
+export interface CopyObjectRequest {
+  requestId?: string;
+  /**
+   * 源存储桶，格式为 BucketName-APPID
+   */
+  sourceBucket: string;
+  /**
+   * 源存储桶的地域，默认与配置相同
+   */
+  sourceRegion?: string;
+  sourceCosPath: string;
+  bucket: string;
+  cosPath: string;
+  /**
+   * 续传暂停的分片复制
+   */
+  uploadId?: string;
+  /**
+   * 分片大小，源对象不大于这个值时一次复制完成，默认 32MB
+   */
+  partSize?: number;
+  /**
+   * 同时复制的分片数，默认 8
+   */
+  concurrency?: number;
+  /**
+   * 复制完成后删除源对象
+   */
+  deleteSource?: boolean;
+  priority?: TransferPriority;
+  retry?: RetryOptions;
+}
+
+export interface CopyObjectResult {
+  /**
+   * 一次复制完成时为空
+   */
+  uploadId?: string;
+  eTag?: string;
+  objectSize: number;
+  paused: boolean;
+  sourceDeleted?: boolean;
 }
 
 export interface ListPartsRequest {
   requestId: string;
   bucket: string;
   cosPath: string;
+  retry?: RetryOptions;
 }
 
 export interface UploadPartRequest {
   requestId?: string;
   bucket: string;
   cosPath: string;
-  fileUri: string;
+  fileUri?: string;
+  base64?: string;
   partNumber: number;
   offset: number;
+  retry?: RetryOptions;
+  checksum?: ChecksumType;
+  bandwidthLimit?: number;
 }
 
 export interface CompleteUploadRequest {
@@ -70,6 +323,11 @@ export interface CompleteUploadRequest {
   bucket: string;
   cosPath: string;
   uploadedParts: FilePart[];
+  retry?: RetryOptions;
+  /**
+   * crc64 时用各分片的 crc64 合并出整个对象的值校验，有分片缺少 crc64 时不校验
+   */
+  checksum?: ChecksumType;
 }
 
 export interface UploadObjectResult {
@@ -81,6 +339,7 @@ export interface CancelUploadRequest {
   bucket: string;
   cosPath: string;
   requestId: string;
+  retry?: RetryOptions;
 }
 
 export interface DownloadObjectRequest {
@@ -88,12 +347,346 @@ export interface DownloadObjectRequest {
   bucket: string;
   cosPath: string;
   filePath: string;
+  priority?: TransferPriority;
+  /**
+   * 大于 1 时按字节范围拆分，用多个连接并发下载
+   */
+  connections?: number;
+  /**
+   * 先查本地缓存，对象 eTag 未变时直接使用缓存，下载完成后放入缓存
+   */
+  useCache?: boolean;
+  /**
+   * filePath 已存在时用于条件请求，对象未修改则不再下载
+   * 不传时使用上次下载到该路径时记录的 eTag 和 Last-Modified
+   */
+  ifNoneMatch?: string;
+  ifModifiedSince?: string;
+  /**
+   * 分段下载时单独重试失败的段，单连接下载由 SDK 重试
+   */
+  retry?: RetryOptions;
+  /**
+   * 只支持 crc64，开启后单连接也按段下载，每段写入后立即计算
+   */
+  checksum?: 'crc64';
+  /**
+   * 只限制这个请求的速度（字节/秒），同时受全局限速约束
+   */
+  bandwidthLimit?: number;
+}
+
+export interface CacheStats {
+  hits: number;
+  misses: number;
+  evictions: number;
+  size: number;
+  maxSize: number;
+  count: number;
+}
+
+export interface BatchUploadItem {
+  bucket: string;
+  cosPath: string;
+  /**
+   * 本地路径、file:// 或 content:// 地址
+   */
+  fileUri?: string;
+  base64?: string;
+}
+
+export interface BatchDownloadItem {
+  bucket: string;
+  cosPath: string;
+  filePath: string;
+}
+
+export interface BatchDeleteItem {
+  bucket: string;
+  cosPath: string;
+}
+
+export interface BatchRequest<T> {
+  batchId?: string;
+  items: T[];
+  /**
+   * 同时处理的对象数，默认 4；批量删除不使用
+   */
+  concurrency?: number;
+  /**
+   * 失败的项单独重试；批量删除不使用
+   */
+  retry?: RetryOptions;
+  /**
+   * 整个批量操作共用的限速（字节/秒）；批量删除不使用
+   */
+  bandwidthLimit?: number;
+}
+
+export interface BatchItemResult {
+  /**
+   * 在 items 中的下标
+   */
+  index: number;
+  success: boolean;
+  eTag?: string;
+  error?: string;
+}
+
+export interface BatchResult {
+  batchId: string;
+  /**
+   * 与 items 顺序一致
+   */
+  items: BatchItemResult[];
+}
+
+export interface BatchProgressEvent {
+  batchId: string;
+  total: number;
+  completed: number;
+  failed: number;
+  processedBytes: number;
+  targetBytes: number;
+  /**
+   * 上次事件之后有变化的项
+   */
+  items: {
+    index: number;
+    processedBytes: number;
+    targetBytes: number;
+    done: boolean;
+    success: boolean;
+  }[];
+}
+
+export type BatchProgressListener = (event: BatchProgressEvent) => void;
+
+export interface SyncRequest {
+  syncId?: string;
+  bucket: string;
+  prefix?: string;
+  /**
+   * 本地目录，key 去掉 prefix 后作为相对路径
+   */
+  localDir: string;
+  /**
+   * 删除服务端已删除的对象对应的本地文件，上次同步后被改动过的文件保留
+   */
+  deleteRemoved?: boolean;
+  /**
+   * 同时下载的对象数，默认 4
+   */
+  concurrency?: number;
+  retry?: RetryOptions;
+  bandwidthLimit?: number;
+}
+
+export interface SyncProgressEvent {
+  syncId: string;
+  listed: number;
+  added: number;
+  changed: number;
+  unchanged: number;
+  removed: number;
+  downloaded: number;
+  failed: number;
+  processedBytes: number;
+  targetBytes: number;
+  done: boolean;
+}
+
+export interface SyncResult extends Omit<SyncProgressEvent, 'done'> {
+  /**
+   * 失败的对象和原因，最多 100 条
+   */
+  errors: string[];
+}
+
+export type SyncProgressListener = (event: SyncProgressEvent) => void;
+
+export interface LatencyHistogram {
+  count: number;
+  averageMillis: number;
+  maxMillis: number;
+  /**
+   * 各区间的请求数，区间上界见 latencyBoundsMillis，最后一项为超过最大上界的请求
+   */
+  buckets: number[];
+}
+
+export interface OperationMetrics {
+  successes: number;
+  failures: number;
+  retries: number;
+  inFlight: number;
+  bytes: number;
+  /**
+   * 成功请求的平均吞吐量
+   */
+  bytesPerSecond: number;
+  latency: LatencyHistogram;
+  /**
+   * 错误码到次数，服务端错误为错误码或 HTTP 状态码，客户端错误为 Client 加 SDK 错误码
+   */
+  errors: { [code: string]: number };
+}
+
+export interface BucketMetrics {
+  region: string;
+  bucket: string;
+  /**
+   * 键为 initMultiUpload、listParts、uploadPart、completeUpload、abortUpload、
+   * putObject、headObject、download、deleteObjects
+   */
+  operations: { [operation: string]: OperationMetrics };
+}
+
+export interface TransferMetrics {
+  /**
+   * 开始统计的时间
+   */
+  since: number;
+  timestamp: number;
+  latencyBoundsMillis: number[];
+  buckets: BucketMetrics[];
+  /**
+   * 任务在传输队列中的等待时间，键为 upload 或 download
+   */
+  queueWait: { [type: string]: LatencyHistogram };
+}
+
+export interface TransferQueueTask {
+  requestId: string;
+  type: 'upload' | 'download' | 'copy';
+  priority: TransferPriority;
+  /**
+   * pausing 表示已请求暂停、传输还在停止中，仍然占用运行位置
+   */
+  state: 'queued' | 'running' | 'pausing' | 'paused';
+  waitMillis: number;
+}
+
+export interface TransferQueue {
+  maxConcurrent: number;
+  tasks: TransferQueueTask[];
+}
+
+export interface TransferRecord {
+  requestId: string;
+  type: 'upload' | 'download' | 'copy';
+  status: 'success' | 'failed' | 'paused' | 'cancelled';
+  startedAt: number;
+  finishedAt: number;
+  error?: string;
+}
+
+export interface RecentTransfers {
+  activeUploads: number;
+  activeDownloads: number;
+  activeCopies: number;
+  recent: TransferRecord[];
 }
 
 export interface Configuration {
   region: string;
+  /**
+   * 默认 true
+   */
+  https?: boolean;
+  /**
+   * 连接超时（毫秒）
+   */
+  connectionTimeout?: number;
+  /**
+   * 读写超时（毫秒）
+   */
+  socketTimeout?: number;
+  /**
+   * 缓存 DNS 解析结果
+   */
+  dnsCache?: boolean;
+  /**
+   * 使用全球加速域名
+   */
+  accelerate?: boolean;
+  /**
+   * 自定义域名格式，例如 '127.0.0.1'，用于指向本地的 COS 兼容服务
+   */
+  hostFormat?: string;
+  port?: number;
   divisionForUpload?: number;
   sliceSizeForUpload?: number;
+  /**
+   * 进度事件合并发送的间隔（毫秒），默认 100
+   */
+  progressInterval?: number;
+  /**
+   * 进度跨过该百分比的整数倍时立即发送，默认 10
+   */
+  progressThreshold?: number;
+  /**
+   * 同时运行的最大传输数，默认 4
+   * 只限制 uploadFile、download 和 copyObject；batchUpload、batchDownload 和 syncPrefix 按各自的 concurrency 执行，不计入
+   */
+  maxConcurrentTransfers?: number;
+  /**
+   * 下载缓存容量上限（字节），默认 256MB，0 表示不缓存
+   */
+  downloadCacheSize?: number;
+  /**
+   * 定时发送 COSMetricsUpdate 事件的间隔（毫秒），默认 0 不发送
+   */
+  metricsInterval?: number;
+  /**
+   * 默认的重试策略，请求中传入 retry 时覆盖
+   */
+  retry?: RetryOptions;
+  /**
+   * 所有上传和下载共用的限速（字节/秒），默认 0 不限速
+   */
+  bandwidthLimit?: number;
+  /**
+   * 切换到按流量计费的网络或漫游时的传输策略
+   */
+  networkPolicy?: NetworkPolicy;
+}
+
+export interface NetworkRule {
+  /**
+   * 暂停队列中的传输，运行中的 uploadFile 和 download 停下后重新排队，恢复后续传；copyObject 以 paused 结束
+   * 不影响 batchUpload、batchDownload 和 syncPrefix
+   */
+  pause?: boolean;
+  /**
+   * 同时运行的最大传输数，不超过 maxConcurrentTransfers
+   */
+  maxConcurrent?: number;
+  /**
+   * 限速（字节/秒），与 bandwidthLimit 取较小值
+   */
+  bandwidth?: number;
+}
+
+export interface NetworkPolicy {
+  /**
+   * 按流量计费的网络，包括蜂窝网络和计费的 Wi-Fi 热点
+   */
+  cellular?: NetworkRule;
+  /**
+   * 漫游，不配置时使用 cellular 的规则
+   */
+  roaming?: NetworkRule;
+}
+
+export interface NetworkPolicyEvent {
+  network: 'none' | 'unmetered' | 'cellular' | 'roaming';
+  paused: boolean;
+  maxConcurrent: number;
+  /**
+   * 当前生效的全局限速，0 表示不限速
+   */
+  bandwidthLimit: number;
 }
 
 export interface Secret {
@@ -112,14 +705,36 @@ export interface FilePart {
   partNumber: number;
   size: number;
   eTag: number;
+  /**
+   * 开启 crc64 校验时上传的分片才有
+   */
+  crc64?: string;
+}
+
+export interface UploadStatePart extends FilePart {
+  offset: number;
+}
+
+export interface UploadState {
+  /**
+   * 本地记录的从 1 开始连续的已上传分片
+   */
+  parts: UploadStatePart[];
+  nextPartNumber: number;
+  nextOffset: number;
 }
 
 export interface UploadPartResult {
   partNumber: number;
   eTag: number;
   partSize: number;
+  /**
+   * 根据吞吐量调整后，下一个分片的大小
+   */
+  nextPartSize: number;
   fileSize: number;
   last: boolean;
+  crc64?: string;
 }
 
 export type TencentCosType = {
@@ -139,6 +754,12 @@ export type TencentCosType = {
    */
   initWithSessionCredential(configurations: Configuration): Promise<void>;
 
+  /**
+   * 修改配置，未传入的字段保持不变
+   * @param configurations
+   */
+  updateConfiguration(configurations: Partial<Configuration>): Promise<void>;
+
   /**
    * 初始化分片上传
    * @param request
@@ -153,12 +774,42 @@ export type TencentCosType = {
    */
   listParts(request: ListPartsRequest): Promise<FilePart[]>;
 
+  /**
+   * 获取本地记录的已上传分片，仅 Android 实现
+   * @param request
+   */
+  getUploadState?(request: ListPartsRequest): Promise<UploadState>;
+
   /**
    * 上传分片
    * @param request
    */
   uploadPart(request: UploadPartRequest): Promise<UploadPartResult>;
 
+  /**
+   * 上传文件，在原生层并发上传全部分片
+   * @param request
+   */
+  uploadFile(request: UploadFileRequest): Promise<UploadFileResult>;
+
+  /**
+   * 暂停 uploadFile 发起的上传，带 transform 的上传会被取消
+   * @param requestId
+   */
+  pauseUpload(requestId: string): Promise<void>;
+
+  /**
+   * 服务端复制对象，大对象按分片并发复制
+   * @param request
+   */
+  copyObject(request: CopyObjectRequest): Promise<CopyObjectResult>;
+
+  /**
+   * 暂停 copyObject 发起的复制
+   * @param requestId
+   */
+  pauseCopy(requestId: string): Promise<void>;
+
   /**
    * 完成分片上传
    * @param request
@@ -189,5 +840,111 @@ export type TencentCosType = {
    */
   cancelDownload(requestId: string): Promise<void>;
 
+  /**
+   * 调整排队中任务的优先级
+   * @param requestId
+   * @param priority
+   */
+  setPriority(requestId: string, priority: TransferPriority): Promise<void>;
+
+  /**
+   * 设置同时运行的最大传输数
+   * @param maxConcurrent
+   */
+  setMaxConcurrentTransfers(maxConcurrent: number): Promise<void>;
+
+  /**
+   * 设置所有上传和下载共用的限速
+   * @param bytesPerSecond 0 表示不限速
+   */
+  setBandwidthLimit(bytesPerSecond: number): Promise<void>;
+
+  /**
+   * 获取传输队列快照
+   */
+  getTransferQueue(): Promise<TransferQueue>;
+
+  /**
+   * 获取最近结束的传输记录
+   */
+  getRecentTransfers(): Promise<RecentTransfers>;
+
+  /**
+   * 交给系统后台执行传输，需要先用临时密钥初始化
+   * @param request
+   */
+  enqueueBackgroundTransfer(
+    request: BackgroundTransferRequest
+  ): Promise<{ requestId: string }>;
+
+  /**
+   * 取消后台传输
+   * @param requestId
+   */
+  cancelBackgroundTransfer(requestId: string): Promise<void>;
+
+  /**
+   * 确认已收到后台传输的结果，之后不再重复发送，仅 Android 实现
+   * @param requestId
+   */
+  acknowledgeBackgroundResult?(requestId: string): Promise<void>;
+
+  /**
+   * 重新发送尚未确认的后台传输结果，仅 Android 实现
+   */
+  resendBackgroundResults?(): Promise<void>;
+
+  /**
+   * 批量上传
+   * @param request
+   */
+  batchUpload(request: BatchRequest<BatchUploadItem>): Promise<BatchResult>;
+
+  /**
+   * 批量下载
+   * @param request
+   */
+  batchDownload(request: BatchRequest<BatchDownloadItem>): Promise<BatchResult>;
+
+  /**
+   * 批量删除
+   * @param request
+   */
+  batchDelete(request: BatchRequest<BatchDeleteItem>): Promise<BatchResult>;
+
+  /**
+   * 获取传输指标
+   * @param reset 读取后清空统计
+   */
+  getMetrics(reset: boolean): Promise<TransferMetrics>;
+
+  /**
+   * 把前缀下的对象增量同步到本地目录
+   * @param request
+   */
+  syncPrefix(request: SyncRequest): Promise<SyncResult>;
+
+  /**
+   * 停止同步
+   * @param syncId
+   */
+  cancelSync(syncId: string): Promise<void>;
+
+  /**
+   * 获取下载缓存统计
+   */
+  getCacheStats(): Promise<CacheStats>;
+
+  /**
+   * 清空下载缓存
+   */
+  clearCache(): Promise<void>;
+
   getFileInfo(path: string): Promise<FileInfo>;
+
+  /**
+   * 检查目标位置是否已有相同的对象，仅 Android 实现
+   * @param request
+   */
+  findUploadedObject?(request: UploadObjectRequest): Promise<UploadedObject>;
 };